@@ -21,6 +21,7 @@ import java.util.List;
 import models.daos.DatasetDao;
 import models.daos.UserDao;
 import utils.Urn;
+import utils.BulkJsonParser;
 import utils.ContrUtil;
 import org.springframework.dao.EmptyResultDataAccessException;
 import play.Logger;
@@ -86,17 +87,17 @@ public class DatasetController extends Controller {
     return ok(resultJson);
   }
 
-  @BodyParser.Of(BodyParser.Json.class)
+  @BodyParser.Of(BulkJsonParser.class)
   public static Result addDataset() {
     return addEntity(request().body().asJson(), "Dataset");
   }
 
-  @BodyParser.Of(BodyParser.Json.class)
+  @BodyParser.Of(BulkJsonParser.class)
   public static Result addJob() {
     return addEntity(request().body().asJson(), "Job");
   }
 
-  @BodyParser.Of(BodyParser.Json.class)
+  @BodyParser.Of(BulkJsonParser.class)
   public static Result addDatabase() {
     return addEntity(request().body().asJson(), "Database");
   }
@@ -104,10 +105,17 @@ public class DatasetController extends Controller {
   private static Result addEntity(JsonNode entity, String entity_type) {
     ObjectNode resultJson = Json.newObject();
     try {
-      DatasetDao.setDatasetRecord(entity);
-      resultJson.put("return_code", 200);
-      resultJson.put("message", entity_type + " inserted!");
-      Logger.info(entity_type + " with urn: " + entity.get("urn") + " inserted");
+      if (entity.isArray()) {
+        int count = DatasetDao.setDatasetRecords(entity);
+        resultJson.put("return_code", 200);
+        resultJson.put("message", count + " " + entity_type + " inserted!");
+        Logger.info(count + " " + entity_type + " inserted");
+      } else {
+        DatasetDao.setDatasetRecord(entity);
+        resultJson.put("return_code", 200);
+        resultJson.put("message", entity_type + " inserted!");
+        Logger.info(entity_type + " with urn: " + entity.get("urn") + " inserted");
+      }
     } catch (Exception e) {
         ContrUtil.failure(resultJson, 404, e.getMessage());
         Logger.info("Post JSON for " + entity_type + " failed insertion: " + entity.toString());
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import models.daos.LineageDaoLite;
+import utils.BulkJsonParser;
 import utils.ContrUtil;
 import play.libs.Json;
 import play.mvc.BodyParser;
@@ -55,4 +56,22 @@ public class LineageController extends Controller {
     }
     return ok(resultJson);
   }
+
+  @BodyParser.Of(BulkJsonParser.class)
+  public static Result addBulkLineage() {
+    JsonNode lineages = request().body().asJson();
+    ObjectNode resultJson = Json.newObject();
+
+    try {
+      int count = LineageDaoLite.insertLineages(lineages);
+
+      resultJson.put("return_code", 200);
+      resultJson.put("message", count + " lineage edges inserted!");
+      Logger.info(count + " lineage edges inserted");
+    } catch (Exception e) {
+      ContrUtil.failure(resultJson, e.getMessage());
+      Logger.error("caught exception", e);
+    }
+    return ok(resultJson);
+  }
 }
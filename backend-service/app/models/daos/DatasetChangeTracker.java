@@ -0,0 +1,250 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package models.daos;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import play.Logger;
+import utils.JdbcUtil;
+
+
+/**
+ * Keeps the in-memory indexes over dict_dataset (ValidDatasetIndex, DatasetPropertyIndex) in step with the table.
+ *
+ * A refresh reads the dataset count and latest created_time / modified_time once, then the rows changed
+ * since the oldest stamp any index has seen, and hands every row to each index that needs it. An index without
+ * a snapshot, or with more datasets than the table, is rebuilt from the same pass and swapped in when it is done.
+ * Only the first load makes readers wait, later refreshes run on one reader while the others keep the snapshot.
+ * Writes made through DatasetDao are passed on right away by urn.
+ */
+final class DatasetChangeTracker {
+
+  private static final String CHANGE_STAMP = "GREATEST(COALESCE(created_time, 0), COALESCE(modified_time, 0))";
+
+  // each column on its own, so the maximums and the range come from idx_dataset_created and idx_dataset_modified
+  private static final String GET_DATASET_STATS = "SELECT COUNT(*) AS dataset_count, "
+      + "COALESCE(MAX(created_time), 0) AS max_created, COALESCE(MAX(modified_time), 0) AS max_modified "
+      + "FROM dict_dataset";
+
+  private static final String SELECT_DATASETS =
+      "SELECT urn, properties, source_modified_time, " + CHANGE_STAMP + " AS stamp FROM dict_dataset ";
+
+  private static final String GET_DATASETS_CHANGED_SINCE =
+      SELECT_DATASETS + "WHERE created_time >= :stamp OR modified_time >= :stamp";
+
+  private static final String GET_DATASETS_BY_URNS = SELECT_DATASETS + "WHERE urn IN (:urns)";
+
+  private static final int IN_CLAUSE_BATCH_SIZE = 1000;
+
+  private static final List<Tracked<?>> tracked = new CopyOnWriteArrayList<>();
+
+  private static final ReentrantLock refreshLock = new ReentrantLock();
+
+  private static volatile long lastCheckedMillis = 0L;
+
+  private DatasetChangeTracker() {
+  }
+
+  /**
+   * The columns of a dict_dataset row the indexes are built from.
+   */
+  static final class DatasetRow {
+    final String urn;
+    final String properties;
+    // null when the column is NULL
+    final Long sourceModifiedTime;
+    final long stamp;
+
+    DatasetRow(String urn, String properties, Long sourceModifiedTime, long stamp) {
+      this.urn = urn;
+      this.properties = properties;
+      this.sourceModifiedTime = sourceModifiedTime;
+      this.stamp = stamp;
+    }
+  }
+
+  /**
+   * An index kept up to date by the tracker. put() can be given rows the index already holds.
+   */
+  interface DatasetRows {
+    int size();
+
+    long maxStamp();
+
+    void put(DatasetRow row);
+
+    void remove(String urn);
+  }
+
+  /**
+   * The current snapshot of one kind of index.
+   */
+  abstract static class Tracked<I extends DatasetRows> {
+    private volatile I index = null;
+    private I rebuilding = null;
+
+    abstract I newIndex();
+  }
+
+  static <I extends DatasetRows> Tracked<I> track(Tracked<I> index) {
+    tracked.add(index);
+    return index;
+  }
+
+  /**
+   * The snapshot of `index`, after refreshing every tracked index if `intervalMillis` have passed since
+   * the last refresh. Waits only while `index` has no snapshot yet; otherwise, if another thread is
+   * refreshing, the current snapshot is returned.
+   */
+  static <I extends DatasetRows> I current(Tracked<I> index, long intervalMillis) {
+    if (index.index == null) {
+      refreshLock.lock();
+      try {
+        if (index.index == null) {
+          refresh(index);
+        }
+      } finally {
+        refreshLock.unlock();
+      }
+    } else if (System.currentTimeMillis() - lastCheckedMillis > intervalMillis && refreshLock.tryLock()) {
+      try {
+        if (System.currentTimeMillis() - lastCheckedMillis > intervalMillis) {
+          refresh(index);
+        }
+      } finally {
+        refreshLock.unlock();
+      }
+    }
+    return index.index;
+  }
+
+  // called with refreshLock held
+  private static void refresh(Tracked<?> caller) {
+    long now = System.currentTimeMillis();
+    try {
+      Map<String, Object> stats = JdbcUtil.wherehowsJdbcTemplate.queryForMap(GET_DATASET_STATS);
+      long count = ((Number) stats.get("dataset_count")).longValue();
+      long maxStamp = Math.max(((Number) stats.get("max_created")).longValue(),
+          ((Number) stats.get("max_modified")).longValue());
+
+      List<DatasetRows> targets = new ArrayList<>();
+      long sinceStamp = Long.MAX_VALUE;
+      for (Tracked<?> t : tracked) {
+        DatasetRows idx = t.index;
+        if (idx == null || count < idx.size()) {
+          targets.add(startRebuild(t));
+          sinceStamp = 0L;
+        } else if (maxStamp > idx.maxStamp() || count > idx.size()) {
+          targets.add(idx);
+          sinceStamp = Math.min(sinceStamp, idx.maxStamp());
+        }
+      }
+      if (sinceStamp == 0L) {
+        // rows with neither time set only turn up in a full read
+        load(targets, SELECT_DATASETS, Collections.<String, Object>emptyMap());
+      } else if (!targets.isEmpty()) {
+        load(targets, GET_DATASETS_CHANGED_SINCE, Collections.<String, Object>singletonMap("stamp", sinceStamp));
+      }
+      for (Tracked<?> t : tracked) {
+        finishRebuild(t);
+      }
+      lastCheckedMillis = now;
+    } catch (DataAccessException e) {
+      for (Tracked<?> t : tracked) {
+        t.rebuilding = null;
+      }
+      Logger.error("DatasetChangeTracker refresh failed", e);
+      if (caller.index == null) {
+        throw e;
+      }
+    }
+  }
+
+  private static <I extends DatasetRows> I startRebuild(Tracked<I> t) {
+    t.rebuilding = t.newIndex();
+    return t.rebuilding;
+  }
+
+  private static <I extends DatasetRows> void finishRebuild(Tracked<I> t) {
+    if (t.rebuilding != null) {
+      t.index = t.rebuilding;
+      t.rebuilding = null;
+    }
+  }
+
+  /**
+   * Re-reads the given datasets after DatasetDao wrote them.
+   */
+  static void datasetsChanged(Collection<String> urns) {
+    List<DatasetRows> targets = loadedIndexes();
+    if (targets.isEmpty() || urns.isEmpty()) {
+      return;
+    }
+    try {
+      List<String> chunk = new ArrayList<>(Math.min(urns.size(), IN_CLAUSE_BATCH_SIZE));
+      for (String urn : urns) {
+        chunk.add(urn);
+        if (chunk.size() == IN_CLAUSE_BATCH_SIZE) {
+          load(targets, GET_DATASETS_BY_URNS, Collections.<String, Object>singletonMap("urns", chunk));
+          chunk = new ArrayList<>();
+        }
+      }
+      if (chunk.size() > 0) {
+        load(targets, GET_DATASETS_BY_URNS, Collections.<String, Object>singletonMap("urns", chunk));
+      }
+    } catch (DataAccessException e) {
+      // the periodic refresh will pick the change up
+      Logger.error("DatasetChangeTracker update failed", e);
+    }
+  }
+
+  static void datasetRemoved(String urn) {
+    for (DatasetRows idx : loadedIndexes()) {
+      idx.remove(urn);
+    }
+  }
+
+  private static List<DatasetRows> loadedIndexes() {
+    List<DatasetRows> loaded = new ArrayList<>();
+    for (Tracked<?> t : tracked) {
+      if (t.index != null) {
+        loaded.add(t.index);
+      }
+    }
+    return loaded;
+  }
+
+  private static void load(final List<DatasetRows> targets, String sql, Map<String, Object> params) {
+    JdbcUtil.wherehowsNamedJdbcTemplate.query(sql, params, new RowCallbackHandler() {
+      @Override
+      public void processRow(ResultSet rs) throws SQLException {
+        long time = rs.getLong("source_modified_time");
+        DatasetRow row = new DatasetRow(rs.getString("urn"), rs.getString("properties"),
+            rs.wasNull() ? null : time, rs.getLong("stamp"));
+        for (DatasetRows idx : targets) {
+          idx.put(row);
+        }
+      }
+    });
+  }
+}
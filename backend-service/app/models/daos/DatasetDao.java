@@ -20,9 +20,13 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.sql.SQLException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Map.Entry;
 import java.util.Iterator;
 import org.apache.commons.lang3.StringUtils;
@@ -70,13 +74,20 @@ public class DatasetDao {
           "LEFT JOIN dict_dataset_instance i ON c.object_dataset_id = i.dataset_id " +
           "WHERE c.object_dataset_id is not null and  lower(c.object_name) = ? and lower(i.server_cluster) = ?";
 
-  private final static String GET_DATASET_DEPENDS_VIEW = "SELECT object_type, object_sub_type, " +
-          "object_name, map_phrase, is_identical_map, mapped_object_dataset_id, " +
-          "mapped_object_type,  mapped_object_sub_type, mapped_object_name " +
-          "FROM cfg_object_name_map WHERE object_dataset_id = ?";
+  private final static String GET_DATASET_DEPENDS_VIEWS = "SELECT object_dataset_id, " +
+          "mapped_object_dataset_id, mapped_object_type, mapped_object_sub_type, mapped_object_name " +
+          "FROM cfg_object_name_map WHERE object_dataset_id IN (:ids) ORDER BY obj_name_map_id";
 
   public final static String GET_DATASET_URN_PROPERTIES_LIKE_EXPR = "select urn from dict_dataset where properties like :properties";
 
+  private final static String GET_DATASET_PROPERTIES_BY_URN = "SELECT properties FROM dict_dataset WHERE urn = :urn";
+
+  // only writes if nobody changed the properties since they were read
+  private final static String UPDATE_DATASET_PROPERTIES = "UPDATE dict_dataset SET properties = :properties, "
+      + "modified_time = UNIX_TIMESTAMP() WHERE urn = :urn AND properties <=> :old_properties";
+
+  private final static int UPDATE_PROPERTIES_ATTEMPTS = 3;
+
   public static final String GET_DATASET_DEPENDENTS_IN_OBJ_MAP_TABLE_BY_ID = "SELECT " +
           "c.object_dataset_id as dataset_id, d.urn, d.dataset_type, c.object_sub_type " +
           "FROM cfg_object_name_map c JOIN dict_dataset d ON c.object_dataset_id = d.id " +
@@ -103,6 +114,43 @@ public class DatasetDao {
 
   public static final String GET_AT_TIME_MORPHEME = "AND source_modified_time = :time ";
 
+  private static final String GET_DATASET_IDS_BY_URNS = "SELECT id, urn FROM dict_dataset WHERE urn IN (:urns)";
+
+  private static final String UPDATE_REF_DATASET_ID = "UPDATE dict_dataset SET ref_dataset_id = ? WHERE urn = ?";
+
+  // DatasetRecord fields written by the upsert, in fillAllFields() order; id is left to auto increment
+  private static final int UPSERT_FIRST_FIELD = 1;
+  private static final int UPSERT_LAST_FIELD = 19;
+
+  // insert a dataset, or update the existing row with the same urn (uq_dataset_urn) in the same statement.
+  // like updateDataset, only non null fields overwrite the existing row; the timestamp is created_time on insert
+  // and modified_time on update
+  private static final String UPSERT_DATASET = buildUpsertDataset();
+
+  private static final int UPSERT_BATCH_SIZE = 1000;
+
+  private static final int IN_CLAUSE_BATCH_SIZE = 1000;
+
+  // ObjectMapper is thread safe once configured
+  private static final ObjectMapper DATASET_MAPPER = new ObjectMapper();
+  static {
+    DATASET_MAPPER.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
+  }
+
+  private static String buildUpsertDataset() {
+    List<String> fieldNames = new DatasetRecord().fillAllFieldNames().subList(UPSERT_FIRST_FIELD, UPSERT_LAST_FIELD + 1);
+    List<String> columns = new ArrayList<>();
+    List<String> updates = new ArrayList<>();
+    for (String name : fieldNames) {
+      columns.add("`" + name + "`");
+      updates.add("`" + name + "` = COALESCE(VALUES(`" + name + "`), `" + name + "`)");
+    }
+    columns.add("`created_time`");
+    updates.add("`modified_time` = VALUES(`created_time`)");
+    return "INSERT INTO dict_dataset (" + StringUtils.join(columns, ", ") + ") VALUES ("
+        + StringUtils.repeat("?", ", ", columns.size()) + ") ON DUPLICATE KEY UPDATE " + StringUtils.join(updates, ", ");
+  }
+
 
   public static Map<String, Object> getDatasetById(int datasetId)
     throws SQLException {
@@ -121,9 +169,7 @@ public class DatasetDao {
   public static void insertDataset(JsonNode dataset)
     throws Exception {
 
-    ObjectMapper om = new ObjectMapper();
-    om.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
-    DatasetRecord record = om.convertValue(dataset, DatasetRecord.class);
+    DatasetRecord record = DATASET_MAPPER.convertValue(dataset, DatasetRecord.class);
 
     if (record.getRefDatasetUrn() != null) {
       Map<String, Object> refDataset = getDatasetByUrn(record.getRefDatasetUrn());
@@ -137,34 +183,124 @@ public class DatasetDao {
     DatabaseWriter dw = new DatabaseWriter(JdbcUtil.wherehowsJdbcTemplate, "dict_dataset");
     dw.append(record);
     dw.close();
+    datasetsChanged(Collections.singletonList(record.getUrn()));
   }
 
   // might want to log the json that we recieve
   public static void setDatasetRecord (JsonNode dataset) throws Exception {
-    ObjectMapper om = new ObjectMapper();
-    om.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
-    DatasetRecord record = om.convertValue(dataset, DatasetRecord.class);
+    setDatasetRecords(dataset);
+  }
 
-    if (record != null) {
-      Map<String, Object> params = new HashMap<>();
-      params.put("urn", record.getUrn());
-      if (record.getUrn().indexOf(":///") == -1) {
+  /**
+   * Insert or update a dataset, or every dataset of a json array, keyed on urn.
+   * Each chunk of datasets is written with one batched INSERT ... ON DUPLICATE KEY UPDATE,
+   * and all ref_dataset_urn of the request are resolved with one query.
+   * @param datasets a dataset json object, or an array of them
+   * @return number of datasets written
+   */
+  public static int setDatasetRecords(JsonNode datasets) throws Exception {
+    List<DatasetRecord> records = new ArrayList<>();
+    if (datasets.isArray()) {
+      for (JsonNode dataset : datasets) {
+        records.add(DATASET_MAPPER.convertValue(dataset, DatasetRecord.class));
+      }
+    } else {
+      records.add(DATASET_MAPPER.convertValue(datasets, DatasetRecord.class));
+    }
+
+    Set<String> refUrns = new HashSet<>();
+    for (DatasetRecord record : records) {
+      if (record.getUrn() == null || record.getUrn().indexOf(":///") == -1) {
         throw new Exception("improperly formatted urn: " + record.getUrn() + ", requires ':///'");
       }
-      try {
-        Map<String, Object> result = JdbcUtil.wherehowsNamedJdbcTemplate.queryForMap(GET_DATASET_BY_URN, params);
-        updateDataset(dataset);
-      } catch (EmptyResultDataAccessException e) {
-        insertDataset(dataset);
+      if (record.getRefDatasetUrn() != null) {
+        refUrns.add(record.getRefDatasetUrn());
+      }
+    }
+
+    Map<String, Integer> refIds = getDatasetIdsByUrns(refUrns);
+    // refs to datasets created by this same request can only be resolved after the upsert
+    List<DatasetRecord> unresolved = new ArrayList<>();
+    for (DatasetRecord record : records) {
+      if (record.getRefDatasetUrn() != null) {
+        Integer refId = refIds.get(record.getRefDatasetUrn());
+        if (refId != null) {
+          record.setRefDatasetId(refId);
+        } else {
+          unresolved.add(record);
+        }
+      }
+    }
+
+    long now = System.currentTimeMillis() / 1000;
+    List<Object[]> batch = new ArrayList<>();
+    for (DatasetRecord record : records) {
+      List<Object> fields = record.fillAllFields().subList(UPSERT_FIRST_FIELD, UPSERT_LAST_FIELD + 1);
+      Object[] values = new Object[fields.size() + 1];
+      for (int i = 0; i < fields.size(); i++) {
+        Object value = fields.get(i);
+        values[i] = value instanceof Character ? value.toString() : value;
+      }
+      values[fields.size()] = now;
+      batch.add(values);
+      if (batch.size() >= UPSERT_BATCH_SIZE) {
+        JdbcUtil.wherehowsJdbcTemplate.batchUpdate(UPSERT_DATASET, batch);
+        batch.clear();
+      }
+    }
+    if (batch.size() > 0) {
+      JdbcUtil.wherehowsJdbcTemplate.batchUpdate(UPSERT_DATASET, batch);
+    }
+    List<String> urns = new ArrayList<>(records.size());
+    for (DatasetRecord record : records) {
+      urns.add(record.getUrn());
+    }
+    datasetsChanged(urns);
+
+    if (unresolved.size() > 0) {
+      refUrns.clear();
+      for (DatasetRecord record : unresolved) {
+        refUrns.add(record.getRefDatasetUrn());
+      }
+      refIds = getDatasetIdsByUrns(refUrns);
+      List<Object[]> refUpdates = new ArrayList<>();
+      for (DatasetRecord record : unresolved) {
+        Integer refId = refIds.get(record.getRefDatasetUrn());
+        if (refId != null) {
+          refUpdates.add(new Object[]{refId, record.getUrn()});
+        } else {
+          Logger.warn("ref dataset " + record.getRefDatasetUrn() + " of " + record.getUrn() + " not found");
+        }
+      }
+      if (refUpdates.size() > 0) {
+        JdbcUtil.wherehowsJdbcTemplate.batchUpdate(UPDATE_REF_DATASET_ID, refUpdates);
       }
     }
+    return records.size();
+  }
+
+  // map of urn to dataset id, urns that don't exist are left out
+  private static Map<String, Integer> getDatasetIdsByUrns(Collection<String> urns) {
+    Map<String, Integer> ids = new HashMap<>();
+    List<String> chunk = new ArrayList<>();
+    Iterator<String> iter = urns.iterator();
+    while (iter.hasNext()) {
+      chunk.add(iter.next());
+      if (chunk.size() == IN_CLAUSE_BATCH_SIZE || !iter.hasNext()) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("urns", chunk);
+        for (Map<String, Object> row : JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(GET_DATASET_IDS_BY_URNS, params)) {
+          ids.put((String) row.get("urn"), ((Number) row.get("id")).intValue());
+        }
+        chunk = new ArrayList<>();
+      }
+    }
+    return ids;
   }
 
   public static void updateDataset(JsonNode dataset)
     throws Exception {
-    ObjectMapper om = new ObjectMapper();
-    om.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
-    DatasetRecord record = om.convertValue(dataset, DatasetRecord.class);
+    DatasetRecord record = DATASET_MAPPER.convertValue(dataset, DatasetRecord.class);
     if (record.getRefDatasetUrn() != null) {
       Map<String, Object> refDataset = getDatasetByUrn(record.getRefDatasetUrn());
       // Find ref dataset id
@@ -176,6 +312,7 @@ public class DatasetDao {
     DatabaseWriter dw = new DatabaseWriter(JdbcUtil.wherehowsJdbcTemplate, "dict_dataset");
     dw.update(record.toUpdateDatabaseValue(), record.getUrn());
     dw.close();
+    datasetsChanged(Collections.singletonList(record.getUrn()));
   }
 
   public static int getDatasetDependencies(
@@ -189,47 +326,96 @@ public class DatasetDao {
       depends = new ArrayList<DatasetDependencyRecord>();
     }
 
-    List<Map<String, Object>> rows = null;
-    rows = JdbcUtil.wherehowsJdbcTemplate.queryForList(
-            GET_DATASET_DEPENDS_VIEW,
-            datasetId);
+    return appendDependencies(getDependsViews(datasetId), datasetId, topologySortId, level, depends,
+            new HashSet<Long>());
+  }
+
+  // a dataset that is already on the path from the root is listed but not expanded again, which ends cycles
+  private static int appendDependencies(
+          Map<Long, List<Map<String, Object>>> views,
+          Long datasetId,
+          String topologySortId,
+          int level,
+          List<DatasetDependencyRecord> depends,
+          Set<Long> path)
+  {
+    List<Map<String, Object>> rows = datasetId == null ? null : views.get(datasetId);
+    if (rows == null || !path.add(datasetId))
+    {
+      return 0;
+    }
 
     int index = 1;
-    if (rows != null)
+    for (Map<String, Object> row : rows) {
+      DatasetDependencyRecord datasetDependencyRecord = new DatasetDependencyRecord();
+      datasetDependencyRecord.dataset_id = toLong(row.get("mapped_object_dataset_id"));
+      String objectName = (String) row.get("mapped_object_name");
+      if (StringUtils.isNotBlank(objectName))
+      {
+        String[] info = objectName.split("/");
+        if (info != null && info.length == 3)
+        {
+          datasetDependencyRecord.database_name = info[1];
+          datasetDependencyRecord.table_name = info[2];
+        }
+      }
+      datasetDependencyRecord.level_from_root = level;
+      datasetDependencyRecord.type = (String) row.get("mapped_object_sub_type");
+      datasetDependencyRecord.ref_obj_location = objectName;
+      datasetDependencyRecord.ref_obj_type = (String) row.get("mapped_object_type");
+      datasetDependencyRecord.topology_sort_id = topologySortId + Integer.toString((index++)*100);
+      datasetDependencyRecord.next_level_dependency_count =
+              appendDependencies(views, datasetDependencyRecord.dataset_id,
+                      datasetDependencyRecord.topology_sort_id,
+                      level + 1,
+                      depends,
+                      path);
+      depends.add(datasetDependencyRecord);
+    }
+    path.remove(datasetId);
+    return rows.size();
+  }
+
+  // the views reachable from `datasetId` by the dataset they depend from, one IN query per level
+  private static Map<Long, List<Map<String, Object>>> getDependsViews(Long datasetId)
+  {
+    Map<Long, List<Map<String, Object>>> views = new HashMap<>();
+    Set<Long> frontier = new HashSet<>();
+    if (datasetId != null)
     {
-      for (Map row : rows) {
-        DatasetDependencyRecord datasetDependencyRecord = new DatasetDependencyRecord();
-        datasetDependencyRecord.dataset_id = (Long) row.get("mapped_object_dataset_id");
-        String objectName = (String) row.get("mapped_object_name");
-        if (StringUtils.isNotBlank(objectName))
+      frontier.add(datasetId);
+    }
+    while (!frontier.isEmpty())
+    {
+      for (Long id : frontier)
+      {
+        views.put(id, new ArrayList<Map<String, Object>>());
+      }
+      List<Long> ids = new ArrayList<>(frontier);
+      frontier = new HashSet<>();
+      for (int from = 0; from < ids.size(); from += IN_CLAUSE_BATCH_SIZE)
+      {
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", ids.subList(from, Math.min(ids.size(), from + IN_CLAUSE_BATCH_SIZE)));
+        for (Map<String, Object> row : JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(GET_DATASET_DEPENDS_VIEWS, params))
         {
-          String[] info = objectName.split("/");
-          if (info != null && info.length == 3)
+          views.get(toLong(row.get("object_dataset_id"))).add(row);
+          Long mappedId = toLong(row.get("mapped_object_dataset_id"));
+          if (mappedId != null && !views.containsKey(mappedId))
           {
-            datasetDependencyRecord.database_name = info[1];
-            datasetDependencyRecord.table_name = info[2];
+            frontier.add(mappedId);
           }
         }
-        datasetDependencyRecord.level_from_root = level;
-        datasetDependencyRecord.type = (String) row.get("mapped_object_sub_type");
-        datasetDependencyRecord.ref_obj_location = objectName;
-        datasetDependencyRecord.ref_obj_type = (String) row.get("mapped_object_type");
-        datasetDependencyRecord.topology_sort_id = topologySortId + Integer.toString((index++)*100);
-        datasetDependencyRecord.next_level_dependency_count =
-                getDatasetDependencies(datasetDependencyRecord.dataset_id,
-                        datasetDependencyRecord.topology_sort_id,
-                        level + 1,
-                        depends);
-        depends.add(datasetDependencyRecord);
       }
-      return rows.size();
-    }
-    else
-    {
-      return 0;
     }
+    return views;
+  }
+
+  private static Long toLong(Object value)
+  {
+    return value == null ? null : ((Number) value).longValue();
   }
-  
+
   public static ObjectNode getDatasetDependency(JsonNode input)
           throws Exception {
 
@@ -436,13 +622,18 @@ public class DatasetDao {
      ObjectNode result = Json.newObject();
      List<String> datasetUrns = new ArrayList<String>();
      if (StringUtils.isNotBlank(properties)) {
-       Map<String, Object> params = new HashMap<>();
-       params.put("properties", properties);
-       List<Map<String, Object>> rows = null;
-       rows = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(GET_DATASET_URN_PROPERTIES_LIKE_EXPR, params);
-       for (Map row : rows) {
-         String datasetUrn = (String) row.get("urn");
-         datasetUrns.add(datasetUrn);
+       List<String> indexed = DatasetPropertyIndex.isEnabled() ? DatasetPropertyIndex.findUrns(properties) : null;
+       if (indexed != null) {
+         datasetUrns.addAll(indexed);
+       } else {
+         Map<String, Object> params = new HashMap<>();
+         params.put("properties", properties);
+         List<Map<String, Object>> rows = null;
+         rows = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(GET_DATASET_URN_PROPERTIES_LIKE_EXPR, params);
+         for (Map row : rows) {
+           String datasetUrn = (String) row.get("urn");
+           datasetUrns.add(datasetUrn);
+         }
        }
        result.put("count", datasetUrns.size());
        result.set("urns", Json.toJson(datasetUrns));
@@ -474,7 +665,9 @@ public class DatasetDao {
    // implimentation of getting latest entity of a type
    public static ObjectNode getLatestOfType(String type) throws SQLException {
      ObjectNode result = Json.newObject();
-     if (StringUtils.isNotBlank(type)) {
+     if (StringUtils.isNotBlank(type) && ValidDatasetIndex.isEnabled()) {
+       putLatestUrn(result, ValidDatasetIndex.getLatest(type));
+     } else if (StringUtils.isNotBlank(type)) {
        Map<String, Object> params = new HashMap<>();
        params.put("type", type + "://%");
        List<Map<String, Object>> rows = null;
@@ -491,7 +684,9 @@ public class DatasetDao {
    // implimentation of getting latest entitiy of type after a time
    public static ObjectNode getLatestAfter(String type, long time) throws SQLException {
      ObjectNode result = Json.newObject();
-     if (StringUtils.isNotBlank(type)) {
+     if (StringUtils.isNotBlank(type) && ValidDatasetIndex.isEnabled()) {
+       putLatestUrn(result, ValidDatasetIndex.getLatestAfter(type, time));
+     } else if (StringUtils.isNotBlank(type)) {
        Map<String, Object> params = new HashMap<>();
        params.put("type", type + "://%");
        params.put("time", time);
@@ -509,7 +704,9 @@ public class DatasetDao {
    // implimentation of getting latest entitiy of type before a time
    public static ObjectNode getLatestBefore(String type, long time) throws SQLException {
      ObjectNode result = Json.newObject();
-     if (StringUtils.isNotBlank(type)) {
+     if (StringUtils.isNotBlank(type) && ValidDatasetIndex.isEnabled()) {
+       putLatestUrn(result, ValidDatasetIndex.getLatestBefore(type, time));
+     } else if (StringUtils.isNotBlank(type)) {
        Map<String, Object> params = new HashMap<>();
        params.put("type", type + "://%");
        params.put("time", time);
@@ -527,7 +724,9 @@ public class DatasetDao {
    // implimentation of getting latest entitiy of type between two times
    public static ObjectNode getLatestBetween(String type, long firsttime, long secondtime) throws SQLException {
      ObjectNode result = Json.newObject();
-     if (StringUtils.isNotBlank(type)) {
+     if (StringUtils.isNotBlank(type) && ValidDatasetIndex.isEnabled()) {
+       putLatestUrn(result, ValidDatasetIndex.getLatestBetween(type, firsttime, secondtime));
+     } else if (StringUtils.isNotBlank(type)) {
        Map<String, Object> params = new HashMap<>();
        params.put("type", type + "://%");
        params.put("firsttime", firsttime);
@@ -546,7 +745,9 @@ public class DatasetDao {
    // implimentation of getting latest entitiy of type at a specific time and only that time
   public static ObjectNode getAtTime(String type, long time) throws SQLException {
     ObjectNode result = Json.newObject();
-    if (StringUtils.isNotBlank(type)) {
+    if (StringUtils.isNotBlank(type) && ValidDatasetIndex.isEnabled()) {
+      putLatestUrn(result, ValidDatasetIndex.getAtTime(type, time));
+    } else if (StringUtils.isNotBlank(type)) {
       Map<String, Object> params = new HashMap<>();
       params.put("type", type + "://%");
       params.put("time", time);
@@ -561,33 +762,47 @@ public class DatasetDao {
     return result;
   }
 
-  // implimentation of updating properties
+  // keeps the in-memory dataset indexes in step with writes made here
+  private static void datasetsChanged(Collection<String> urns) {
+    DatasetChangeTracker.datasetsChanged(urns);
+  }
+
+  private static void putLatestUrn(ObjectNode result, String urn) {
+    if (urn != null) {
+      result.put("urn", urn);
+    } else {
+      result.put("message", "none found");
+    }
+  }
+
+  // implimentation of updating properties, only the properties column of the dataset is written
   public static void updateProperties(JsonNode propChanges) throws Exception, SQLException, IOException {
     String urn = propChanges.get("urn").textValue();
-    Map<String, Object> row = null;
     Logger.info("urn: " + urn);
     Map<String, Object> params = new HashMap<>();
     params.put("urn", urn);
-    List<Map<String, Object>> rows = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList("SELECT * FROM dict_dataset WHERE urn=:urn", params);
-    if (rows.size() > 0) {
-      row = rows.get(0);
-      Logger.info("row: " + row.toString());
-      String oldProps = (String) row.get("properties");
-      String youngProps = propChanges.toString();
-      String updateProps = editProps(oldProps, youngProps);
+    for (int attempt = 0; attempt < UPDATE_PROPERTIES_ATTEMPTS; attempt++) {
+      List<String> rows = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(GET_DATASET_PROPERTIES_BY_URN, params, String.class);
+      if (rows.size() == 0) {
+        Logger.debug("nothing found for urn: " + urn);
+        throw new Exception("nothing found for urn: " + urn);
+      }
+      String oldProps = rows.get(0);
+      String updateProps = editProps(oldProps == null ? "{}" : oldProps, propChanges.toString());
+      if (updateProps.equals(oldProps)) {
+        return;
+      }
       Logger.info("updateProps: " + updateProps);
-      row.put("properties", updateProps);
-      // need to remove these properties because they don't like being updated
-      row.remove("created_time");
-      row.remove("modified_time");
-      row.remove("wh_etl_exec_id");
-      ObjectMapper mapper = new ObjectMapper();
-      JsonNode temp = mapper.convertValue(row, JsonNode.class);
-      updateDataset(temp);
-    } else {
-      Logger.debug("nothing found for urn: " + urn);
-      throw new Exception("nothing found for urn: " + urn);
+      params.put("properties", updateProps);
+      params.put("old_properties", oldProps);
+      if (JdbcUtil.wherehowsNamedJdbcTemplate.update(UPDATE_DATASET_PROPERTIES, params) > 0) {
+        datasetsChanged(Collections.singletonList(urn));
+        return;
+      }
+      // the properties were changed in between, merge into the new ones
     }
+    throw new Exception("properties of urn " + urn + " kept changing, gave up after "
+        + UPDATE_PROPERTIES_ATTEMPTS + " attempts");
   }
 
   // function that actually edits the properties, takes in and returns strings so it can be more easily replaced if necessary
@@ -668,6 +883,7 @@ public class DatasetDao {
       Map<String, String> params = new HashMap();
       params.put("urn", "'" + urn + "'");
       dw.remove(params);
+      DatasetChangeTracker.datasetRemoved(urn);
     } catch (Exception e) {
       Logger.error("Exeption trying to remove dataset with urn " + urn + ": ", e);
     }
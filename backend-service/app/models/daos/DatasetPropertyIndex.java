@@ -0,0 +1,245 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package models.daos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import play.Play;
+
+
+/**
+ * Inverted index from the "key": "value" pairs in the dict_dataset.properties text to dataset urns,
+ * for the /dataset/properties lookups.
+ *
+ * A `propertiesLike` pattern of the form %"key":"value"% is answered by a seek on the pair instead of a LIKE
+ * scan of every properties text. Pairs are taken from the text as it is stored, with the characters between
+ * the quoted key and value, so a pattern only matches the spacing around the colon it was written with.
+ * Matching is case insensitive and '_' matches any one character like it does in LIKE; any other pattern
+ * still goes to the database.
+ *
+ * DatasetChangeTracker keeps the index up to date, checking dict_dataset at most once per
+ * `dataset.properties.refresh.interval` seconds.
+ */
+public class DatasetPropertyIndex {
+
+  public static final String DATASET_PROPERTY_INDEX_ENABLED_KEY = "dataset.properties.in.memory";
+
+  public static final String DATASET_PROPERTY_INDEX_REFRESH_INTERVAL_KEY = "dataset.properties.refresh.interval";
+
+  // %"key":"value"%, any spacing around the colon, with no other LIKE wildcard than '_' and nothing escaped
+  private static final Pattern KEY_VALUE_LIKE =
+      Pattern.compile("^%\"([^\"%\\\\]+)\"(\\s*:\\s*)\"([^\"%\\\\]*)\"%$");
+
+  // a "key": "value" pair in the properties text, looked for at every double quote
+  private static final Pattern KEY_VALUE_TEXT = Pattern.compile("\"([^\"]+)\"(\\s*:\\s*)\"([^\"]*)\"");
+
+  private static final DatasetChangeTracker.Tracked<Index> tracked =
+      DatasetChangeTracker.track(new DatasetChangeTracker.Tracked<Index>() {
+        @Override
+        Index newIndex() {
+          return new Index();
+        }
+      });
+
+  public static boolean isEnabled() {
+    return Play.application().configuration().getBoolean(DATASET_PROPERTY_INDEX_ENABLED_KEY, true);
+  }
+
+  /**
+   * @return the sorted urns of the datasets matching `propertiesLike`,
+   *   or null when it isn't a single "key": "value" pattern the index can answer
+   */
+  public static List<String> findUrns(String propertiesLike) {
+    Matcher matcher = KEY_VALUE_LIKE.matcher(propertiesLike.trim());
+    if (!matcher.matches()) {
+      return null;
+    }
+    return current().find(pairKey(matcher.group(1).toLowerCase(Locale.ROOT), matcher.group(2)),
+        matcher.group(3).toLowerCase(Locale.ROOT));
+  }
+
+  static Index current() {
+    return DatasetChangeTracker.current(tracked, getRefreshIntervalMillis());
+  }
+
+  /**
+   * Every "key": "value" in the properties text, starting at any double quote, as {lower cased key and the
+   * characters up to the value, lower cased value}. Those are exactly the places a %"key":"value"% pattern
+   * can match, whether or not the text is valid JSON.
+   */
+  static List<String[]> pairsOf(String properties) {
+    List<String[]> pairs = new ArrayList<>();
+    if (properties == null) {
+      return pairs;
+    }
+    Matcher matcher = KEY_VALUE_TEXT.matcher(properties);
+    for (int i = properties.indexOf('"'); i >= 0; i = properties.indexOf('"', i + 1)) {
+      matcher.region(i, properties.length());
+      if (matcher.lookingAt()) {
+        pairs.add(new String[]{pairKey(matcher.group(1).toLowerCase(Locale.ROOT), matcher.group(2)),
+            matcher.group(3).toLowerCase(Locale.ROOT)});
+      }
+    }
+    return pairs;
+  }
+
+  // the key with its closing quote and the separator, which a LIKE pattern has to match character by character
+  static String pairKey(String key, String separator) {
+    return key + '"' + separator;
+  }
+
+  // LIKE without '%': same length, every character equal or '_'
+  static boolean likeMatches(String pattern, String text) {
+    if (pattern.length() != text.length()) {
+      return false;
+    }
+    for (int i = 0; i < pattern.length(); i++) {
+      if (pattern.charAt(i) != '_' && pattern.charAt(i) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long getRefreshIntervalMillis() {
+    return Play.application().configuration().getLong(DATASET_PROPERTY_INDEX_REFRESH_INTERVAL_KEY, 60L) * 1000L;
+  }
+
+  static final class Index implements DatasetChangeTracker.DatasetRows {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // pair key -> value -> urns
+    private final Map<String, Map<String, Set<String>>> urnsByPair = new HashMap<>();
+    // every dataset seen, with the pairs it is indexed under
+    private final Map<String, List<String[]>> pairsByUrn = new HashMap<>();
+    volatile long maxStamp = 0L;
+
+    @Override
+    public int size() {
+      lock.readLock().lock();
+      try {
+        return pairsByUrn.size();
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public long maxStamp() {
+      return maxStamp;
+    }
+
+    @Override
+    public void put(DatasetChangeTracker.DatasetRow row) {
+      put(row.urn, pairsOf(row.properties), row.stamp);
+    }
+
+    void put(String urn, List<String[]> pairs, long stamp) {
+      if (urn == null) {
+        return;
+      }
+      lock.writeLock().lock();
+      try {
+        unlink(urn, pairsByUrn.get(urn));
+        for (String[] pair : pairs) {
+          Map<String, Set<String>> values = urnsByPair.get(pair[0]);
+          if (values == null) {
+            values = new HashMap<>();
+            urnsByPair.put(pair[0], values);
+          }
+          Set<String> urns = values.get(pair[1]);
+          if (urns == null) {
+            urns = new HashSet<>();
+            values.put(pair[1], urns);
+          }
+          urns.add(urn);
+        }
+        pairsByUrn.put(urn, pairs);
+        if (stamp > maxStamp) {
+          maxStamp = stamp;
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    @Override
+    public void remove(String urn) {
+      lock.writeLock().lock();
+      try {
+        unlink(urn, pairsByUrn.remove(urn));
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private void unlink(String urn, List<String[]> pairs) {
+      if (pairs == null) {
+        return;
+      }
+      for (String[] pair : pairs) {
+        Map<String, Set<String>> values = urnsByPair.get(pair[0]);
+        Set<String> urns = values == null ? null : values.get(pair[1]);
+        if (urns != null && urns.remove(urn) && urns.isEmpty()) {
+          values.remove(pair[1]);
+          if (values.isEmpty()) {
+            urnsByPair.remove(pair[0]);
+          }
+        }
+      }
+    }
+
+    // key and value are lower cased LIKE patterns without '%'
+    List<String> find(String key, String value) {
+      Set<String> found = new TreeSet<>();
+      lock.readLock().lock();
+      try {
+        for (Map<String, Set<String>> values : candidates(urnsByPair, key)) {
+          for (Set<String> urns : candidates(values, value)) {
+            found.addAll(urns);
+          }
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+      return new ArrayList<>(found);
+    }
+
+    // a direct lookup, or a pass over the map keys when the pattern has a '_' wildcard
+    private static <V> List<V> candidates(Map<String, V> map, String pattern) {
+      List<V> matches = new ArrayList<>();
+      if (pattern.indexOf('_') < 0) {
+        V match = map.get(pattern);
+        if (match != null) {
+          matches.add(match);
+        }
+        return matches;
+      }
+      for (Map.Entry<String, V> entry : map.entrySet()) {
+        if (likeMatches(pattern, entry.getKey())) {
+          matches.add(entry.getValue());
+        }
+      }
+      return matches;
+    }
+  }
+}
@@ -17,10 +17,13 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import org.springframework.dao.DataAccessException;
 import play.Logger;
@@ -43,12 +46,51 @@ import wherehows.common.exceptions.IncompleteJsonException;
  */
 public class LineageDaoLite {
 
+    // edges are written with INSERT IGNORE so the unique (parent_urn, child_urn) key drops edges already in family
+    private final static String INSERT_IGNORE_EDGE =
+            PreparedStatementUtil.prepareInsertTemplateWithColumn("INSERT IGNORE", "family", new String[]{"parent_urn", "child_urn"});
+
+    private final static int EDGE_BATCH_SIZE = 1000;
+
     // insert relationships between give nodes into family table
     // all parents in parents array are parents of every child in the children array
     public static void insertLineage(JsonNode lineage) throws Exception, IOException, SQLException, IncompleteJsonException {
-        List<LineageRecordLite> records = new ArrayList<LineageRecordLite>();
+        insertLineages(lineage);
+    }
 
-        // check that both parent_urn and child_urn are present, if not, then error out
+    /**
+     * Insert many lineage documents at once. Each document is {"parent_urn": [...], "child_urn": [...]}
+     * and stands for every parent -> child edge of the cross product.
+     * Edges are deduplicated in memory across all documents before the batched insert.
+     * @param lineages a lineage document or an array of them
+     * @return number of distinct edges sent to the database
+     */
+    public static int insertLineages(JsonNode lineages) throws IncompleteJsonException, DataAccessException {
+        Set<Map.Entry<String, String>> edges = new LinkedHashSet<>();
+        if (lineages.isArray()) {
+            for (JsonNode lineage : lineages) {
+                addEdges(lineage, edges);
+            }
+        } else {
+            addEdges(lineages, edges);
+        }
+
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<String, String> edge : edges) {
+            batch.add(new Object[]{edge.getKey(), edge.getValue()});
+            if (batch.size() >= EDGE_BATCH_SIZE) {
+                JdbcUtil.wherehowsJdbcTemplate.batchUpdate(INSERT_IGNORE_EDGE, batch);
+                batch.clear();
+            }
+        }
+        if (batch.size() > 0) {
+            JdbcUtil.wherehowsJdbcTemplate.batchUpdate(INSERT_IGNORE_EDGE, batch);
+        }
+        return edges.size();
+    }
+
+    // check that both parent_urn and child_urn are present, if not, then error out
+    private static void addEdges(JsonNode lineage, Set<Map.Entry<String, String>> edges) throws IncompleteJsonException {
         if (lineage.has("parent_urn") && lineage.has("child_urn")) {
             JsonNode parents = lineage.findPath("parent_urn");
             JsonNode children = lineage.findPath("child_urn");
@@ -56,18 +98,12 @@ public class LineageDaoLite {
             if (parents.isArray() && children.isArray()) {
                 for (JsonNode parent : parents) {
                     for (JsonNode child : children) {
-                        LineageRecordLite record = new LineageRecordLite(parent.textValue(), child.textValue());
-                        records.add(record);
+                        if (parent.isTextual() && child.isTextual()) {
+                            edges.add(new AbstractMap.SimpleImmutableEntry<>(parent.textValue(), child.textValue()));
+                        }
                     }
                 }
             }
-
-            DatabaseWriter dw = new DatabaseWriter(JdbcUtil.wherehowsJdbcTemplate, "family");
-            for (LineageRecordLite record : records) {
-                dw.append(record);
-            }
-            dw.insert("parent_urn, child_urn"); // overload to use slightly better version of insert function
-            dw.close();
         } else if (lineage.has("parent_urn") && !lineage.has("child_urn")) {
             throw new IncompleteJsonException("Missing `child_urn` field");
         } else if (!lineage.has("parent_urn") && lineage.has("child_urn")) {
@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 import org.springframework.dao.DataAccessException;
 import wherehows.common.exceptions.IncompleteJsonException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +27,7 @@ import java.util.ArrayList;
 import utils.Urn;
 import utils.JdbcUtil;
 import play.Logger;
+import play.Play;
 import wherehows.common.schemas.PropertyRecord;
 import wherehows.common.writers.DatabaseWriter;
 
@@ -48,33 +50,93 @@ import wherehows.common.schemas.DatasetRecord;
 // implimentations to go along with the controllers in PropertyController
 public class PropertyDao {
 
+    public static final String PROPERTY_CACHE_REFRESH_INTERVAL_KEY = "property.cache.refresh.interval";
+
     // sql query for getting the value of a property
     private final static String GET_PROPERTY = "SELECT property_value FROM wh_property WHERE property_name = :name";
 
+    // sql query for loading the whole property table into the cache
+    private final static String GET_ALL_PROPERTIES = "SELECT property_name, property_value FROM wh_property";
+
+    // immutable snapshot of wh_property, replaced as a whole on refresh
+    private static volatile Map<String, String> properties = null;
+
+    private static volatile long loadedMillis = 0L;
+
 
 
     // function for getting the value of a property, returns "default" if the property does not exist
     private static String recProp(String propName) {
+        Map<String, String> props = getProperties();
+        if (props != null) {
+            if (!props.containsKey(propName)) {
+                Logger.info("Could not find property for property_name: " + propName);
+                return "default";
+            }
+            return props.get(propName);
+        }
+
         Map<String, Object> params = new HashMap<>();
         params.put("name", propName);
-        List<Map<String, Object>> props = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(GET_PROPERTY, params);
-        if (props == null || props.size() == 0) {
+        List<Map<String, Object>> rows = JdbcUtil.wherehowsNamedJdbcTemplate.queryForList(GET_PROPERTY, params);
+        if (rows == null || rows.size() == 0) {
             Logger.info("Could not find property for property_name: " + propName);
             return "default";
         }
-        for (Map p : props) {
+        for (Map p : rows) {
             return (String) p.get("property_value");
         }
         return "default";
     }
 
+    // returns the cached property snapshot, reloading it after a write through this DAO or when it is older than
+    // property.cache.refresh.interval seconds, so changes made by other instances show up too.
+    // null if caching is disabled (interval <= 0) or the table could not be loaded yet
+    private static Map<String, String> getProperties() {
+        long interval = Play.application().configuration().getLong(PROPERTY_CACHE_REFRESH_INTERVAL_KEY, 60L) * 1000L;
+        if (interval <= 0) {
+            return null;
+        }
+        if (System.currentTimeMillis() - loadedMillis > interval) {
+            loadProperties(interval);
+        }
+        return properties;
+    }
+
+    private static synchronized void loadProperties(long interval) {
+        // another request may have reloaded while this one waited for the lock
+        if (System.currentTimeMillis() - loadedMillis <= interval) {
+            return;
+        }
+        try {
+            Map<String, String> props = new HashMap<>();
+            for (Map<String, Object> row : JdbcUtil.wherehowsJdbcTemplate.queryForList(GET_ALL_PROPERTIES)) {
+                props.put((String) row.get("property_name"), (String) row.get("property_value"));
+            }
+            properties = Collections.unmodifiableMap(props);
+        } catch (DataAccessException e) {
+            Logger.error("Failed to load wh_property", e);
+        }
+        // also on failure, so a broken database doesn't turn every lookup into a reload attempt
+        loadedMillis = System.currentTimeMillis();
+    }
+
+    // expire the snapshot after a write so the next read sees it
+    private static void invalidateProperties() {
+        loadedMillis = 0L;
+    }
+
     // function for actuallu setting a property/preference
     private static void setProp(String propName, String propVal) throws IOException, SQLException, DataAccessException {
         DatabaseWriter dw = new DatabaseWriter(JdbcUtil.wherehowsJdbcTemplate, "wh_property");
         PropertyRecord record = new PropertyRecord(propName, propVal, "N");
         dw.append(record);
-        boolean temp = dw.insert("property_name, property_value, is_encrypted");
-        dw.close();
+        try {
+            boolean temp = dw.insert("property_name, property_value, is_encrypted");
+            dw.close();
+        } finally {
+            invalidateProperties();
+        }
     }
 
     // function for actually removing a  property/preference
@@ -82,13 +144,21 @@ public class PropertyDao {
         DatabaseWriter dw = new DatabaseWriter(JdbcUtil.wherehowsJdbcTemplate, "wh_property");
         Map<String, String> params = new HashMap();
         params.put("property_name", "'" + propName + "'");
-        dw.remove(params);
+        try {
+            dw.remove(params);
+        } finally {
+            invalidateProperties();
+        }
     }
 
     // function for updating property/preference
     private static void chngProp(String propName, String propVal) throws IOException, SQLException, DataAccessException {
         DatabaseWriter dw = new DatabaseWriter(JdbcUtil.wherehowsJdbcTemplate, "wh_property");
-        dw.generalUpdate("property_value = '" + propVal + "'", "property_name", propName);
+        try {
+            dw.generalUpdate("property_value = '" + propVal + "'", "property_name", propName);
+        } finally {
+            invalidateProperties();
+        }
     }
 
 
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package models.daos;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import play.Play;
+
+
+/**
+ * Valid datasets of each type, ordered by source_modified_time, for the DatasetDao getLatest* and getAtTime
+ * lookups. The type of a dataset is its urn platform (the part before "://"), which is what
+ * `urn LIKE 'type://%'` in DatasetDao.GET_LATEST_PREFIX matches, and a dataset is valid when its
+ * properties hold "valid": "true". Every lookup is then a floor / lower search in one sorted set.
+ *
+ * DatasetChangeTracker keeps the index up to date, checking dict_dataset at most once per
+ * `dataset.valid.refresh.interval` seconds.
+ */
+public class ValidDatasetIndex {
+
+  public static final String VALID_DATASET_INDEX_ENABLED_KEY = "dataset.valid.in.memory";
+
+  public static final String VALID_DATASET_INDEX_REFRESH_INTERVAL_KEY = "dataset.valid.refresh.interval";
+
+  // stands for a NULL source_modified_time, which sorts before every time and never matches a time range
+  private static final long NO_TIME = Long.MIN_VALUE;
+
+  private static final DatasetChangeTracker.Tracked<Index> tracked =
+      DatasetChangeTracker.track(new DatasetChangeTracker.Tracked<Index>() {
+        @Override
+        Index newIndex() {
+          return new Index();
+        }
+      });
+
+  public static boolean isEnabled() {
+    return Play.application().configuration().getBoolean(VALID_DATASET_INDEX_ENABLED_KEY, true);
+  }
+
+  /**
+   * @return urn of the valid dataset of the type with the latest source_modified_time, or null
+   */
+  public static String getLatest(String type) {
+    return current().find(type, Long.MIN_VALUE, Long.MAX_VALUE, true);
+  }
+
+  /**
+   * @return urn of the latest valid dataset of the type modified strictly after `time`, or null
+   */
+  public static String getLatestAfter(String type, long time) {
+    return time == Long.MAX_VALUE ? null : current().find(type, time + 1, Long.MAX_VALUE, false);
+  }
+
+  /**
+   * @return urn of the latest valid dataset of the type modified strictly before `time`, or null
+   */
+  public static String getLatestBefore(String type, long time) {
+    return time == Long.MIN_VALUE ? null : current().find(type, Long.MIN_VALUE, time - 1, false);
+  }
+
+  /**
+   * @return urn of the latest valid dataset of the type modified between the two times inclusive, or null
+   */
+  public static String getLatestBetween(String type, long firstTime, long secondTime) {
+    return current().find(type, firstTime, secondTime, false);
+  }
+
+  /**
+   * @return urn of a valid dataset of the type modified exactly at `time`, or null
+   */
+  public static String getAtTime(String type, long time) {
+    return current().find(type, time, time, false);
+  }
+
+  static Index current() {
+    return DatasetChangeTracker.current(tracked, getRefreshIntervalMillis());
+  }
+
+  // same test as the properties LIKE patterns of DatasetDao.GET_LATEST_PREFIX
+  static boolean isValid(String properties) {
+    return properties != null
+        && (properties.contains("\"valid\": \"true\"") || properties.contains("\"valid\":\"true\""));
+  }
+
+  // the part of the urn before "://", lower cased like the case insensitive LIKE
+  static String typeOf(String urn) {
+    int separator = urn.indexOf("://");
+    return separator < 0 ? null : urn.substring(0, separator).toLowerCase(Locale.ROOT);
+  }
+
+  private static long getRefreshIntervalMillis() {
+    return Play.application().configuration().getLong(VALID_DATASET_INDEX_REFRESH_INTERVAL_KEY, 60L) * 1000L;
+  }
+
+  static final class Entry {
+    final String urn;
+    final long time;
+
+    Entry(String urn, long time) {
+      this.urn = urn;
+      this.time = time;
+    }
+  }
+
+  // by time, then urn; a null urn sorts after every urn of the same time so it can bound a range
+  private static final Comparator<Entry> BY_TIME = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry a, Entry b) {
+      if (a.time != b.time) {
+        return a.time < b.time ? -1 : 1;
+      }
+      if (a.urn == null || b.urn == null) {
+        return a.urn == b.urn ? 0 : (a.urn == null ? 1 : -1);
+      }
+      return a.urn.compareTo(b.urn);
+    }
+  };
+
+  static final class Index implements DatasetChangeTracker.DatasetRows {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // every dataset seen, with its entry when it is valid and null otherwise
+    private final Map<String, Entry> datasets = new HashMap<>();
+    private final Map<String, TreeSet<Entry>> validByType = new HashMap<>();
+    volatile long maxStamp = 0L;
+
+    @Override
+    public int size() {
+      lock.readLock().lock();
+      try {
+        return datasets.size();
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public long maxStamp() {
+      return maxStamp;
+    }
+
+    @Override
+    public void put(DatasetChangeTracker.DatasetRow row) {
+      put(row.urn, isValid(row.properties), row.sourceModifiedTime == null ? NO_TIME : row.sourceModifiedTime,
+          row.stamp);
+    }
+
+    void put(String urn, boolean valid, long time, long stamp) {
+      if (urn == null) {
+        return;
+      }
+      lock.writeLock().lock();
+      try {
+        unlink(datasets.get(urn));
+        Entry entry = null;
+        String type = typeOf(urn);
+        if (valid && type != null) {
+          entry = new Entry(urn, time);
+          TreeSet<Entry> entries = validByType.get(type);
+          if (entries == null) {
+            entries = new TreeSet<>(BY_TIME);
+            validByType.put(type, entries);
+          }
+          entries.add(entry);
+        }
+        datasets.put(urn, entry);
+        if (stamp > maxStamp) {
+          maxStamp = stamp;
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    @Override
+    public void remove(String urn) {
+      lock.writeLock().lock();
+      try {
+        unlink(datasets.remove(urn));
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private void unlink(Entry entry) {
+      if (entry != null) {
+        TreeSet<Entry> entries = validByType.get(typeOf(entry.urn));
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+          validByType.remove(typeOf(entry.urn));
+        }
+      }
+    }
+
+    /**
+     * Latest valid dataset of the type with a time in [from, to].
+     * @param allowNoTime whether a dataset without source_modified_time may be returned when no other is found
+     */
+    String find(String type, long from, long to, boolean allowNoTime) {
+      lock.readLock().lock();
+      try {
+        TreeSet<Entry> entries = validByType.get(type.toLowerCase(Locale.ROOT));
+        if (entries == null) {
+          return null;
+        }
+        Entry latest = entries.floor(new Entry(null, to));
+        if (latest == null || latest.time < from || (latest.time == NO_TIME && !allowNoTime)) {
+          return null;
+        }
+        return latest.urn;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package utils;
+
+import play.Play;
+import play.mvc.BodyParser;
+import play.mvc.Http;
+
+
+/**
+ * JSON body parser for the endpoints taking an array of records at once, which would not fit in the
+ * 100KB play.http.parser.maxMemoryBuffer the default JSON parser is limited to.
+ * Use as @BodyParser.Of(BulkJsonParser.class); the limit is read from bulk.body.max.length.
+ */
+public class BulkJsonParser implements BodyParser {
+
+  public static final String BULK_BODY_MAX_LENGTH_KEY = "bulk.body.max.length";
+
+  private static final long DEFAULT_MAX_LENGTH = 10L * 1024 * 1024;
+
+  @Override
+  public play.api.mvc.BodyParser<Http.RequestBody> parser(long maxLength) {
+    return new BodyParser.Json().parser(
+        Play.application().configuration().getBytes(BULK_BODY_MAX_LENGTH_KEY, DEFAULT_MAX_LENGTH));
+  }
+}
@@ -78,12 +78,20 @@ CREATE TABLE `dict_dataset` (
   `wh_etl_exec_id` bigint(20) DEFAULT NULL COMMENT 'wherehows etl execution id that modified this record',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uq_dataset_urn` (`urn`),
+  KEY `idx_dataset_source_modified` (`source_modified_time`, `id`),
+  KEY `idx_dataset_created` (`created_time`),
+  KEY `idx_dataset_modified` (`modified_time`),
   FULLTEXT KEY `fti_datasets_all` (`name`,`schema`,`properties`,`urn`, `dataset_type`, `fields`)
 )
   ENGINE=InnoDB
   AUTO_INCREMENT=16
   DEFAULT CHARSET=utf8;
 
+-- to upgrade an existing dict_dataset table for keyset paging of the dataset list:
+-- ALTER TABLE dict_dataset ADD KEY `idx_dataset_source_modified` (`source_modified_time`, `id`);
+-- and for the in-memory dataset indexes polling for changed rows:
+-- ALTER TABLE dict_dataset ADD KEY `idx_dataset_created` (`created_time`), ADD KEY `idx_dataset_modified` (`modified_time`);
+
 -- stagging table for sample data
 CREATE TABLE `stg_dict_dataset_sample` (
   `db_id`      SMALLINT  UNSIGNED,
@@ -186,13 +194,17 @@ CREATE TABLE `dict_field_detail` (
   `modified`           TIMESTAMP            NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
   PRIMARY KEY (`field_id`),
   UNIQUE KEY `uix_dict_field__datasetid_parentpath_fieldname` (`dataset_id`, `parent_path`, `field_name`) USING BTREE,
-  UNIQUE KEY `uix_dict_field__datasetid_sortid` (`dataset_id`, `sort_id`) USING BTREE
+  UNIQUE KEY `uix_dict_field__datasetid_sortid` (`dataset_id`, `sort_id`) USING BTREE,
+  KEY `idx_dict_field__modified` (`modified`) USING BTREE
 )
   ENGINE = InnoDB
   AUTO_INCREMENT = 0
   DEFAULT CHARSET = utf8
   COMMENT = 'Flattened Fields/Columns';
 
+-- to upgrade an existing dict_field_detail table for the web field name index refresh:
+-- ALTER TABLE dict_field_detail ADD KEY `idx_dict_field__modified` (`modified`) USING BTREE;
+
 -- schema history
 CREATE TABLE `dict_dataset_schema_history` (
   `id`            INT(11) AUTO_INCREMENT NOT NULL,
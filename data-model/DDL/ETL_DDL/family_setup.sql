@@ -14,4 +14,17 @@
 
 -- setup family table for storing simple parent-child relationships
 
-CREATE TABLE `family` ( `id` int(11) unsigned NOT NULL AUTO_INCREMENT, `parent_urn` varchar(200) NOT NULL DEFAULT '', `child_urn` varchar(200) NOT NULL DEFAULT '', PRIMARY KEY (`id`)) ENGINE=InnoDB DEFAULT CHARSET=utf8;
\ No newline at end of file
+CREATE TABLE `family` (
+  `id` int(11) unsigned NOT NULL AUTO_INCREMENT,
+  `parent_urn` varchar(200) NOT NULL DEFAULT '',
+  `child_urn` varchar(200) NOT NULL DEFAULT '',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uq_family_parent_child` (`parent_urn`, `child_urn`),
+  KEY `idx_family_child_urn` (`child_urn`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- to upgrade an existing family table, drop duplicate edges (keeping the first one) before adding the keys:
+-- DELETE f1 FROM family f1 JOIN family f2
+--   ON f1.parent_urn = f2.parent_urn AND f1.child_urn = f2.child_urn AND f1.id > f2.id;
+-- ALTER TABLE family ADD UNIQUE KEY `uq_family_parent_child` (`parent_urn`, `child_urn`),
+--   ADD KEY `idx_family_child_urn` (`child_urn`);
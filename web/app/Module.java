@@ -0,0 +1,44 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+import com.google.inject.AbstractModule;
+import dao.TrackingDAO;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import play.inject.ApplicationLifecycle;
+import play.libs.F;
+
+
+public class Module extends AbstractModule {
+
+  @Override
+  protected void configure() {
+    bind(TrackingLifecycle.class).asEagerSingleton();
+  }
+
+  /**
+   * Writes the queued tracking events before the application stops.
+   */
+  @Singleton
+  public static class TrackingLifecycle {
+
+    @Inject
+    public TrackingLifecycle(ApplicationLifecycle lifecycle) {
+      TrackingDAO.start();
+      lifecycle.addStopHook(() -> {
+        TrackingDAO.shutdown();
+        return F.Promise.pure(null);
+      });
+    }
+  }
+}
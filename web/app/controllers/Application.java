@@ -170,4 +170,42 @@ public class Application extends Controller
         return ok("GOOD");
     }
 
+    public static Result loadTree(String key)
+    {
+        String treeKey = key + TREE_NAME_SUBFIX;
+        if (isTreeNotModified(treeKey))
+        {
+            return status(NOT_MODIFIED);
+        }
+        return ok(Tree.loadTreeBytes(treeKey)).as("application/json");
+    }
+
+    public static Result loadSubtree(String key, String path)
+    {
+        String treeKey = key + TREE_NAME_SUBFIX;
+        if (isTreeNotModified(treeKey))
+        {
+            return status(NOT_MODIFIED);
+        }
+        byte[] branch = Tree.loadSubtreeBytes(treeKey, path);
+        if (branch == null)
+        {
+            return notFound("[]").as("application/json");
+        }
+        return ok(branch).as("application/json");
+    }
+
+    // the tree files change a few times a day, so clients revalidate with the version of the loaded file
+    private static boolean isTreeNotModified(String treeKey)
+    {
+        String version = Tree.getTreeVersion(treeKey);
+        if (version == null)
+        {
+            return false;
+        }
+        String etag = "\"" + version + "\"";
+        response().setHeader(ETAG, etag);
+        return etag.equals(request().getHeader(IF_NONE_MATCH));
+    }
+
 }
@@ -20,6 +20,7 @@ import dao.SearchDAO;
 import org.apache.commons.lang3.StringUtils;
 import play.Logger;
 import play.Play;
+import play.libs.F.Promise;
 import play.libs.Json;
 import play.mvc.Controller;
 import play.mvc.Result;
@@ -64,8 +65,9 @@ public class AdvSearch extends Controller
         //Logger.debug("Entering AdvSearch.java:getDatasetFields()");
         ObjectNode result = Json.newObject();
         String tables = request().getQueryString("tables");
+        String keyword = request().getQueryString("keyword");
         result.put("status", "ok");
-        result.set("fields", Json.toJson(AdvSearchDAO.getFields(tables)));
+        result.set("fields", Json.toJson(AdvSearchDAO.getFields(tables, keyword)));
 
         return ok(result);
     }
@@ -101,7 +103,7 @@ public class AdvSearch extends Controller
         return ok(result);
     }
 
-    public static Result search()
+    public static Promise<Result> search()
     {
         //Logger.debug("Entering AdvSearch.java:search() " + Thread.currentThread().getStackTrace()[1].toString() + " " + Thread.currentThread().getStackTrace()[2].toString());
         ObjectNode result = Json.newObject();
@@ -151,14 +153,17 @@ public class AdvSearch extends Controller
 
         if(StringUtils.isNotBlank(searchEngine) && searchEngine.equalsIgnoreCase("elasticsearch"))
         {
-            result.set("result", Json.toJson(AdvSearchDAO.elasticSearch(searchOpt, page, size)));
+            return AdvSearchDAO.elasticSearch(searchOpt, page, size).map(resultNode -> {
+                result.set("result", resultNode);
+                return ok(result);
+            });
         }
         else
         {
             result.set("result", Json.toJson(AdvSearchDAO.search(searchOpt, page, size)));
         }
 
-        return ok(result);
+        return Promise.pure(ok(result));
     }
 
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.DatasetColumn;
 import models.DatasetDependency;
+import models.DatasetListViewNode;
 import models.ImpactDataset;
 import play.Play;
 import play.libs.F.Promise;
@@ -29,6 +30,7 @@ import play.mvc.Result;
 import play.Logger;
 import org.apache.commons.lang3.StringUtils;
 import dao.DatasetsDAO;
+import utils.JsonChunks;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -55,7 +57,6 @@ public class Dataset extends Controller
 
     public static Result getPagedDatasets()
     {
-        ObjectNode result = Json.newObject();
         String urn = request().getQueryString("urn");
 
         int page = 1;
@@ -96,10 +97,15 @@ public class Dataset extends Controller
             }
         }
 
-        result.put("status", "ok");
+        // nextCursor of the previous page, lets deep pages skip the offset scan
+        String cursor = request().getQueryString("cursor");
+
         String username = session("user");
-        result.set("data", DatasetsDAO.getPagedDatasets(urn, page, size, username));
-        return ok(result);
+        DatasetsDAO.DatasetPage datasetPage = DatasetsDAO.getDatasetPage(urn, page, size, username, cursor);
+        return ok(JsonChunks.ok(gen -> {
+            gen.writeFieldName("data");
+            datasetPage.writeTo(gen);
+        })).as("application/json");
     }
 
     public static Result getDatasetByID(int id)
@@ -773,11 +779,9 @@ public class Dataset extends Controller
 
     public static Result getDatasetListNodes()
     {
-        ObjectNode result = Json.newObject();
         String urn = request().getQueryString("urn");
-        result.put("status", "ok");
-        result.set("nodes", Json.toJson(DatasetsDAO.getDatasetListViewNodes(urn)));
-        return ok(result);
+        List<DatasetListViewNode> nodes = DatasetsDAO.getDatasetListViewNodes(urn);
+        return ok(JsonChunks.ok(gen -> JsonChunks.writeArrayField(gen, "nodes", nodes))).as("application/json");
     }
 
     public static Result getDatasetVersions(Long datasetId, Integer dbId)
@@ -16,12 +16,14 @@ package controllers.api.v1;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import dao.DatasetsDAO;
 import dao.LineageDAOLite;
+import dao.LineageGraphCache;
 import play.Play;
 import play.libs.Json;
 import play.mvc.Controller;
 import play.mvc.Result;
 import play.Logger;
 import org.apache.commons.lang3.StringUtils;
+import utils.JsonChunks;
 
 public class Lineage extends Controller
 {
@@ -107,10 +109,26 @@ public class Lineage extends Controller
           }
         }
 
-        
-        result.put("status", "ok");
-        result.set("data", Json.toJson(LineageDAOLite.getObjectAdjacnet(dataset.urn, upLevel, downLevel, lookBackTime)));
+        if (!LineageGraphCache.isEnabled())
+        {
+            LineageDAOLite.AdjacentGraph graph =
+                    LineageDAOLite.getAdjacentGraph(dataset.urn, upLevel, downLevel, lookBackTime);
+            return ok(JsonChunks.ok(gen -> {
+                gen.writeFieldName("data");
+                graph.writeTo(gen);
+            })).as("application/json");
+        }
+
+        // the graph comes serialized from the cache, so the envelope is written around it
+        String data = LineageGraphCache.getGraphJson(dataset.urn, upLevel, downLevel, lookBackTime);
+        return ok("{\"status\":\"ok\",\"data\":" + data + "}").as("application/json");
+    }
 
+    public static Result getLineageCacheStats()
+    {
+        ObjectNode result = Json.newObject();
+        result.put("status", "ok");
+        result.set("stats", LineageGraphCache.getStats());
         return ok(result);
     }
 
@@ -15,10 +15,12 @@ package controllers.api.v1;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import dao.AutoCompleteIndex;
 import dao.SearchDAO;
 import models.DatasetColumn;
 import play.Play;
 import play.api.libs.json.JsValue;
+import play.libs.F.Promise;
 import play.libs.Json;
 import play.mvc.Controller;
 import play.mvc.Result;
@@ -51,6 +53,50 @@ public class Search extends Controller
     }
 
 
+    public static Result getSearchAutoCompleteByPrefix()
+    {
+        String input = request().getQueryString("input");
+        String category = request().getQueryString("category");
+        int limit = AutoCompleteIndex.DEFAULT_LIMIT;
+        String limitStr = request().getQueryString("limit");
+        if (StringUtils.isNotBlank(limitStr))
+        {
+            try
+            {
+                limit = Integer.parseInt(limitStr);
+            }
+            catch(NumberFormatException e)
+            {
+                Logger.error("Search Controller getSearchAutoCompleteByPrefix wrong limit parameter. Error message: " +
+                        e.getMessage());
+            }
+        }
+
+        ObjectNode result = Json.newObject();
+        result.put("status", "ok");
+        result.set("source", Json.toJson(
+                AutoCompleteIndex.complete(AutoCompleteIndex.categoriesFor(category), input, limit)));
+
+        return ok(result);
+    }
+
+    public static Promise<Result> getSearchSuggestions()
+    {
+        String keyword = request().getQueryString("keyword");
+        String category = request().getQueryString("category");
+        if (StringUtils.isBlank(category))
+        {
+            category = "dataset";
+        }
+
+        return SearchDAO.getSuggestionList(category, keyword).map(suggestions -> {
+            ObjectNode result = Json.newObject();
+            result.put("status", "ok");
+            result.set("source", Json.toJson(suggestions));
+            return ok(result);
+        });
+    }
+
     public static Result searchByKeyword()
     {
         //Logger.debug("Entering v1/Search.java:searchByKeyword()");
@@ -55,4 +55,12 @@ public class Tracking extends Controller
             return unauthorized(result);
         }
     }
+
+    public static Result getTrackingStats()
+    {
+        ObjectNode result = Json.newObject();
+        result.put("status", "ok");
+        result.set("stats", TrackingDAO.getStats());
+        return ok(result);
+    }
 }
@@ -15,10 +15,13 @@ package controllers.api.v1;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import dao.UserDAO;
+import models.UserEntity;
 import org.apache.commons.lang3.StringUtils;
 import play.libs.Json;
 import play.mvc.Controller;
 import play.mvc.Result;
+import utils.JsonChunks;
+import java.util.List;
 import java.util.Map;
 
 public class User extends Controller
@@ -81,10 +84,8 @@ public class User extends Controller
 
     public static Result getAllUserEntities()
     {
-        ObjectNode result = Json.newObject();
-
-        result.put("status", "ok");
-        result.set("userEntities", Json.toJson(UserDAO.getAllUserEntities()));
-        return ok(result);
+        List<UserEntity> userEntities = UserDAO.getAllUserEntities();
+        return ok(JsonChunks.ok(gen -> JsonChunks.writeArrayField(gen, "userEntities", userEntities)))
+                .as("application/json");
     }
 }
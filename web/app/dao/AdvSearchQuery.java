@@ -0,0 +1,463 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Query planner for the dataset advanced search.
+ *
+ * The search options JSON is parsed into a conjunction of typed predicates. The most selective one
+ * drives the statement: an equality on scope or source scans dict_dataset through the filter,
+ * a comments keyword starts from the fulltext indexes, and field name terms start from one grouped pass
+ * over dict_field_detail, where "all" terms are HAVING conditions instead of one self join per term.
+ * Every value is a bind parameter, and the statement text is planned once per query shape
+ * (which predicates, how many values each) and reused from then on.
+ */
+public class AdvSearchQuery {
+
+    private final static String DATASET_COLUMNS = "d.id, d.name, d.source, d.urn, d.`schema`";
+
+    private final static String URN_RANK = "CASE WHEN d.urn LIKE 'teradata://DWH_%' THEN 2 " +
+            "WHEN d.urn LIKE 'hdfs://data/tracking/%' THEN 1 WHEN d.urn LIKE 'teradata://DWH/%' THEN 3 " +
+            "WHEN d.urn LIKE 'hdfs://data/databases/%' THEN 4 WHEN d.urn LIKE 'hdfs://data/dervied/%' THEN 5 " +
+            "ELSE 99 END, d.urn";
+
+    private static final int MAX_CACHED_PLANS = 1000;
+
+    private static final Map<String, Plan> plans = new ConcurrentHashMap<String, Plan>();
+
+    /**
+     * Where the statement starts from.
+     */
+    enum Driver {
+        DATASETS,
+        COMMENTS,
+        FIELDS
+    }
+
+    /**
+     * A statement and its bind values, in order.
+     */
+    public static final class Statement {
+        public final String sql;
+        public final Object[] args;
+
+        Statement(String sql, Object[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+
+    static final class Plan {
+        final Driver driver;
+        final String pageSql;
+        final String countSql;
+
+        Plan(Driver driver, String pageSql, String countSql) {
+            this.driver = driver;
+            this.pageSql = pageSql;
+            this.countSql = countSql;
+        }
+    }
+
+    // statement text and bind values written in one pass, so they can't disagree; text is skipped once planned
+    static final class Emitter {
+        final StringBuilder sql;
+        final List<Object> args = new ArrayList<Object>();
+
+        Emitter(boolean withSql) {
+            this.sql = withSql ? new StringBuilder() : null;
+        }
+
+        Emitter text(String text) {
+            if (sql != null) {
+                sql.append(text);
+            }
+            return this;
+        }
+
+        Emitter param(Object value) {
+            args.add(value);
+            return text("?");
+        }
+
+        // ?, ?, ... for every value
+        Emitter params(List<String> values) {
+            for (int i = 0; i < values.size(); i++) {
+                text(i == 0 ? "" : ", ").param(values.get(i));
+            }
+            return this;
+        }
+    }
+
+    /**
+     * A condition on dict_dataset `d`.
+     */
+    static abstract class Predicate {
+        // lower is more selective; only a predicate with a rank can drive the statement
+        abstract int rank();
+
+        abstract String shape();
+
+        abstract void emit(Emitter out);
+    }
+
+    // d.column IN (...) or NOT IN (...)
+    static final class InList extends Predicate {
+        final String column;
+        final List<String> values;
+        final boolean negated;
+
+        InList(String column, List<String> values, boolean negated) {
+            this.column = column;
+            this.values = values;
+            this.negated = negated;
+        }
+
+        int rank() {
+            return negated ? Integer.MAX_VALUE : 1;
+        }
+
+        String shape() {
+            return column + (negated ? "!" : "=") + values.size();
+        }
+
+        void emit(Emitter out) {
+            out.text("d." + column + (negated ? " NOT IN (" : " IN (")).params(values).text(")");
+        }
+    }
+
+    // the dataset name contains any of the values, or none of them
+    static final class NameContains extends Predicate {
+        final List<String> values;
+        final boolean negated;
+
+        NameContains(List<String> values, boolean negated) {
+            this.values = values;
+            this.negated = negated;
+        }
+
+        int rank() {
+            return Integer.MAX_VALUE;
+        }
+
+        String shape() {
+            return "name" + (negated ? "!" : "~") + values.size();
+        }
+
+        void emit(Emitter out) {
+            out.text("(");
+            for (int i = 0; i < values.size(); i++) {
+                out.text(i == 0 ? "" : (negated ? " AND " : " OR "))
+                        .text(negated ? "d.name NOT LIKE " : "d.name LIKE ").param(contains(values.get(i)));
+            }
+            out.text(")");
+        }
+    }
+
+    // a comment on the dataset or one of its fields matches the keyword
+    static final class CommentMatch extends Predicate {
+        final String keyword;
+
+        CommentMatch(String keyword) {
+            this.keyword = keyword;
+        }
+
+        int rank() {
+            return 2;
+        }
+
+        String shape() {
+            return "comments";
+        }
+
+        void emit(Emitter out) {
+            out.text("d.id IN (");
+            emitIds(out);
+            out.text(")");
+        }
+
+        void emitIds(Emitter out) {
+            String against = "*" + keyword + "*";
+            out.text("SELECT dataset_id FROM comments WHERE MATCH(text) AGAINST (").param(against)
+                    .text(" IN BOOLEAN MODE) UNION SELECT dfc.dataset_id FROM dict_dataset_field_comment dfc ")
+                    .text("JOIN field_comments fc ON dfc.comment_id = fc.id WHERE MATCH(fc.comment) AGAINST (")
+                    .param(against).text(" IN BOOLEAN MODE)");
+        }
+    }
+
+    /**
+     * The field names of the dataset: some contain one of `any`, each of `all` is contained in one, and none
+     * contains one of `none`. The dataset needs to have fields at all, like the IN subquery this replaced.
+     */
+    static final class FieldMatch extends Predicate {
+        final List<String> any;
+        final List<String> all;
+        final List<String> none;
+
+        FieldMatch(List<String> any, List<String> all, List<String> none) {
+            this.any = any;
+            this.all = all;
+            this.none = none;
+        }
+
+        int rank() {
+            return any.isEmpty() && all.isEmpty() ? Integer.MAX_VALUE : 3;
+        }
+
+        String shape() {
+            return "fields" + any.size() + "/" + all.size() + "/" + none.size();
+        }
+
+        // correlated, for when another predicate drives
+        void emit(Emitter out) {
+            out.text("EXISTS (SELECT 1 FROM dict_field_detail f WHERE f.dataset_id = d.id HAVING ");
+            emitHaving(out);
+            out.text(")");
+        }
+
+        // the matching dataset ids in one grouped pass, for driving the statement
+        void emitIds(Emitter out) {
+            out.text("SELECT f.dataset_id FROM dict_field_detail f WHERE ");
+            // only rows matching a term change the sums, the others can be skipped
+            List<String> terms = new ArrayList<String>(any);
+            terms.addAll(all);
+            terms.addAll(none);
+            emitAnyLike(out, terms);
+            out.text(" GROUP BY f.dataset_id HAVING ");
+            emitHaving(out);
+        }
+
+        private void emitHaving(Emitter out) {
+            out.text("COUNT(*) > 0");
+            if (!any.isEmpty()) {
+                out.text(" AND SUM(");
+                emitAnyLike(out, any);
+                out.text(") > 0");
+            }
+            for (String field : all) {
+                out.text(" AND SUM(f.field_name LIKE ").param(contains(field)).text(") > 0");
+            }
+            if (!none.isEmpty()) {
+                out.text(" AND SUM(");
+                emitAnyLike(out, none);
+                out.text(") = 0");
+            }
+        }
+
+        private static void emitAnyLike(Emitter out, List<String> fields) {
+            out.text("(");
+            for (int i = 0; i < fields.size(); i++) {
+                out.text(i == 0 ? "f.field_name LIKE " : " OR f.field_name LIKE ").param(contains(fields.get(i)));
+            }
+            out.text(")");
+        }
+    }
+
+    final List<Predicate> predicates;
+    // table names the results are ranked by, best match first
+    final List<String> rankNames;
+    final boolean orderByName;
+
+    AdvSearchQuery(List<Predicate> predicates, List<String> rankNames, boolean orderByName) {
+        this.predicates = predicates;
+        this.rankNames = rankNames;
+        this.orderByName = orderByName;
+    }
+
+    /**
+     * @return the query of the advanced search options, or null if they aren't a JSON object
+     */
+    public static AdvSearchQuery parse(JsonNode searchOpt) {
+        if (searchOpt == null || !searchOpt.isContainerNode()) {
+            return null;
+        }
+        List<Predicate> predicates = new ArrayList<Predicate>();
+
+        List<String> scopeIn = values(searchOpt.path("scope").path("in"));
+        List<String> scopeNotIn = values(searchOpt.path("scope").path("not"));
+        List<String> tableIn = values(searchOpt.path("table").path("in"));
+        List<String> tableNotIn = values(searchOpt.path("table").path("not"));
+        List<String> fieldAny = values(searchOpt.path("fields").path("any"));
+        List<String> fieldAll = values(searchOpt.path("fields").path("all"));
+        List<String> fieldNotIn = values(searchOpt.path("fields").path("not"));
+        List<String> sources = values(searchOpt.path("sources"));
+        String comments = searchOpt.path("comments").asText().trim();
+
+        if (!scopeIn.isEmpty()) {
+            predicates.add(new InList("parent_name", scopeIn, false));
+        }
+        if (!scopeNotIn.isEmpty()) {
+            predicates.add(new InList("parent_name", scopeNotIn, true));
+        }
+        if (!sources.isEmpty()) {
+            predicates.add(new InList("source", sources, false));
+        }
+        if (!comments.isEmpty()) {
+            predicates.add(new CommentMatch(comments));
+        }
+        if (!fieldAny.isEmpty() || !fieldAll.isEmpty() || !fieldNotIn.isEmpty()) {
+            predicates.add(new FieldMatch(fieldAny, fieldAll, fieldNotIn));
+        }
+        if (!tableIn.isEmpty()) {
+            predicates.add(new NameContains(tableIn, false));
+        }
+        if (!tableNotIn.isEmpty()) {
+            predicates.add(new NameContains(tableNotIn, true));
+        }
+        // comment matches were listed by name, everything else by how well the name matches
+        return new AdvSearchQuery(predicates, tableIn, !comments.isEmpty());
+    }
+
+    // the comma separated values of the node, trimmed, without blanks
+    private static List<String> values(JsonNode node) {
+        List<String> values = new ArrayList<String>();
+        if (node.isMissingNode() || node.isNull()) {
+            return values;
+        }
+        for (String value : node.asText().split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    static String contains(String value) {
+        return "%" + value + "%";
+    }
+
+    Driver driver() {
+        Predicate best = driving();
+        if (best instanceof FieldMatch) {
+            return Driver.FIELDS;
+        } else if (best instanceof CommentMatch) {
+            return Driver.COMMENTS;
+        }
+        return Driver.DATASETS;
+    }
+
+    private Predicate driving() {
+        Predicate best = null;
+        for (Predicate predicate : predicates) {
+            if (predicate.rank() != Integer.MAX_VALUE && (best == null || predicate.rank() < best.rank())) {
+                best = predicate;
+            }
+        }
+        return best;
+    }
+
+    String shape() {
+        StringBuilder shape = new StringBuilder();
+        for (Predicate predicate : predicates) {
+            shape.append(predicate.shape()).append(';');
+        }
+        return shape.append("rank").append(rankNames.size()).append(orderByName ? ";byName" : "").toString();
+    }
+
+    /**
+     * The datasets on `page`, `size` per page.
+     */
+    public Statement pageStatement(int page, int size) {
+        Plan plan = plan();
+        Emitter out = new Emitter(false);
+        emitSelect(out, DATASET_COLUMNS);
+        emitOrder(out);
+        out.param((page - 1) * size).param(size);
+        return new Statement(plan.pageSql, out.args.toArray());
+    }
+
+    /**
+     * The number of matching datasets.
+     */
+    public Statement countStatement() {
+        Plan plan = plan();
+        Emitter out = new Emitter(false);
+        emitSelect(out, "COUNT(*)");
+        return new Statement(plan.countSql, out.args.toArray());
+    }
+
+    Plan plan() {
+        String shape = shape();
+        Plan plan = plans.get(shape);
+        if (plan == null) {
+            Emitter page = new Emitter(true);
+            emitSelect(page, DATASET_COLUMNS);
+            emitOrder(page);
+            page.text(" LIMIT ").param(0).text(", ").param(0);
+            Emitter count = new Emitter(true);
+            emitSelect(count, "COUNT(*)");
+            plan = new Plan(driver(), page.sql.toString(), count.sql.toString());
+            if (plans.size() >= MAX_CACHED_PLANS) {
+                plans.clear();
+            }
+            plans.put(shape, plan);
+        }
+        return plan;
+    }
+
+    private void emitSelect(Emitter out, String columns) {
+        Predicate driving = driving();
+        out.text("SELECT " + columns + " FROM ");
+        if (driving instanceof FieldMatch) {
+            out.text("(");
+            ((FieldMatch) driving).emitIds(out);
+            out.text(") drv JOIN dict_dataset d ON d.id = drv.dataset_id");
+        } else if (driving instanceof CommentMatch) {
+            out.text("(");
+            ((CommentMatch) driving).emitIds(out);
+            out.text(") drv JOIN dict_dataset d ON d.id = drv.dataset_id");
+        } else {
+            out.text("dict_dataset d");
+        }
+
+        boolean first = true;
+        for (Predicate predicate : predicates) {
+            if (predicate == driving && !(predicate instanceof InList)) {
+                continue;
+            }
+            out.text(first ? " WHERE " : " AND ");
+            predicate.emit(out);
+            first = false;
+        }
+    }
+
+    private void emitOrder(Emitter out) {
+        if (orderByName) {
+            out.text(" ORDER BY d.name");
+            return;
+        }
+        out.text(" ORDER BY ");
+        if (!rankNames.isEmpty()) {
+            // exact name, then starting with, ending with, containing a searched table name
+            out.text("CASE WHEN d.name IN (").params(rankNames).text(") THEN 0");
+            String[] patterns = {"%s%%", "%%%s", "%%%s%%"};
+            int[] ranks = {2, 3, 4};
+            for (int p = 0; p < patterns.length; p++) {
+                out.text(" WHEN (");
+                for (int i = 0; i < rankNames.size(); i++) {
+                    out.text(i == 0 ? "d.name LIKE " : " OR d.name LIKE ")
+                            .param(String.format(patterns[p], rankNames.get(i)));
+                }
+                out.text(") THEN " + ranks[p]);
+            }
+            out.text(" ELSE 9 END, ");
+        }
+        out.text(URN_RANK);
+    }
+}
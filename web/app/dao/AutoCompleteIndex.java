@@ -0,0 +1,341 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.dao.DataAccessException;
+import play.Logger;
+import play.Play;
+
+/**
+ * Server side prefix completion for the search box.
+ *
+ * The names of each category are kept in a sorted array of (name, offset) entries, one for the start of
+ * the name and one for every word after a separator, so "trunk" completes both "trunk_merlin" and
+ * "merlin_frontend_trunk". Only the top k names by access count in `track_object_access_log` are returned:
+ * prefixes matching more than SCAN_LIMIT entries have their top MAX_LIMIT names ranked when the names are
+ * loaded, any other lookup is a binary search plus a scan of at most SCAN_LIMIT entries.
+ * Each category is reloaded at most once per `search.autocomplete.refresh.interval` seconds.
+ */
+public class AutoCompleteIndex extends AbstractMySQLOpenSourceDAO {
+
+    public static final String AUTOCOMPLETE_REFRESH_INTERVAL_KEY = "search.autocomplete.refresh.interval";
+
+    public static final int DEFAULT_LIMIT = 20;
+
+    public static final int MAX_LIMIT = 100;
+
+    // longest slice of entries a lookup scans, prefixes matching more are ranked ahead of time
+    static final int SCAN_LIMIT = 1000;
+
+    private final static String GET_ACCESS_COUNTS = "SELECT object_name, COUNT(*) AS access_count " +
+            "FROM track_object_access_log WHERE object_type = ? AND object_name IS NOT NULL GROUP BY object_name";
+
+    public enum Category {
+        DATASET(SearchDAO.GET_DATASET_AUTO_COMPLETE_LIST, "dataset"),
+        METRIC(SearchDAO.GET_METRIC_AUTO_COMPLETE_LIST, "metric"),
+        FLOW(SearchDAO.GET_FLOW_AUTO_COMPLETE_LIST, "flow"),
+        // job accesses aren't tracked, so jobs are ranked by name only
+        JOB(SearchDAO.GET_JOB_AUTO_COMPLETE_LIST, null);
+
+        final String namesQuery;
+
+        final String trackedType;
+
+        Category(String namesQuery, String trackedType) {
+            this.namesQuery = namesQuery;
+            this.trackedType = trackedType;
+        }
+    }
+
+    private static final Map<Category, Snapshot> snapshots = new ConcurrentHashMap<Category, Snapshot>();
+
+    /**
+     * Maps a search box category (e.g. "Datasets", "Jobs", "All") to the name categories it completes from.
+     * Anything unknown falls back to datasets, which is what the search box completed before.
+     */
+    public static Set<Category> categoriesFor(String searchCategory) {
+        String category = searchCategory == null ? "" : searchCategory.trim().toLowerCase(Locale.ROOT);
+        if (category.endsWith("s")) {
+            category = category.substring(0, category.length() - 1);
+        }
+        switch (category) {
+            case "all":
+                return EnumSet.allOf(Category.class);
+            case "metric":
+                return EnumSet.of(Category.METRIC);
+            case "flow":
+                return EnumSet.of(Category.FLOW);
+            case "job":
+                return EnumSet.of(Category.FLOW, Category.JOB);
+            default:
+                return EnumSet.of(Category.DATASET);
+        }
+    }
+
+    /**
+     * Returns at most `limit` names of the given categories having a word that starts with `input`,
+     * most accessed first.
+     */
+    public static List<String> complete(Set<Category> categories, String input, int limit) {
+        String prefix = input == null ? "" : input.trim().toLowerCase(Locale.ROOT);
+        if (prefix.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        limit = Math.min(limit, MAX_LIMIT);
+
+        List<Match> matches = new ArrayList<Match>();
+        for (Category category : categories) {
+            matches.addAll(current(category).complete(prefix, limit));
+        }
+        if (categories.size() > 1) {
+            Collections.sort(matches);
+        }
+
+        Set<String> names = new LinkedHashSet<String>();
+        for (Match match : matches) {
+            if (names.size() >= limit) {
+                break;
+            }
+            names.add(match.name);
+        }
+        return new ArrayList<String>(names);
+    }
+
+    static Snapshot current(Category category) {
+        Snapshot snapshot = snapshots.get(category);
+        if (snapshot == null || System.currentTimeMillis() - snapshot.loadedMillis > getRefreshIntervalMillis()) {
+            snapshot = refresh(category);
+        }
+        return snapshot;
+    }
+
+    private static synchronized Snapshot refresh(Category category) {
+        long now = System.currentTimeMillis();
+        Snapshot snapshot = snapshots.get(category);
+        if (snapshot != null && now - snapshot.loadedMillis <= getRefreshIntervalMillis()) {
+            return snapshot;
+        }
+
+        try {
+            List<String> names = getJdbcTemplate().queryForList(category.namesQuery, String.class);
+            Map<String, Long> accessCounts = new HashMap<String, Long>();
+            if (category.trackedType != null) {
+                for (Map<String, Object> row : getJdbcTemplate().queryForList(GET_ACCESS_COUNTS, category.trackedType)) {
+                    accessCounts.put((String) row.get("object_name"), ((Number) row.get("access_count")).longValue());
+                }
+            }
+            snapshot = new Snapshot(names, accessCounts, now);
+            snapshots.put(category, snapshot);
+            Logger.debug("Loaded " + snapshot.names.length + " " + category + " names for autocomplete");
+        } catch (DataAccessException e) {
+            if (snapshot == null) {
+                throw e;
+            }
+            // keep serving the previous names and try again after the next interval
+            Logger.error("Autocomplete refresh of " + category + " names failed", e);
+            snapshot.loadedMillis = now;
+        }
+        return snapshot;
+    }
+
+    private static long getRefreshIntervalMillis() {
+        return Play.application().configuration().getLong(AUTOCOMPLETE_REFRESH_INTERVAL_KEY, 3600L) * 1000L;
+    }
+
+    static final class Match implements Comparable<Match> {
+        final String name;
+        final long accessCount;
+        final boolean wholeNamePrefix;
+
+        Match(String name, long accessCount, boolean wholeNamePrefix) {
+            this.name = name;
+            this.accessCount = accessCount;
+            this.wholeNamePrefix = wholeNamePrefix;
+        }
+
+        // most accessed first, then names starting with the input, then shorter names, then by name
+        @Override
+        public int compareTo(Match o) {
+            if (accessCount != o.accessCount) {
+                return accessCount > o.accessCount ? -1 : 1;
+            }
+            if (wholeNamePrefix != o.wholeNamePrefix) {
+                return wholeNamePrefix ? -1 : 1;
+            }
+            if (name.length() != o.name.length()) {
+                return name.length() - o.name.length();
+            }
+            return name.compareTo(o.name);
+        }
+    }
+
+    static final class Snapshot {
+        final String[] names;
+        final String[] lowerNames;
+        final long[] accessCounts;
+        // (name index << 32 | offset of a word start), sorted by the lower cased name from that offset
+        final long[] entries;
+        // the best MAX_LIMIT matches of every prefix with more than SCAN_LIMIT entries
+        final Map<String, List<Match>> ranked = new HashMap<String, List<Match>>();
+        volatile long loadedMillis;
+
+        Snapshot(Collection<String> allNames, Map<String, Long> counts, long loadedMillis) {
+            List<String> kept = new ArrayList<String>(allNames.size());
+            for (String name : allNames) {
+                if (name != null && !name.trim().isEmpty()) {
+                    kept.add(name);
+                }
+            }
+            names = kept.toArray(new String[kept.size()]);
+            lowerNames = new String[names.length];
+            accessCounts = new long[names.length];
+
+            List<Long> starts = new ArrayList<Long>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                lowerNames[i] = names[i].toLowerCase(Locale.ROOT);
+                Long count = counts.get(names[i]);
+                accessCounts[i] = count == null ? 0L : count;
+                String lower = lowerNames[i];
+                for (int offset = 0; offset < lower.length(); offset++) {
+                    if (offset == 0 || !Character.isLetterOrDigit(lower.charAt(offset - 1))
+                            && Character.isLetterOrDigit(lower.charAt(offset))) {
+                        starts.add(((long) i << 32) | offset);
+                    }
+                }
+            }
+
+            Collections.sort(starts, new Comparator<Long>() {
+                @Override
+                public int compare(Long a, Long b) {
+                    return compareSuffix(a, lowerNames[nameOf(b)], offsetOf(b));
+                }
+            });
+            entries = new long[starts.size()];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = starts.get(i);
+            }
+            rank(0, entries.length, 0);
+            this.loadedMillis = loadedMillis;
+        }
+
+        // entries [from, to) share their first `depth` characters; ranks them if there are too many to scan,
+        // then each group sharing one more character
+        private void rank(int from, int to, int depth) {
+            if (to - from <= SCAN_LIMIT) {
+                return;
+            }
+            if (depth > 0) {
+                String prefix = lowerNames[nameOf(entries[from])].substring(offsetOf(entries[from]),
+                        offsetOf(entries[from]) + depth);
+                ranked.put(prefix, top(from, to, prefix, MAX_LIMIT));
+            }
+            int i = from;
+            // suffixes of exactly `depth` characters sort first and have no next character
+            while (i < to && suffixLength(entries[i]) == depth) {
+                i++;
+            }
+            while (i < to) {
+                char c = charAt(entries[i], depth);
+                int end = i + 1;
+                while (end < to && charAt(entries[end], depth) == c) {
+                    end++;
+                }
+                rank(i, end, depth + 1);
+                i = end;
+            }
+        }
+
+        List<Match> complete(String prefix, int limit) {
+            List<Match> best = ranked.get(prefix);
+            if (best != null) {
+                return best.subList(0, Math.min(limit, best.size()));
+            }
+            int from = lowerBound(prefix);
+            int to = from;
+            while (to < entries.length && lowerNames[nameOf(entries[to])].startsWith(prefix, offsetOf(entries[to]))) {
+                to++;
+            }
+            return top(from, to, prefix, limit);
+        }
+
+        private List<Match> top(int from, int to, String prefix, int limit) {
+            // worst match at the head so it can be evicted once `limit` matches are kept
+            PriorityQueue<Match> top = new PriorityQueue<Match>(limit + 1, Collections.reverseOrder());
+            BitSet seen = new BitSet(names.length);
+            for (int i = from; i < to; i++) {
+                int name = nameOf(entries[i]);
+                if (seen.get(name)) {
+                    continue;
+                }
+                seen.set(name);
+                top.add(new Match(names[name], accessCounts[name], lowerNames[name].startsWith(prefix)));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+
+            List<Match> matches = new ArrayList<Match>(top);
+            Collections.sort(matches);
+            return matches;
+        }
+
+        // index of the first entry whose suffix is not less than `prefix`
+        private int lowerBound(String prefix) {
+            int lo = 0;
+            int hi = entries.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareSuffix(entries[mid], prefix, 0) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private int compareSuffix(long entry, String other, int otherOffset) {
+            String s = lowerNames[nameOf(entry)];
+            int i = offsetOf(entry);
+            int j = otherOffset;
+            while (i < s.length() && j < other.length()) {
+                char a = s.charAt(i++);
+                char b = other.charAt(j++);
+                if (a != b) {
+                    return a - b;
+                }
+            }
+            return (s.length() - i) - (other.length() - j);
+        }
+
+        private int suffixLength(long entry) {
+            return lowerNames[nameOf(entry)].length() - offsetOf(entry);
+        }
+
+        private char charAt(long entry, int depth) {
+            return lowerNames[nameOf(entry)].charAt(offsetOf(entry) + depth);
+        }
+
+        private static int nameOf(long entry) {
+            return (int) (entry >>> 32);
+        }
+
+        private static int offsetOf(long entry) {
+            return (int) entry;
+        }
+    }
+}
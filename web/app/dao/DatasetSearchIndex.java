@@ -0,0 +1,473 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import models.Dataset;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import play.Logger;
+import play.Play;
+
+/**
+ * In-process keyword search over `dict_dataset`, used when `search.engine` is "embedded".
+ *
+ * Candidates come from an inverted index of the same words MySQL's FULLTEXT index holds for
+ * name, schema, properties, urn, dataset_type and fields, and are ranked with the rank_01..rank_15
+ * terms of SearchDAO.SEARCH_DATASET_WITH_PAGINATION, so results come back in the same order.
+ * After the first load only rows created or modified since the last refresh are read;
+ * the index is reloaded from scratch when rows have been removed.
+ *
+ * Loads run on a background thread and are applied in one step, so a search sees either the index before
+ * a refresh or after it. Until the first load is done there is no index and callers use the SQL search.
+ */
+public class DatasetSearchIndex extends AbstractMySQLOpenSourceDAO {
+
+    public static final String EMBEDDED_SEARCH_ENGINE = "embedded";
+
+    public static final String SEARCH_INDEX_REFRESH_INTERVAL_KEY = "search.embedded.refresh.interval";
+
+    // innodb_ft_min_token_size and innodb_ft_max_token_size defaults
+    private static final int MIN_TOKEN_LENGTH = 3;
+    private static final int MAX_TOKEN_LENGTH = 84;
+
+    private final static String CHANGE_STAMP = "GREATEST(COALESCE(created_time, 0), COALESCE(modified_time, 0))";
+
+    private final static String GET_DATASET_STATS =
+            "SELECT COUNT(*) AS dataset_count, COALESCE(MAX(" + CHANGE_STAMP + "), 0) AS max_stamp FROM dict_dataset";
+
+    private final static String GET_DATASETS_CHANGED_SINCE = "SELECT id, `name`, `schema`, `source`, `urn`, " +
+            "dataset_type, storage_type, `fields`, properties, " + CHANGE_STAMP + " AS stamp " +
+            "FROM dict_dataset WHERE " + CHANGE_STAMP + " >= ?";
+
+    private static volatile Index index = null;
+
+    private static volatile long lastCheckedMillis = 0L;
+
+    private static final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    public static boolean isEnabled() {
+        return EMBEDDED_SEARCH_ENGINE.equalsIgnoreCase(
+                Play.application().configuration().getString(SearchDAO.WHEREHOWS_SEARCH_ENGINE__KEY));
+    }
+
+    /**
+     * Keyword search with the semantics of SearchDAO.getPagedEntityByKeyword.
+     * @param source only datasets of this source, null for all
+     * @param storageType only datasets of this storage_type, null for all
+     * @return null while the index is first being loaded
+     */
+    public static Result search(String keyword, String source, String storageType, int offset, int limit) {
+        Index idx = current();
+        return idx == null ? null : idx.search(keyword, source, storageType, offset, limit);
+    }
+
+    // the index as it is now, starting a refresh in the background when one is due
+    static Index current() {
+        if (System.currentTimeMillis() - lastCheckedMillis > getRefreshIntervalMillis()) {
+            refreshInBackground();
+        }
+        return index;
+    }
+
+    private static void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+        }, "dataset-search-index");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    public static synchronized void refresh() {
+        long now = System.currentTimeMillis();
+        Index idx = index;
+        if (idx != null && now - lastCheckedMillis <= getRefreshIntervalMillis()) {
+            return;
+        }
+
+        try {
+            Map<String, Object> stats = getJdbcTemplate().queryForMap(GET_DATASET_STATS);
+            long count = ((Number) stats.get("dataset_count")).longValue();
+            long maxStamp = ((Number) stats.get("max_stamp")).longValue();
+
+            if (idx == null || count < idx.liveCount() || idx.deadCount() > idx.liveCount()) {
+                Index fresh = new Index();
+                load(fresh, 0L);
+                index = fresh;
+            } else if (maxStamp > idx.maxStamp || count > idx.liveCount()) {
+                load(idx, idx.maxStamp);
+            }
+        } catch (DataAccessException e) {
+            // searches stay on the current index, or on SQL if there is none, until the next interval
+            Logger.error("DatasetSearchIndex refresh failed", e);
+        }
+        lastCheckedMillis = now;
+    }
+
+    // the changed rows are read first and then added under one write lock
+    private static void load(final Index idx, long sinceStamp) {
+        final List<Doc> docs = new ArrayList<Doc>();
+        final List<Set<String>> docWords = new ArrayList<Set<String>>();
+        getJdbcTemplate().query(GET_DATASETS_CHANGED_SINCE, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                Doc doc = new Doc(rs.getLong("id"), rs.getString("name"), rs.getString("schema"),
+                        rs.getString("source"), rs.getString("urn"), rs.getString("dataset_type"),
+                        rs.getString("storage_type"), rs.getString("fields"), rs.getLong("stamp"));
+                Set<String> words = new HashSet<String>();
+                tokenize(doc.name, MIN_TOKEN_LENGTH, words);
+                tokenize(doc.schema, MIN_TOKEN_LENGTH, words);
+                tokenize(rs.getString("properties"), MIN_TOKEN_LENGTH, words);
+                tokenize(doc.urn, MIN_TOKEN_LENGTH, words);
+                tokenize(doc.datasetType, MIN_TOKEN_LENGTH, words);
+                tokenize(doc.fields, MIN_TOKEN_LENGTH, words);
+                docs.add(doc);
+                docWords.add(words);
+            }
+        }, sinceStamp);
+        idx.addAll(docs, docWords);
+        Logger.debug("DatasetSearchIndex loaded " + docs.size() + " datasets, " + idx.liveCount() + " indexed");
+    }
+
+    private static long getRefreshIntervalMillis() {
+        return Play.application().configuration().getLong(SEARCH_INDEX_REFRESH_INTERVAL_KEY, 60L) * 1000L;
+    }
+
+    // same word boundaries as the FULLTEXT parser: letters, digits and underscore
+    static void tokenize(String text, int minLength, Collection<String> words) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && isWordChar(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= minLength && i - start <= MAX_TOKEN_LENGTH) {
+                    words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    public static class Result {
+        public final long count;
+        public final List<Dataset> datasets;
+
+        Result(long count, List<Dataset> datasets) {
+            this.count = count;
+            this.datasets = datasets;
+        }
+    }
+
+    static class Doc {
+        final long id;
+        final String name;
+        final String schema;
+        final String source;
+        final String urn;
+        final String datasetType;
+        final String storageType;
+        final String fields;
+        final long stamp;
+
+        Doc(long id, String name, String schema, String source, String urn, String datasetType, String storageType,
+            String fields, long stamp) {
+            this.id = id;
+            this.name = name;
+            this.schema = schema;
+            this.source = source;
+            this.urn = urn;
+            this.datasetType = datasetType;
+            this.storageType = storageType;
+            this.fields = fields;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * Posting lists are append only: an updated dataset gets a new ordinal and its old one is marked dead,
+     * dead ordinals are dropped on the next full reload.
+     */
+    static class Index {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<Doc> docs = new ArrayList<Doc>();
+        private final BitSet live = new BitSet();
+        private final Map<Long, Integer> ordinals = new HashMap<Long, Integer>();
+        private final TreeMap<String, IntList> postings = new TreeMap<String, IntList>();
+        private volatile long maxStamp = 0L;
+
+        int liveCount() {
+            lock.readLock().lock();
+            try {
+                return ordinals.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int deadCount() {
+            lock.readLock().lock();
+            try {
+                return docs.size() - ordinals.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void addAll(List<Doc> added, List<Set<String>> addedWords) {
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < added.size(); i++) {
+                    add(added.get(i), addedWords.get(i));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void add(Doc doc, Set<String> words) {
+            lock.writeLock().lock();
+            try {
+                Integer old = ordinals.get(doc.id);
+                if (old != null) {
+                    if (docs.get(old).stamp == doc.stamp) {
+                        // already indexed, seen again because a refresh starts at the last stamp
+                        return;
+                    }
+                    live.clear(old);
+                }
+                int ordinal = docs.size();
+                docs.add(doc);
+                live.set(ordinal);
+                ordinals.put(doc.id, ordinal);
+                for (String word : words) {
+                    IntList list = postings.get(word);
+                    if (list == null) {
+                        list = new IntList();
+                        postings.put(word, list);
+                    }
+                    list.add(ordinal);
+                }
+                maxStamp = Math.max(maxStamp, doc.stamp);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Result search(String keyword, String source, String storageType, int offset, int limit) {
+            List<String> words = new ArrayList<String>();
+            // no minimum length for query words, short words only ever match as a prefix
+            tokenize(keyword, 1, words);
+            if (words.isEmpty()) {
+                return new Result(0, new ArrayList<Dataset>());
+            }
+
+            final Ranker ranker = new Ranker(keyword);
+            final List<Doc> hits = new ArrayList<Doc>();
+            final Map<Doc, Integer> ranks = new HashMap<Doc, Integer>();
+
+            lock.readLock().lock();
+            try {
+                // AGAINST ('*$keyword* *v_$keyword* "$keyword"' IN BOOLEAN MODE): the last word of each
+                // starred term is a prefix, the other words must match exactly; the phrase adds nothing new
+                BitSet candidates = new BitSet(docs.size());
+                int last = words.size() - 1;
+                for (int i = 0; i < last; i++) {
+                    collect(words.get(i), false, candidates);
+                }
+                collect(words.get(last), true, candidates);
+                collect("v_" + words.get(0), last == 0, candidates);
+                candidates.and(live);
+
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    Doc doc = docs.get(i);
+                    if (source != null && !source.equalsIgnoreCase(doc.source)) {
+                        continue;
+                    }
+                    if (storageType != null && !storageType.equalsIgnoreCase(doc.storageType)) {
+                        continue;
+                    }
+                    hits.add(doc);
+                    ranks.put(doc, ranker.rank(doc));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // ORDER BY rank DESC, `name`, `urn`
+            Collections.sort(hits, new Comparator<Doc>() {
+                @Override
+                public int compare(Doc a, Doc b) {
+                    int c = Integer.compare(ranks.get(b), ranks.get(a));
+                    if (c == 0) {
+                        c = compareColumn(a.name, b.name);
+                    }
+                    if (c == 0) {
+                        c = compareColumn(a.urn, b.urn);
+                    }
+                    return c;
+                }
+            });
+
+            List<Dataset> page = new ArrayList<Dataset>();
+            for (int i = Math.max(offset, 0); i < hits.size() && page.size() < limit; i++) {
+                Doc doc = hits.get(i);
+                Dataset ds = new Dataset();
+                ds.id = doc.id;
+                ds.name = doc.name;
+                ds.source = doc.source;
+                ds.urn = doc.urn;
+                ds.schema = doc.schema;
+                page.add(ds);
+            }
+            return new Result(hits.size(), page);
+        }
+
+        private void collect(String word, boolean prefix, BitSet candidates) {
+            Collection<IntList> lists;
+            if (prefix) {
+                lists = postings.subMap(word, true, word + Character.MAX_VALUE, false).values();
+            } else {
+                IntList list = postings.get(word);
+                lists = list == null ? Collections.<IntList>emptyList() : Collections.singletonList(list);
+            }
+            for (IntList list : lists) {
+                for (int i = 0; i < list.size; i++) {
+                    candidates.set(list.values[i]);
+                }
+            }
+        }
+
+        // MySQL sorts NULL first and compares case-insensitively
+        private static int compareColumn(String a, String b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return String.CASE_INSENSITIVE_ORDER.compare(a, b);
+        }
+    }
+
+    /**
+     * The rank_01..rank_15 CASE terms: for each column `= kw`, `LIKE 'kw%'` and `LIKE '%kw%'` add 3, 2 and 1 units,
+     * 1000 for name, 100 for urn and 10 for schema, dataset_type and fields. Comparisons are case-insensitive
+     * like the utf8_general_ci columns, and `%` or `_` in the keyword keep their LIKE meaning.
+     */
+    static class Ranker {
+        private final String keyword;
+        // only set when the keyword has LIKE wildcards
+        private final Pattern prefixPattern;
+        private final Pattern containsPattern;
+
+        Ranker(String keyword) {
+            this.keyword = keyword;
+            if (keyword.indexOf('%') >= 0 || keyword.indexOf('_') >= 0) {
+                String like = likeToRegex(keyword);
+                int flags = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL;
+                prefixPattern = Pattern.compile(like + ".*", flags);
+                containsPattern = Pattern.compile(".*" + like + ".*", flags);
+            } else {
+                prefixPattern = null;
+                containsPattern = null;
+            }
+        }
+
+        int rank(Doc doc) {
+            return score(doc.name, 1000) + score(doc.urn, 100) + score(doc.schema, 10) + score(doc.datasetType, 10)
+                    + score(doc.fields, 10);
+        }
+
+        private int score(String value, int unit) {
+            if (value == null) {
+                return 0;
+            }
+            int score = 0;
+            if (value.equalsIgnoreCase(keyword)) {
+                score += 3 * unit;
+            }
+            if (prefixPattern == null) {
+                if (value.regionMatches(true, 0, keyword, 0, keyword.length())) {
+                    score += 2 * unit;
+                }
+                if (StringUtils.containsIgnoreCase(value, keyword)) {
+                    score += unit;
+                }
+            } else {
+                if (prefixPattern.matcher(value).matches()) {
+                    score += 2 * unit;
+                }
+                if (containsPattern.matcher(value).matches()) {
+                    score += unit;
+                }
+            }
+            return score;
+        }
+
+        private static String likeToRegex(String like) {
+            StringBuilder sb = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (char c : like.toCharArray()) {
+                if (c == '%' || c == '_') {
+                    if (literal.length() > 0) {
+                        sb.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    sb.append(c == '%' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                sb.append(Pattern.quote(literal.toString()));
+            }
+            return sb.toString();
+        }
+    }
+
+    static class IntList {
+        int[] values = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import models.DatasetListViewNode;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import play.Logger;
+import play.Play;
+
+/**
+ * The `dict_dataset` urns as a tree of '/' separated path segments, for the dataset list view.
+ *
+ * Segments are compared case-insensitively like the utf8_general_ci urn column, so segments differing only
+ * in case share a node, which keeps the spelling it was first added with.
+ * Every node knows how many datasets are at or below it and the id of the dataset whose urn ends there,
+ * so listing the children of a urn prefix is a walk down the prefix plus one pass over its children,
+ * instead of the SUBSTRING_INDEX / self join queries over every matching row.
+ * Datasets are only ever added with a new id, so after the first load only rows with an id above the
+ * last one seen are read; the tree is rebuilt when rows have been removed.
+ */
+public class DatasetUrnTree extends AbstractMySQLOpenSourceDAO {
+
+    public static final String DATASET_URN_TREE_ENABLED_KEY = "dataset.list.in.memory";
+
+    public static final String DATASET_URN_TREE_REFRESH_INTERVAL_KEY = "dataset.list.refresh.interval";
+
+    private final static String GET_DATASET_STATS =
+            "SELECT COUNT(*) AS dataset_count, COALESCE(MAX(id), 0) AS max_id FROM dict_dataset";
+
+    private final static String GET_DATASETS_AFTER_ID = "SELECT id, urn FROM dict_dataset WHERE id > ?";
+
+    // MySQL's case insensitive collation order, with case only breaking ties
+    private static final Comparator<String> SEGMENT_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int c = String.CASE_INSENSITIVE_ORDER.compare(a, b);
+            return c != 0 ? c : a.compareTo(b);
+        }
+    };
+
+    private static volatile Tree tree = null;
+
+    private static volatile long lastCheckedMillis = 0L;
+
+    public static boolean isEnabled() {
+        return Play.application().configuration().getBoolean(DATASET_URN_TREE_ENABLED_KEY, true);
+    }
+
+    /**
+     * Same nodes as DatasetsDAO.getDatasetListViewNodes: the platforms when `urn` is blank,
+     * otherwise the next path segment of every dataset under the `urn` prefix.
+     */
+    public static List<DatasetListViewNode> getListViewNodes(String urn) {
+        Tree t = current();
+        return urn == null || urn.trim().isEmpty() ? t.topLevelNodes() : t.childNodes(urn);
+    }
+
+    static Tree current() {
+        Tree t = tree;
+        long now = System.currentTimeMillis();
+        if (t == null || now - lastCheckedMillis > getRefreshIntervalMillis()) {
+            refresh();
+            t = tree;
+        }
+        return t;
+    }
+
+    public static synchronized void refresh() {
+        long now = System.currentTimeMillis();
+        Tree t = tree;
+        if (t != null && now - lastCheckedMillis <= getRefreshIntervalMillis()) {
+            return;
+        }
+
+        try {
+            Map<String, Object> stats = getJdbcTemplate().queryForMap(GET_DATASET_STATS);
+            long count = ((Number) stats.get("dataset_count")).longValue();
+            long maxId = ((Number) stats.get("max_id")).longValue();
+
+            if (t != null && count >= t.size() && maxId > t.maxId) {
+                load(t, t.maxId);
+            }
+            if (t == null || count != t.size()) {
+                Tree fresh = new Tree();
+                load(fresh, 0L);
+                tree = fresh;
+            }
+            lastCheckedMillis = now;
+        } catch (DataAccessException e) {
+            Logger.error("DatasetUrnTree refresh failed", e);
+            if (tree == null) {
+                tree = new Tree();
+            }
+        }
+    }
+
+    private static void load(final Tree t, long afterId) {
+        getJdbcTemplate().query(GET_DATASETS_AFTER_ID, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                t.add(rs.getLong("id"), rs.getString("urn"));
+            }
+        }, afterId);
+        Logger.debug("DatasetUrnTree holds " + t.size() + " datasets");
+    }
+
+    private static long getRefreshIntervalMillis() {
+        return Play.application().configuration().getLong(DATASET_URN_TREE_REFRESH_INTERVAL_KEY, 60L) * 1000L;
+    }
+
+    static final class Node {
+        final TreeMap<String, Node> children = new TreeMap<String, Node>(String.CASE_INSENSITIVE_ORDER);
+        // the segment as first seen, null for the root
+        final String segment;
+        // id of the dataset whose urn ends at this node, 0 if there is none
+        long datasetId = 0L;
+        // datasets whose urn ends at or below this node
+        int datasetCount = 0;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+    }
+
+    static final class Tree {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Node root = new Node(null);
+        // platform urn prefix (what GET_DATASET_LISTVIEW_TOP_LEVEL_NODES returns) -> datasets under it
+        private final TreeMap<String, Integer> topLevel = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+        volatile long maxId = 0L;
+
+        int size() {
+            return root.datasetCount;
+        }
+
+        void add(long id, String urn) {
+            if (urn == null) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                Node node = root;
+                node.datasetCount++;
+                for (String segment : urn.split("/", -1)) {
+                    Node child = node.children.get(segment);
+                    if (child == null) {
+                        child = new Node(segment);
+                        node.children.put(segment, child);
+                    }
+                    node = child;
+                    node.datasetCount++;
+                }
+                node.datasetId = id;
+
+                String top = topLevelUrn(urn);
+                Integer count = topLevel.get(top);
+                topLevel.put(top, count == null ? 1 : count + 1);
+                if (id > maxId) {
+                    maxId = id;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<DatasetListViewNode> topLevelNodes() {
+            List<DatasetListViewNode> nodes = new ArrayList<DatasetListViewNode>();
+            lock.readLock().lock();
+            try {
+                for (Map.Entry<String, Integer> entry : topLevel.entrySet()) {
+                    String urn = entry.getKey();
+                    int separator = urn.indexOf("://");
+                    nodes.add(newNode(separator < 0 ? urn : urn.substring(0, separator), urn, 0L,
+                            entry.getValue()));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            Collections.sort(nodes, new Comparator<DatasetListViewNode>() {
+                @Override
+                public int compare(DatasetListViewNode a, DatasetListViewNode b) {
+                    return SEGMENT_ORDER.compare(a.nodeName, b.nodeName);
+                }
+            });
+            return nodes;
+        }
+
+        /**
+         * Next path segment of every urn starting with `prefix`, ignoring case like `urn LIKE ?`. A prefix that
+         * doesn't end with '/' lists the rest of each segment that starts with its last part, like the SQL did.
+         */
+        List<DatasetListViewNode> childNodes(String prefix) {
+            int cut = prefix.lastIndexOf('/');
+            String partial = prefix.substring(cut + 1);
+
+            List<DatasetListViewNode> nodes = new ArrayList<DatasetListViewNode>();
+            lock.readLock().lock();
+            try {
+                Node node = root;
+                if (cut >= 0) {
+                    for (String segment : prefix.substring(0, cut).split("/", -1)) {
+                        node = node.children.get(segment);
+                        if (node == null) {
+                            return nodes;
+                        }
+                    }
+                }
+                for (Node child : node.children.values()) {
+                    String segment = child.segment;
+                    if (segment.regionMatches(true, 0, partial, 0, partial.length())) {
+                        String name = segment.substring(partial.length());
+                        nodes.add(newNode(name, prefix + name, child.datasetId > 0 ? child.datasetId : null,
+                                child.datasetCount));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return nodes;
+        }
+
+        // LEFT(urn, INSTR(urn, '://') + 3)
+        private static String topLevelUrn(String urn) {
+            return urn.substring(0, Math.min(urn.length(), urn.indexOf("://") + 4));
+        }
+
+        private static DatasetListViewNode newNode(String name, String urn, Long datasetId, int datasetCount) {
+            DatasetListViewNode node = new DatasetListViewNode();
+            node.nodeName = name;
+            node.datasetId = datasetId;
+            node.datasetCount = datasetCount;
+            if (datasetId != null && datasetId > 0) {
+                node.nodeUrl = "#/datasets/" + datasetId;
+            } else {
+                node.nodeUrl = "#/datasets/name/" + name + "/page/1?urn=" + urn;
+            }
+            return node;
+        }
+    }
+}
@@ -14,6 +14,7 @@
 package dao;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.sql.Connection;
@@ -24,6 +25,7 @@ import java.time.Instant;
 import java.util.*;
 import java.text.SimpleDateFormat;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
@@ -39,21 +41,28 @@ import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 import play.Logger;
 import play.Play;
+import play.cache.Cache;
 import play.libs.Json;
 import models.*;
+import utils.JsonChunks;
 
 public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 {
 	public final static String HDFS_BROWSER_URL_KEY = "dataset.hdfs_browser.link";
 
 
+	public final static String DATASET_COUNT_CACHE_TTL_KEY = "dataset.count.cache.ttl";
+
+	private final static String DATASET_COUNT_CACHE_PREFIX = "pagedDatasetCount:";
+
+	// $where is filled in by getPagedDatasets, ORDER BY matches idx_dataset_source_modified for keyset paging
 	private final static String SELECT_PAGED_DATASET  = "SELECT " +
 			"d.id, d.name, d.urn, d.source, d.properties, d.schema, " +
 			"GROUP_CONCAT(o.owner_id ORDER BY o.sort_id ASC SEPARATOR ',') as owner_id, " +
 			"GROUP_CONCAT(IFNULL(u.display_name, '*') ORDER BY o.sort_id ASC SEPARATOR ',') as owner_name, " +
 			"FROM_UNIXTIME(source_created_time) as created, d.source_modified_time, " +
 			"FROM_UNIXTIME(source_modified_time) as modified " +
-			"FROM ( SELECT * FROM dict_dataset ORDER BY source_modified_time DESC LIMIT ?, ? ) d " +
+			"FROM ( SELECT * FROM dict_dataset $where ORDER BY source_modified_time DESC, id DESC LIMIT ?, ? ) d " +
 			"LEFT JOIN dataset_owner o on (d.id = o.dataset_id and (o.is_deleted is null OR o.is_deleted != 'Y')) " +
 			"LEFT JOIN dir_external_user_info u on (o.owner_id = u.user_id and u.app_id = 300) " +
 			"GROUP BY d.id, d.name, d.urn, d.source, d.properties, d.schema, " +
@@ -66,7 +75,8 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 			"GROUP_CONCAT(IFNULL(u.display_name, '*') ORDER BY o.sort_id ASC SEPARATOR ',') as owner_name, " +
 			"FROM_UNIXTIME(source_created_time) as created, d.source_modified_time, " +
 			"FROM_UNIXTIME(source_modified_time) as modified " +
-			"FROM ( SELECT * FROM dict_dataset ORDER BY source_modified_time DESC LIMIT ?, ?) d LEFT JOIN favorites f ON (" +
+			"FROM ( SELECT * FROM dict_dataset $where ORDER BY source_modified_time DESC, id DESC LIMIT ?, ?) d " +
+			"LEFT JOIN favorites f ON (" +
 			"d.id = f.dataset_id and f.user_id = ?) " +
 			"LEFT JOIN watch w on (d.id = w.item_id and w.item_type = 'dataset' and w.user_id = ?) " +
 			"LEFT JOIN dataset_owner o on (d.id = o.dataset_id and (o.is_deleted is null OR o.is_deleted != 'Y')) " +
@@ -74,35 +84,18 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 			"GROUP BY d.id, d.name, d.urn, d.source, d.schema, d.properties, f.dataset_id, " +
 			"watch_id, created, d.source_modified_time, modified";
 
-	private final static String GET_PAGED_DATASET_COUNT  = "SELECT count(*) FROM dict_dataset";
+	private final static String PAGED_DATASET_URN_FILTER = "urn LIKE ?";
 
-	private final static String SELECT_PAGED_DATASET_BY_URN  = "SELECT " +
-			"d.id, d.name, d.urn, d.source, d.properties, d.schema, " +
-			"GROUP_CONCAT(o.owner_id ORDER BY o.sort_id ASC SEPARATOR ',') as owner_id, " +
-			"GROUP_CONCAT(IFNULL(u.display_name, '*') ORDER BY o.sort_id ASC SEPARATOR ',') as owner_name, " +
-			"FROM_UNIXTIME(source_created_time) as created, d.source_modified_time, " +
-			"FROM_UNIXTIME(source_modified_time) as modified " +
-			"FROM ( SELECT * FROM dict_dataset WHERE urn LIKE ? ORDER BY source_modified_time DESC limit ?, ? ) d " +
-			"LEFT JOIN dataset_owner o on (d.id = o.dataset_id and (o.is_deleted is null OR o.is_deleted != 'Y')) " +
-			"LEFT JOIN dir_external_user_info u on (o.owner_id = u.user_id and u.app_id = 300) " +
-			"GROUP BY d.id, d.name, d.urn, d.source, d.properties, d.schema, created, " +
-			"d.source_modified_time, modified";
+	// rows after the cursor in (source_modified_time DESC, id DESC) order, NULL modified times sort last;
+	// the NULL rows are a second query on PAGED_DATASET_NULL_TAIL so both stay ranges of idx_dataset_source_modified
+	private final static String PAGED_DATASET_AFTER_CURSOR = "(source_modified_time < ? " +
+			"OR (source_modified_time = ? AND id < ?))";
 
-	private final static String SELECT_PAGED_DATASET_BY_URN_CURRENT_USER  = "SELECT " +
-			"d.id, d.name, d.urn, d.source, d.schema, " +
-			"GROUP_CONCAT(o.owner_id ORDER BY o.sort_id ASC SEPARATOR ',') as owner_id, " +
-			"GROUP_CONCAT(IFNULL(u.display_name, '*') ORDER BY o.sort_id ASC SEPARATOR ',') as owner_name, " +
-			"d.properties, f.dataset_id, w.id as watch_id, " +
-			"FROM_UNIXTIME(source_created_time) as created, d.source_modified_time, " +
-			"FROM_UNIXTIME(source_modified_time) as modified " +
-			"FROM ( SELECT * FROM dict_dataset WHERE urn LIKE ?  ORDER BY source_modified_time DESC LIMIT ?, ? ) d " +
-			"LEFT JOIN favorites f ON (" +
-			"d.id = f.dataset_id and f.user_id = ?) " +
-			"LEFT JOIN watch w ON (d.id = w.item_id and w.item_type = 'dataset' and w.user_id = ?) " +
-			"LEFT JOIN dataset_owner o on (d.id = o.dataset_id and (o.is_deleted is null OR o.is_deleted != 'Y')) " +
-			"LEFT JOIN dir_external_user_info u on (o.owner_id = u.user_id and u.app_id = 300) " +
-			"GROUP BY d.id, d.name, d.urn, d.source, d.schema, d.properties, f.dataset_id, " +
-			"watch_id, created, d.source_modified_time, modified";
+	private final static String PAGED_DATASET_NULL_TAIL = "source_modified_time IS NULL";
+
+	private final static String PAGED_DATASET_AFTER_NULL_CURSOR = "(source_modified_time IS NULL AND id < ?)";
+
+	private final static String GET_PAGED_DATASET_COUNT  = "SELECT count(*) FROM dict_dataset";
 
 	private final static String GET_PAGED_DATASET_COUNT_BY_URN  = "SELECT count(*) FROM dict_dataset WHERE urn LIKE ?";
 
@@ -320,19 +313,18 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 			"LEFT JOIN field_comments fc ON ddfc.comment_id = fc.id " +
 			"WHERE dfd.dataset_id <> ? AND dfd.field_name = ? ORDER BY d.name asc";
 
+	private final static String GET_DEFAULT_COMMENTS_BY_FIELD_IDS = "SELECT f.dataset_id, f.field_id, " +
+			"f.comment_id, c.comment FROM dict_dataset_field_comment f JOIN field_comments c on c.id = f.comment_id " +
+			"WHERE f.field_id IN (:ids) and f.is_default = 1";
 
-	private final static String GET_DATASET_OWNER_TYPES = "SELECT DISTINCT owner_type " +
-			"FROM dataset_owner WHERE owner_type is not null";
+	private final static String GET_DATASET_NAMES_BY_IDS = "SELECT id, name, source FROM dict_dataset " +
+			"WHERE id IN (:ids)";
 
-	private final static String GET_DATASET_DEPENDS_VIEW = "SELECT object_type, object_sub_type, " +
-			"object_name, map_phrase, is_identical_map, mapped_object_dataset_id, " +
-			"mapped_object_type,  mapped_object_sub_type, mapped_object_name " +
-			"FROM cfg_object_name_map WHERE object_name = ?";
+	private final static int IN_CLAUSE_BATCH_SIZE = 1000;
 
-	private final static String GET_DATASET_REFERENCES = "SELECT object_type, object_sub_type, " +
-			"object_name, object_dataset_id, map_phrase, is_identical_map, mapped_object_dataset_id, " +
-			"mapped_object_type,  mapped_object_sub_type, mapped_object_name " +
-			"FROM cfg_object_name_map WHERE mapped_object_name = ?";
+
+	private final static String GET_DATASET_OWNER_TYPES = "SELECT DISTINCT owner_type " +
+			"FROM dataset_owner WHERE owner_type is not null";
 
 	private final static String GET_DATASET_LISTVIEW_TOP_LEVEL_NODES = "SELECT DISTINCT " +
 			"SUBSTRING_INDEX(urn, '://', 1) as `name`, 0 as id, " +
@@ -378,70 +370,183 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 
 	public static ObjectNode getPagedDatasets(String urn, Integer page, Integer size, String user)
 	{
-		ObjectNode result = Json.newObject();
+		return getPagedDatasets(urn, page, size, user, null);
+	}
+
+	/**
+	 * Pages through datasets by (source_modified_time, id), newest first.
+	 * With a cursor (the nextCursor of the previous page) the page starts right after it and the page
+	 * number is only echoed back, so deep pages cost the same as the first one. Without a cursor the
+	 * page number is used as an offset. The total count is cached per urn prefix.
+	 */
+	public static ObjectNode getPagedDatasets(String urn, Integer page, Integer size, String user, String cursor)
+	{
+		return getDatasetPage(urn, page, size, user, cursor).toJson();
+	}
 
+	/**
+	 * One page of datasets, as returned by getPagedDatasets.
+	 */
+	public static class DatasetPage
+	{
+		public final String nextCursor;
+		public final long count;
+		public final int page;
+		public final int itemsPerPage;
+		public final List<Dataset> datasets;
+
+		DatasetPage(String nextCursor, long count, int page, int itemsPerPage, List<Dataset> datasets)
+		{
+			this.nextCursor = nextCursor;
+			this.count = count;
+			this.page = page;
+			this.itemsPerPage = itemsPerPage;
+			this.datasets = datasets;
+		}
+
+		public int getTotalPages()
+		{
+			return (int) Math.ceil(count / ((double) itemsPerPage));
+		}
+
+		/**
+		 * Writes the getPagedDatasets object one dataset at a time.
+		 */
+		public void writeTo(JsonGenerator gen) throws IOException
+		{
+			gen.writeStartObject();
+			if (nextCursor != null)
+			{
+				gen.writeStringField("nextCursor", nextCursor);
+			}
+			gen.writeNumberField("count", count);
+			gen.writeNumberField("page", page);
+			gen.writeNumberField("itemsPerPage", itemsPerPage);
+			gen.writeNumberField("totalPages", getTotalPages());
+			JsonChunks.writeArrayField(gen, "datasets", datasets);
+			gen.writeEndObject();
+		}
+
+		public ObjectNode toJson()
+		{
+			ObjectNode resultNode = Json.newObject();
+			if (nextCursor != null)
+			{
+				resultNode.put("nextCursor", nextCursor);
+			}
+			resultNode.put("count", count);
+			resultNode.put("page", page);
+			resultNode.put("itemsPerPage", itemsPerPage);
+			resultNode.put("totalPages", getTotalPages());
+			resultNode.set("datasets", Json.toJson(datasets));
+			return resultNode;
+		}
+	}
+
+	private static List<Map<String, Object>> getPagedDatasetRows(String where, List<Object> filterParams,
+			int offset, int size, Integer userId)
+	{
+		List<Object> params = new ArrayList<Object>(filterParams);
+		params.add(offset);
+		params.add(size);
+		if (userId != null && userId > 0)
+		{
+			params.add(userId);
+			params.add(userId);
+			return getJdbcTemplate().queryForList(
+					SELECT_PAGED_DATASET_BY_CURRENT_USER.replace("$where", where), params.toArray());
+		}
+		return getJdbcTemplate().queryForList(SELECT_PAGED_DATASET.replace("$where", where), params.toArray());
+	}
+
+	public static DatasetPage getDatasetPage(String urn, Integer page, Integer size, String user, String cursor)
+	{
 		Integer userId = UserDAO.getUserIDByUserName(user);
 
+		List<String> filters = new ArrayList<String>();
+		List<Object> filterParams = new ArrayList<Object>();
+		if (StringUtils.isNotBlank(urn))
+		{
+			filters.add(PAGED_DATASET_URN_FILTER);
+			filterParams.add(urn + "%");
+		}
+		int offset = (page - 1) * size;
+		final List<String> tailFilters = new ArrayList<String>(filters);
+		final List<Object> tailParams = new ArrayList<Object>(filterParams);
+		boolean withNullTail = false;
+		if (StringUtils.isNotBlank(cursor))
+		{
+			int separator = cursor.indexOf(':');
+			try
+			{
+				if (separator < 0)
+				{
+					throw new NumberFormatException("missing ':' separator");
+				}
+				Long cursorId = Long.parseLong(cursor.substring(separator + 1));
+				if (separator <= 0)
+				{
+					filters.add(PAGED_DATASET_AFTER_NULL_CURSOR);
+					filterParams.add(cursorId);
+				}
+				else
+				{
+					Long cursorModified = Long.parseLong(cursor.substring(0, separator));
+					filters.add(PAGED_DATASET_AFTER_CURSOR);
+					filterParams.add(cursorModified);
+					filterParams.add(cursorModified);
+					filterParams.add(cursorId);
+					tailFilters.add(PAGED_DATASET_NULL_TAIL);
+					withNullTail = true;
+				}
+				offset = 0;
+			}
+			catch(NumberFormatException e)
+			{
+				Logger.error("getPagedDatasets wrong cursor " + cursor + ", using page " + page + ". Error message: " + e.getMessage());
+			}
+		}
+		final String where = filters.isEmpty() ? "" : "WHERE " + StringUtils.join(filters, " AND ");
+		final String tailWhere = withNullTail ? "WHERE " + StringUtils.join(tailFilters, " AND ") : null;
+		final int rowOffset = offset;
+		final boolean nullTail = withNullTail;
+
 		javax.sql.DataSource ds = getJdbcTemplate().getDataSource();
 		DataSourceTransactionManager tm = new DataSourceTransactionManager(ds);
 		TransactionTemplate txTemplate = new TransactionTemplate(tm);
 		final Integer id = userId;
 
-		result = txTemplate.execute(new TransactionCallback<ObjectNode>() {
-			public ObjectNode doInTransaction(TransactionStatus status) {
+		return txTemplate.execute(new TransactionCallback<DatasetPage>() {
+			public DatasetPage doInTransaction(TransactionStatus status) {
 
-				ObjectNode resultNode = Json.newObject();
+				String nextCursor = null;
 				List<Dataset> pagedDatasets = new ArrayList<Dataset>();
-				List<Map<String, Object>> rows = null;
-				if (id != null && id > 0)
-				{
-					if (StringUtils.isBlank(urn)) {
-						rows = getJdbcTemplate().queryForList(
-								SELECT_PAGED_DATASET_BY_CURRENT_USER,
-								(page - 1) * size, size,
-								id,
-								id);
-					} else {
-						rows = getJdbcTemplate().queryForList(
-								SELECT_PAGED_DATASET_BY_URN_CURRENT_USER,
-								urn + "%",
-								(page - 1) * size, size,
-								id,
-								id);
-					}
-				}
-				else
+				List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(
+						getPagedDatasetRows(where, filterParams, rowOffset, size, id));
+				if (nullTail && rows.size() < size)
 				{
-					if (StringUtils.isBlank(urn)) {
-						rows = getJdbcTemplate().queryForList(
-								SELECT_PAGED_DATASET,
-								(page - 1) * size, size);
-					} else {
-						rows = getJdbcTemplate().queryForList(
-								SELECT_PAGED_DATASET_BY_URN,
-								urn + "%",
-								(page - 1) * size, size);
-					}
-
+					// the page runs past the last modified time into the datasets without one
+					rows.addAll(getPagedDatasetRows(tailWhere, tailParams, 0, size - rows.size(), id));
 				}
 
-				long count = 0;
-				try {
+				long count = getPagedDatasetCount(urn);
 
-					if (StringUtils.isBlank(urn)) {
-						count = getJdbcTemplate().queryForObject(
-								GET_PAGED_DATASET_COUNT,
-								Long.class);
-					}
-					else
+				// the last row in (source_modified_time DESC, id DESC) order, GROUP BY doesn't keep the order
+				Long lastModified = null;
+				Long lastId = null;
+				for (Map<String, Object> row : rows) {
+					Long rowModified = (Long)row.get(DatasetWithUserRowMapper.DATASET_SOURCE_MODIFIED_TIME_COLUMN);
+					Long rowId = (Long)row.get(DatasetWithUserRowMapper.DATASET_ID_COLUMN);
+					if (lastId == null || compareNullsFirst(rowModified, lastModified) < 0
+							|| (compareNullsFirst(rowModified, lastModified) == 0 && rowId < lastId))
 					{
-						count = getJdbcTemplate().queryForObject(
-								GET_PAGED_DATASET_COUNT_BY_URN,
-								Long.class,
-								urn + "%");
+						lastModified = rowModified;
+						lastId = rowId;
 					}
-				} catch (EmptyResultDataAccessException e) {
-					Logger.error("Exception = " + e.getMessage());
+				}
+				if (lastId != null && rows.size() >= size)
+				{
+					nextCursor = (lastModified == null ? "" : lastModified.toString()) + ":" + lastId;
 				}
 
 				for (Map row : rows) {
@@ -549,28 +654,72 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 					pagedDatasets.add(ds);
 				}
 
-				// sort pagedDatasets by dataset modified
+				// sort pagedDatasets by dataset modified, in the same order as the query
 				Collections.sort(pagedDatasets, new Comparator<Dataset>(){
 					public int compare(Dataset ds1, Dataset ds2){
-						if (ds1.modified.after(ds2.modified)) {
+						if (ds1.modified == null || ds2.modified == null) {
+							if (ds1.modified != ds2.modified) {
+								return ds1.modified == null ? 1 : -1;
+							}
+						} else if (ds1.modified.after(ds2.modified)) {
 							return -1;
 						} else if (ds1.modified.before(ds2.modified)) {
 							return 1;
-						} else {
-							return 0;
 						}
+						return Long.compare(ds2.id, ds1.id);
 					}
 				});
 
-				resultNode.put("count", count);
-				resultNode.put("page", page);
-				resultNode.put("itemsPerPage", size);
-				resultNode.put("totalPages", (int) Math.ceil(count / ((double) size)));
-				resultNode.set("datasets", Json.toJson(pagedDatasets));
-				return resultNode;
+				return new DatasetPage(nextCursor, count, page, size, pagedDatasets);
 			}
 		});
-		return result;
+	}
+
+	private static long getPagedDatasetCount(String urn)
+	{
+		String cacheKey = DATASET_COUNT_CACHE_PREFIX + (StringUtils.isBlank(urn) ? "" : urn);
+		Long count = (Long)Cache.get(cacheKey);
+		if (count != null)
+		{
+			return count;
+		}
+
+		count = 0L;
+		try {
+			if (StringUtils.isBlank(urn)) {
+				count = getJdbcTemplate().queryForObject(
+						GET_PAGED_DATASET_COUNT,
+						Long.class);
+			}
+			else
+			{
+				count = getJdbcTemplate().queryForObject(
+						GET_PAGED_DATASET_COUNT_BY_URN,
+						Long.class,
+						urn + "%");
+			}
+			Cache.set(cacheKey, count, getCountCacheTtl());
+		} catch (EmptyResultDataAccessException e) {
+			Logger.error("Exception = " + e.getMessage());
+		}
+		return count;
+	}
+
+	/**
+	 * Seconds a dataset count is reused for, by getPagedDatasets and the keyword search.
+	 */
+	static int getCountCacheTtl()
+	{
+		return Play.application().configuration().getInt(DATASET_COUNT_CACHE_TTL_KEY, 300);
+	}
+
+	private static int compareNullsFirst(Long a, Long b)
+	{
+		if (a == null || b == null)
+		{
+			return a == null ? (b == null ? 0 : -1) : 1;
+		}
+		return a.compareTo(b);
 	}
 
 	public static ObjectNode ownDataset(int id, String user)
@@ -1527,6 +1676,10 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 
 	public static List similarColumnComments(Long datasetId, int columnId)
 	{
+		if (FieldNameIndex.isEnabled())
+		{
+			return similarColumnCommentsFromIndex(datasetId, columnId);
+		}
 		List<SimilarComments> comments = new ArrayList<SimilarComments>();
 		List<Map<String, Object>> rows = null;
 		String fieldName = "";
@@ -1600,6 +1753,10 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 
 	public static List similarColumns(int datasetId, int columnId)
 	{
+		if (FieldNameIndex.isEnabled())
+		{
+			return similarColumnsFromIndex(datasetId, columnId);
+		}
 		List<SimilarColumns> columns = new ArrayList<SimilarColumns>();
 		List<Map<String, Object>> rows = null;
 		String fieldName = "";
@@ -1640,6 +1797,168 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 		return columns;
 	}
 
+	// the fields of every dataset come from FieldNameIndex, their comments and datasets by primary key
+	private static List<SimilarComments> similarColumnCommentsFromIndex(Long datasetId, int columnId)
+	{
+		List<SimilarComments> comments = new ArrayList<SimilarComments>();
+		FieldNameIndex.Field column = FieldNameIndex.getField(columnId);
+		if (column == null)
+		{
+			Logger.error("Dataset similarColumnComments - no field for columnId, datasetId = " +
+					Long.toString(datasetId) + " columnId = " + Integer.toString(columnId));
+			return comments;
+		}
+
+		Map<Long, SimilarComments> byComment = new LinkedHashMap<Long, SimilarComments>();
+		try {
+			for (List<Map<String, Object>> fieldComments :
+					getDefaultComments(FieldNameIndex.getFieldsNamed(column.name)).values())
+			{
+				for (Map<String, Object> row : fieldComments)
+				{
+					Long commentId = ((Number)row.get("comment_id")).longValue();
+					SimilarComments sc = byComment.get(commentId);
+					if (sc == null)
+					{
+						sc = new SimilarComments();
+						sc.count = 0L;
+						sc.commentId = commentId;
+						sc.comment = (String)row.get("comment");
+						sc.datasetId = datasetId;
+						byComment.put(commentId, sc);
+					}
+					sc.count++;
+				}
+			}
+		} catch(DataAccessException e) {
+			Logger.error("Dataset similarColumnComments - get comments by field name, datasetId = " +
+					Long.toString(datasetId) + " columnId = " + Integer.toString(columnId));
+			Logger.error("Exception = " + e.getMessage());
+			return comments;
+		}
+		comments.addAll(byComment.values());
+		Collections.sort(comments, new Comparator<SimilarComments>() {
+			@Override
+			public int compare(SimilarComments a, SimilarComments b) {
+				return Long.compare(b.count, a.count);
+			}
+		});
+		return comments;
+	}
+
+	private static List<SimilarColumns> similarColumnsFromIndex(int datasetId, int columnId)
+	{
+		List<SimilarColumns> columns = new ArrayList<SimilarColumns>();
+		FieldNameIndex.Field column = FieldNameIndex.getField(columnId);
+		if (column == null)
+		{
+			Logger.error("Dataset similarColumns - no field for columnId, datasetId = " +
+					Integer.toString(datasetId) + " columnId = " + Integer.toString(columnId));
+			return columns;
+		}
+
+		List<FieldNameIndex.Field> fields = new ArrayList<FieldNameIndex.Field>();
+		Set<Long> datasetIds = new HashSet<Long>();
+		for (FieldNameIndex.Field field : FieldNameIndex.getFieldsNamed(column.name))
+		{
+			if (field.datasetId != datasetId)
+			{
+				fields.add(field);
+				datasetIds.add(field.datasetId);
+			}
+		}
+		try {
+			Map<Long, List<Map<String, Object>>> comments = getDefaultComments(fields);
+			Map<Long, Map<String, Object>> datasets = new HashMap<Long, Map<String, Object>>();
+			List<Long> ids = new ArrayList<Long>(datasetIds);
+			for (int from = 0; from < ids.size(); from += IN_CLAUSE_BATCH_SIZE)
+			{
+				for (Map<String, Object> row : getNamedParameterJdbcTemplate().queryForList(GET_DATASET_NAMES_BY_IDS,
+						Collections.singletonMap("ids", ids.subList(from, Math.min(ids.size(), from + IN_CLAUSE_BATCH_SIZE)))))
+				{
+					datasets.put(((Number)row.get("id")).longValue(), row);
+				}
+			}
+
+			for (FieldNameIndex.Field field : fields)
+			{
+				Map<String, Object> dataset = datasets.get(field.datasetId);
+				if (dataset == null)
+				{
+					continue;
+				}
+				List<Map<String, Object>> fieldComments = comments.get(field.fieldId);
+				// one row per default comment, or one without a comment, like the LEFT JOIN
+				int rows = fieldComments == null ? 1 : fieldComments.size();
+				for (int i = 0; i < rows; i++)
+				{
+					SimilarColumns sc = new SimilarColumns();
+					sc.datasetId = field.datasetId;
+					sc.datasetName = (String)dataset.get("name");
+					sc.columnId = field.fieldId;
+					sc.dataType = field.dataType;
+					sc.source = (String)dataset.get("source");
+					if (fieldComments != null)
+					{
+						sc.commentId = ((Number)fieldComments.get(i).get("comment_id")).longValue();
+						sc.comment = (String)fieldComments.get(i).get("comment");
+					}
+					columns.add(sc);
+				}
+			}
+		} catch(DataAccessException e) {
+			Logger.error("Dataset similarColumns - get columns by field name, datasetId = " +
+					Integer.toString(datasetId) + " columnId = " + Integer.toString(columnId));
+			Logger.error("Exception = " + e.getMessage());
+			return new ArrayList<SimilarColumns>();
+		}
+		// ORDER BY d.name asc
+		Collections.sort(columns, new Comparator<SimilarColumns>() {
+			@Override
+			public int compare(SimilarColumns a, SimilarColumns b) {
+				if (a.datasetName == null || b.datasetName == null)
+				{
+					return a.datasetName == null ? (b.datasetName == null ? 0 : -1) : 1;
+				}
+				return String.CASE_INSENSITIVE_ORDER.compare(a.datasetName, b.datasetName);
+			}
+		});
+		return columns;
+	}
+
+	// the default comment rows of each field, by field_id
+	private static Map<Long, List<Map<String, Object>>> getDefaultComments(List<FieldNameIndex.Field> fields)
+	{
+		Map<Long, List<Map<String, Object>>> comments = new HashMap<Long, List<Map<String, Object>>>();
+		Map<Long, Long> datasetOfField = new HashMap<Long, Long>();
+		for (FieldNameIndex.Field field : fields)
+		{
+			datasetOfField.put(field.fieldId, field.datasetId);
+		}
+		List<Long> ids = new ArrayList<Long>(datasetOfField.keySet());
+		for (int from = 0; from < ids.size(); from += IN_CLAUSE_BATCH_SIZE)
+		{
+			for (Map<String, Object> row : getNamedParameterJdbcTemplate().queryForList(GET_DEFAULT_COMMENTS_BY_FIELD_IDS,
+					Collections.singletonMap("ids", ids.subList(from, Math.min(ids.size(), from + IN_CLAUSE_BATCH_SIZE)))))
+			{
+				Long fieldId = ((Number)row.get("field_id")).longValue();
+				// the comment has to be on this field of this dataset
+				if (!datasetOfField.get(fieldId).equals(((Number)row.get("dataset_id")).longValue()))
+				{
+					continue;
+				}
+				List<Map<String, Object>> fieldComments = comments.get(fieldId);
+				if (fieldComments == null)
+				{
+					fieldComments = new ArrayList<Map<String, Object>>();
+					comments.put(fieldId, fieldComments);
+				}
+				fieldComments.add(row);
+			}
+		}
+		return comments;
+	}
+
 	public static void updateDatasetOwnerDatabase(int datasetId, String datasetUrn, List<DatasetOwner> owners)
 	{
 		getJdbcTemplate().batchUpdate(UPDATE_DATASET_CONFIRMED_OWNERS,
@@ -1839,39 +2158,7 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 			depends = new ArrayList<DatasetDependency>();
 		}
 
-		List<Map<String, Object>> rows = null;
-		rows = getJdbcTemplate().queryForList(
-				GET_DATASET_DEPENDS_VIEW,
-				objectName);
-
-		if (rows != null)
-		{
-			for (Map row : rows) {
-				DatasetDependency dd = new DatasetDependency();
-				dd.datasetId = (Long) row.get("mapped_object_dataset_id");
-				dd.objectName = (String) row.get("mapped_object_name");
-				dd.objectType = (String) row.get("mapped_object_type");
-				dd.objectSubType = (String) row.get("mapped_object_sub_type");
-				if (dd.datasetId != null && dd.datasetId > 0)
-				{
-					dd.isValidDataset = true;
-					dd.datasetLink = "#/datasets/" + Long.toString(dd.datasetId);
-				}
-				else
-				{
-					dd.isValidDataset = false;
-				}
-				dd.level = level;
-				dd.sortId = depends.size() + 1;
-				dd.treeGridClass = "treegrid-" + Integer.toString(dd.sortId);
-				if (parent != 0)
-				{
-					dd.treeGridClass += " treegrid-parent-" + Integer.toString(parent);
-				}
-				depends.add(dd);
-				getDatasetDependencies(dd.objectName, level + 1, dd.sortId, depends);
-			}
-		}
+		ObjectNameMapGraph.appendTreeGrid(ObjectNameMapGraph.Direction.DEPENDS, objectName, level, parent, depends);
 	}
 
 	public static void getDatasetReferences(
@@ -1885,43 +2172,16 @@ public class DatasetsDAO extends AbstractMySQLOpenSourceDAO
 			references = new ArrayList<DatasetDependency>();
 		}
 
-		List<Map<String, Object>> rows = null;
-		rows = getJdbcTemplate().queryForList(
-				GET_DATASET_REFERENCES,
-				objectName);
-
-		if (rows != null)
-		{
-			for (Map row : rows) {
-				DatasetDependency dd = new DatasetDependency();
-				dd.datasetId = (Long) row.get("object_dataset_id");
-				dd.objectName = (String) row.get("object_name");
-				dd.objectType = (String) row.get("object_type");
-				dd.objectSubType = (String) row.get("object_sub_type");
-				if (dd.datasetId != null && dd.datasetId > 0)
-				{
-					dd.isValidDataset = true;
-					dd.datasetLink = "#/datasets/" + Long.toString(dd.datasetId);
-				}
-				else
-				{
-					dd.isValidDataset = false;
-				}
-				dd.level = level;
-				dd.sortId = references.size() + 1;
-				dd.treeGridClass = "treegrid-" + Integer.toString(dd.sortId);
-				if (parent != 0)
-				{
-					dd.treeGridClass += " treegrid-parent-" + Integer.toString(parent);
-				}
-				references.add(dd);
-				getDatasetReferences(dd.objectName, level + 1, dd.sortId, references);
-			}
-		}
+		ObjectNameMapGraph.appendTreeGrid(ObjectNameMapGraph.Direction.REFERENCES, objectName, level, parent,
+				references);
 	}
 
 	public static List<DatasetListViewNode> getDatasetListViewNodes(String urn) {
 
+		if (DatasetUrnTree.isEnabled())
+		{
+			return DatasetUrnTree.getListViewNodes(urn);
+		}
 
 		List<DatasetListViewNode> nodes = new ArrayList<DatasetListViewNode>();
 		List<Map<String, Object>> rows = null;
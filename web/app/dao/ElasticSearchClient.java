@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import play.Logger;
+import play.Play;
+import play.libs.F.Promise;
+import play.libs.F.RedeemablePromise;
+import play.libs.ws.WS;
+
+/**
+ * Non-blocking Elasticsearch queries for the search DAOs.
+ *
+ * Identical queries that are already in flight share one request, and responses are kept in a small
+ * LRU cache for `elasticsearch.cache.ttl` seconds, so a burst of users typing the same keyword
+ * costs one round trip and no request thread waits on the index.
+ */
+public class ElasticSearchClient {
+
+    public static final String ELASTICSEARCH_TIMEOUT_KEY = "elasticsearch.timeout";
+
+    public static final String ELASTICSEARCH_CACHE_SIZE_KEY = "elasticsearch.cache.size";
+
+    public static final String ELASTICSEARCH_CACHE_TTL_KEY = "elasticsearch.cache.ttl";
+
+    private static final Map<String, Promise<JsonNode>> inFlight = new ConcurrentHashMap<String, Promise<JsonNode>>();
+
+    private static final Map<String, CachedResponse> cache = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+            return size() > getCacheSize();
+        }
+    };
+
+    private static final class CachedResponse {
+        final JsonNode response;
+        final long expiresMillis;
+
+        CachedResponse(JsonNode response, long expiresMillis) {
+            this.response = response;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+
+    /**
+     * Posts `query` to the index url configured under `urlKey` and redeems with the JSON response,
+     * or fails if Elasticsearch doesn't answer with HTTP 200.
+     * Callers must treat the returned node as read only, it may be shared with other requests.
+     */
+    public static Promise<JsonNode> post(String urlKey, JsonNode query) {
+        final String url = Play.application().configuration().getString(urlKey);
+        final String key = url + '\n' + query.toString();
+
+        JsonNode cached = getCached(key);
+        if (cached != null) {
+            return Promise.pure(cached);
+        }
+
+        Promise<JsonNode> pending = inFlight.get(key);
+        if (pending != null) {
+            return pending;
+        }
+        final RedeemablePromise<JsonNode> response = RedeemablePromise.empty();
+        pending = inFlight.putIfAbsent(key, response);
+        if (pending != null) {
+            return pending;
+        }
+
+        final Promise<JsonNode> request;
+        try {
+            request = WS.url(url)
+                .setRequestTimeout(getTimeoutMillis())
+                .post(query)
+                .map(wsResponse -> {
+                    // error bodies are JSON too, they fail the request instead of being cached as results
+                    if (wsResponse.getStatus() != 200) {
+                        throw new IllegalStateException("Elasticsearch returned HTTP " + wsResponse.getStatus()
+                            + " for " + url + ": " + wsResponse.getBody());
+                    }
+                    return wsResponse.asJson();
+                });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, response);
+            throw e;
+        }
+        request.onRedeem(json -> {
+            putCached(key, json);
+            inFlight.remove(key, response);
+            response.success(json);
+        });
+        request.onFailure(t -> {
+            Logger.error("Elasticsearch query to " + url + " failed", t);
+            inFlight.remove(key, response);
+            response.failure(t);
+        });
+        return response;
+    }
+
+    private static JsonNode getCached(String key) {
+        synchronized (cache) {
+            CachedResponse cached = cache.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiresMillis < System.currentTimeMillis()) {
+                cache.remove(key);
+                return null;
+            }
+            return cached.response;
+        }
+    }
+
+    private static void putCached(String key, JsonNode response) {
+        long ttlMillis = getCacheTtlMillis();
+        if (ttlMillis <= 0 || getCacheSize() <= 0) {
+            return;
+        }
+        synchronized (cache) {
+            cache.put(key, new CachedResponse(response, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    private static long getTimeoutMillis() {
+        return Play.application().configuration().getLong(ELASTICSEARCH_TIMEOUT_KEY, 1000L);
+    }
+
+    private static int getCacheSize() {
+        return Play.application().configuration().getInt(ELASTICSEARCH_CACHE_SIZE_KEY, 1000);
+    }
+
+    private static long getCacheTtlMillis() {
+        return Play.application().configuration().getLong(ELASTICSEARCH_CACHE_TTL_KEY, 60L) * 1000L;
+    }
+}
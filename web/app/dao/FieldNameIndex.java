@@ -0,0 +1,378 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import play.Logger;
+import play.Play;
+
+/**
+ * In-memory index of the column names in `dict_field_detail`, for similar columns and the advanced search
+ * field list.
+ *
+ * Fields are posted under their lower cased name (MySQL compares the utf8_general_ci names case-insensitively),
+ * and every distinct name under its trigrams, so a substring lookup only checks the names sharing its rarest
+ * trigram. After the first load only rows modified since the last refresh are read; the index is reloaded
+ * from scratch when rows have been removed.
+ */
+public class FieldNameIndex extends AbstractMySQLOpenSourceDAO {
+
+    public static final String FIELD_NAME_INDEX_ENABLED_KEY = "dataset.field.index.in.memory";
+
+    public static final String FIELD_NAME_INDEX_REFRESH_INTERVAL_KEY = "dataset.field.index.refresh.interval";
+
+    private static final int GRAM_LENGTH = 3;
+
+    // MAX(modified) and the range below are read from idx_dict_field__modified
+    private final static String GET_FIELD_STATS = "SELECT COUNT(*) AS field_count, " +
+            "COALESCE(UNIX_TIMESTAMP(MAX(modified)), 0) AS max_stamp FROM dict_field_detail";
+
+    private final static String GET_FIELDS_CHANGED_SINCE = "SELECT field_id, dataset_id, field_name, data_type, " +
+            "UNIX_TIMESTAMP(modified) AS stamp FROM dict_field_detail WHERE modified >= FROM_UNIXTIME(?)";
+
+    private static volatile Index index = null;
+
+    private static volatile long lastCheckedMillis = 0L;
+
+    public static boolean isEnabled() {
+        return Play.application().configuration().getBoolean(FIELD_NAME_INDEX_ENABLED_KEY, true);
+    }
+
+    /**
+     * @return the field with this field_id, or null if there is none
+     */
+    public static Field getField(long fieldId) {
+        return current().field(fieldId);
+    }
+
+    /**
+     * @return the fields of every dataset with this name, compared case-insensitively, by field_id
+     */
+    public static List<Field> getFieldsNamed(String name) {
+        return current().fieldsNamed(name);
+    }
+
+    /**
+     * @param text part of the name to look for, null or blank for every name
+     * @param datasetIds only names of fields in these datasets, null for all datasets
+     * @return the distinct field names, sorted case-insensitively
+     */
+    public static List<String> getNamesContaining(String text, Collection<Long> datasetIds) {
+        return current().namesContaining(text, datasetIds);
+    }
+
+    static Index current() {
+        Index idx = index;
+        long now = System.currentTimeMillis();
+        if (idx == null || now - lastCheckedMillis > getRefreshIntervalMillis()) {
+            refresh();
+            idx = index;
+        }
+        return idx;
+    }
+
+    public static synchronized void refresh() {
+        long now = System.currentTimeMillis();
+        Index idx = index;
+        if (idx != null && now - lastCheckedMillis <= getRefreshIntervalMillis()) {
+            return;
+        }
+
+        try {
+            Map<String, Object> stats = getJdbcTemplate().queryForMap(GET_FIELD_STATS);
+            long count = ((Number) stats.get("field_count")).longValue();
+            long maxStamp = ((Number) stats.get("max_stamp")).longValue();
+
+            if (idx == null || count < idx.liveCount() || idx.deadCount() > idx.liveCount()) {
+                Index fresh = new Index();
+                load(fresh, 0L);
+                index = fresh;
+            } else if (maxStamp > idx.maxStamp || count > idx.liveCount()) {
+                load(idx, idx.maxStamp);
+            }
+            lastCheckedMillis = now;
+        } catch (DataAccessException e) {
+            Logger.error("FieldNameIndex refresh failed", e);
+            if (index == null) {
+                index = new Index();
+            }
+        }
+    }
+
+    private static void load(final Index idx, long sinceStamp) {
+        final int[] rows = new int[1];
+        getJdbcTemplate().query(GET_FIELDS_CHANGED_SINCE, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                idx.add(new Field(rs.getLong("field_id"), rs.getLong("dataset_id"), rs.getString("field_name"),
+                        rs.getString("data_type"), rs.getLong("stamp")));
+                rows[0]++;
+            }
+        }, sinceStamp);
+        Logger.debug("FieldNameIndex loaded " + rows[0] + " fields, " + idx.liveCount() + " indexed");
+    }
+
+    private static long getRefreshIntervalMillis() {
+        return Play.application().configuration().getLong(FIELD_NAME_INDEX_REFRESH_INTERVAL_KEY, 60L) * 1000L;
+    }
+
+    static String keyOf(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    public static class Field {
+        public final long fieldId;
+        public final long datasetId;
+        public final String name;
+        public final String dataType;
+        final long stamp;
+
+        Field(long fieldId, long datasetId, String name, String dataType, long stamp) {
+            this.fieldId = fieldId;
+            this.datasetId = datasetId;
+            this.name = name;
+            this.dataType = dataType;
+            this.stamp = stamp;
+        }
+    }
+
+    // a distinct lower cased field name and the ordinals of the fields with it
+    static class Name {
+        final String key;
+        // as first seen, like the row MySQL's DISTINCT keeps
+        final String name;
+        final IntList ordinals = new IntList();
+
+        Name(String key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Posting lists are append only: a modified field gets a new ordinal and its old one is marked dead,
+     * dead ordinals are dropped on the next full reload.
+     */
+    static class Index {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<Field> fields = new ArrayList<Field>();
+        private final List<Name> fieldNames = new ArrayList<Name>();
+        private final BitSet live = new BitSet();
+        private final Map<Long, Integer> ordinals = new HashMap<Long, Integer>();
+        private final Map<String, Integer> nameIds = new HashMap<String, Integer>();
+        private final Map<String, IntList> grams = new HashMap<String, IntList>();
+        private final Map<Long, IntList> datasetFields = new HashMap<Long, IntList>();
+        private volatile long maxStamp = 0L;
+
+        int liveCount() {
+            lock.readLock().lock();
+            try {
+                return ordinals.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int deadCount() {
+            lock.readLock().lock();
+            try {
+                return fields.size() - ordinals.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void add(Field field) {
+            if (field.name == null) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                Integer old = ordinals.get(field.fieldId);
+                if (old != null) {
+                    Field previous = fields.get(old);
+                    if (previous.stamp == field.stamp && previous.name.equals(field.name)) {
+                        // already indexed, seen again because a refresh starts at the last stamp
+                        return;
+                    }
+                    live.clear(old);
+                }
+                int ordinal = fields.size();
+                fields.add(field);
+                live.set(ordinal);
+                ordinals.put(field.fieldId, ordinal);
+                nameOf(field.name).ordinals.add(ordinal);
+                IntList ofDataset = datasetFields.get(field.datasetId);
+                if (ofDataset == null) {
+                    ofDataset = new IntList();
+                    datasetFields.put(field.datasetId, ofDataset);
+                }
+                ofDataset.add(ordinal);
+                maxStamp = Math.max(maxStamp, field.stamp);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private Name nameOf(String name) {
+            String key = keyOf(name);
+            Integer id = nameIds.get(key);
+            if (id != null) {
+                return fieldNames.get(id);
+            }
+            Name entry = new Name(key, name);
+            id = fieldNames.size();
+            fieldNames.add(entry);
+            nameIds.put(key, id);
+            for (String gram : gramsOf(key)) {
+                IntList list = grams.get(gram);
+                if (list == null) {
+                    list = new IntList();
+                    grams.put(gram, list);
+                }
+                list.add(id);
+            }
+            return entry;
+        }
+
+        Field field(long fieldId) {
+            lock.readLock().lock();
+            try {
+                Integer ordinal = ordinals.get(fieldId);
+                return ordinal == null ? null : fields.get(ordinal);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        List<Field> fieldsNamed(String name) {
+            List<Field> named = new ArrayList<Field>();
+            if (name == null) {
+                return named;
+            }
+            lock.readLock().lock();
+            try {
+                Integer id = nameIds.get(keyOf(name));
+                if (id != null) {
+                    IntList list = fieldNames.get(id).ordinals;
+                    for (int i = 0; i < list.size; i++) {
+                        if (live.get(list.values[i])) {
+                            named.add(fields.get(list.values[i]));
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            Collections.sort(named, new Comparator<Field>() {
+                @Override
+                public int compare(Field a, Field b) {
+                    return Long.compare(a.fieldId, b.fieldId);
+                }
+            });
+            return named;
+        }
+
+        List<String> namesContaining(String text, Collection<Long> datasetIds) {
+            String part = text == null ? "" : keyOf(text.trim());
+            List<String> found = new ArrayList<String>();
+            lock.readLock().lock();
+            try {
+                if (datasetIds != null) {
+                    Set<String> seen = new HashSet<String>();
+                    for (Long datasetId : datasetIds) {
+                        IntList list = datasetFields.get(datasetId);
+                        for (int i = 0; list != null && i < list.size; i++) {
+                            if (live.get(list.values[i])) {
+                                Name name = fieldNames.get(nameIds.get(keyOf(fields.get(list.values[i]).name)));
+                                if (name.key.contains(part) && seen.add(name.key)) {
+                                    found.add(name.name);
+                                }
+                            }
+                        }
+                    }
+                } else if (part.length() < GRAM_LENGTH) {
+                    for (Name name : fieldNames) {
+                        if (name.key.contains(part) && hasLiveField(name)) {
+                            found.add(name.name);
+                        }
+                    }
+                } else {
+                    IntList candidates = rarestGram(part);
+                    for (int i = 0; candidates != null && i < candidates.size; i++) {
+                        Name name = fieldNames.get(candidates.values[i]);
+                        if (name.key.contains(part) && hasLiveField(name)) {
+                            found.add(name.name);
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            Collections.sort(found, String.CASE_INSENSITIVE_ORDER);
+            return found;
+        }
+
+        // the name ids under the trigram of `part` with the fewest, null if one of them is under none
+        private IntList rarestGram(String part) {
+            IntList rarest = null;
+            for (String gram : gramsOf(part)) {
+                IntList list = grams.get(gram);
+                if (list == null) {
+                    return null;
+                }
+                if (rarest == null || list.size < rarest.size) {
+                    rarest = list;
+                }
+            }
+            return rarest;
+        }
+
+        private boolean hasLiveField(Name name) {
+            for (int i = 0; i < name.ordinals.size; i++) {
+                if (live.get(name.ordinals.values[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static Set<String> gramsOf(String key) {
+        Set<String> keyGrams = new HashSet<String>();
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            keyGrams.add(key.substring(i, i + GRAM_LENGTH));
+        }
+        return keyGrams;
+    }
+
+    static class IntList {
+        int[] values = new int[2];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.util.*;
+
+import play.Play;
+
+/**
+ * Downstream closures over the in-memory `family` graph of LineageGraphIndex, for impact analysis.
+ *
+ * The closure of a urn (every urn below it, with the level it is first reached at) is computed once with
+ * a breadth first walk of the child arrays and kept for the most recently used
+ * `lineage.impact.cache.size` urns. When the graph snapshot grows by new `family` rows, only the closures
+ * of the new edges' parents and their ancestors are dropped; a full reload of the graph drops them all.
+ */
+public class ImpactAnalysisIndex {
+
+    public static final String IMPACT_CACHE_SIZE_KEY = "lineage.impact.cache.size";
+
+    private static LineageGraphIndex.Graph graph = null;
+
+    private static final Map<Integer, Closure> closures = new LinkedHashMap<Integer, Closure>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Closure> eldest) {
+            return size() > getCacheSize();
+        }
+    };
+
+    /**
+     * @return every urn reachable from `urn` through child edges, by the fewest edges it takes to reach it,
+     *   in breadth first order; `urn` itself is at level 0
+     */
+    public static Map<String, Integer> getDownstream(String urn) {
+        LineageGraphIndex.Graph g = LineageGraphIndex.current();
+        int id = g.idOf(urn);
+        Map<String, Integer> levels = new LinkedHashMap<String, Integer>();
+        if (id < 0) {
+            levels.put(urn, 0);
+            return levels;
+        }
+
+        Closure closure = closureOf(g, id);
+        for (int i = 0; i < closure.ids.length; i++) {
+            levels.put(g.urnOf(closure.ids[i]), closure.levels[i]);
+        }
+        return levels;
+    }
+
+    // the walk runs outside the lock, so a large closure doesn't hold up requests for other urns
+    private static Closure closureOf(LineageGraphIndex.Graph g, int id) {
+        Closure closure = cached(g, id);
+        if (closure == null) {
+            closure = publish(g, id, downstream(g, id));
+        }
+        return closure;
+    }
+
+    // null for a snapshot older than the one cached for, whose closure is walked but not kept
+    private static synchronized Closure cached(LineageGraphIndex.Graph g, int id) {
+        if (graph != g) {
+            if (graph != null && g.isOlderThan(graph)) {
+                return null;
+            }
+            if (graph != null && g.extendsGraph(graph)) {
+                invalidate(g, graph.edgeCount());
+            } else {
+                closures.clear();
+            }
+            graph = g;
+        }
+        return closures.get(id);
+    }
+
+    // keeps the closure another request published first; one of a replaced snapshot isn't kept at all
+    private static synchronized Closure publish(LineageGraphIndex.Graph g, int id, Closure closure) {
+        if (graph != g) {
+            return closure;
+        }
+        Closure published = closures.putIfAbsent(id, closure);
+        return published == null ? closure : published;
+    }
+
+    // drops the closures the edges from `firstNewEdge` on can change: those of their parents' ancestors
+    private static void invalidate(LineageGraphIndex.Graph g, int firstNewEdge) {
+        if (closures.isEmpty()) {
+            return;
+        }
+        BitSet affected = new BitSet(g.urnCount());
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        for (int edge = firstNewEdge; edge < g.edgeCount(); edge++) {
+            int parent = g.parentIdOfEdge(edge);
+            if (!affected.get(parent)) {
+                affected.set(parent);
+                queue.add(parent);
+            }
+        }
+        while (!queue.isEmpty()) {
+            for (int ancestor : g.parentIdsOf(queue.poll())) {
+                if (!affected.get(ancestor)) {
+                    affected.set(ancestor);
+                    queue.add(ancestor);
+                }
+            }
+        }
+        Iterator<Integer> cached = closures.keySet().iterator();
+        while (cached.hasNext()) {
+            if (affected.get(cached.next())) {
+                cached.remove();
+            }
+        }
+    }
+
+    static Closure downstream(LineageGraphIndex.Graph g, int root) {
+        int[] ids = new int[16];
+        int[] levels = new int[16];
+        BitSet seen = new BitSet(g.urnCount());
+        ids[0] = root;
+        levels[0] = 0;
+        seen.set(root);
+        int size = 1;
+        // ids[head..size) is the queue, already in breadth first order
+        for (int head = 0; head < size; head++) {
+            for (int child : g.childIdsOf(ids[head])) {
+                if (!seen.get(child)) {
+                    seen.set(child);
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size * 2);
+                        levels = Arrays.copyOf(levels, size * 2);
+                    }
+                    ids[size] = child;
+                    levels[size] = levels[head] + 1;
+                    size++;
+                }
+            }
+        }
+        return new Closure(Arrays.copyOf(ids, size), Arrays.copyOf(levels, size));
+    }
+
+    private static int getCacheSize() {
+        return Play.application().configuration().getInt(IMPACT_CACHE_SIZE_KEY, 1000);
+    }
+
+    static final class Closure {
+        final int[] ids;
+        final int[] levels;
+
+        Closure(int[] ids, int[] levels) {
+            this.ids = ids;
+            this.levels = levels;
+        }
+    }
+}
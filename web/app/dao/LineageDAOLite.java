@@ -13,11 +13,13 @@
  */
 package dao;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.lang.Math.*;
 import java.util.*;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.*;
@@ -25,31 +27,81 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.dao.DataAccessException;
-import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import play.Logger;
 import play.Play;
 import play.libs.Json;
+import utils.JsonChunks;
 import utils.Lineage;
 import utils.Property;
 
 public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
 
+    private static final String LINEAGE_TRAVERSAL_KEY = "lineage.traversal";
+
+    private static final int IN_CLAUSE_BATCH_SIZE = 1000;
+
     private final static String GET_PARENTS = "SELECT parent_urn FROM family WHERE child_urn = ?";
 
     private final static String GET_CHILDREN = "SELECT child_urn FROM family WHERE parent_urn = ?";
 
+    private final static String GET_PARENTS_OF_URNS = "SELECT parent_urn, child_urn FROM family WHERE child_urn IN (:urns) ORDER BY id";
+
+    private final static String GET_CHILDREN_OF_URNS = "SELECT parent_urn, child_urn FROM family WHERE parent_urn IN (:urns) ORDER BY id";
+
     private final static String GET_DATA_ATTR = "SELECT * FROM dict_dataset WHERE urn = :urn";
 
+    private final static String GET_DATA_ATTRS = "SELECT * FROM dict_dataset WHERE urn IN (:urns)";
+
     private final static String GET_APP_ATTR = "SELECT * FROM cfg_application WHERE app_id = :urn";
 
     private final static String GET_DB_ATTR = "SELECT * FROM cfg_database WHERE uri = :urn";
 
     private final static String GET_PROPERTY = "SELECT property_value FROM wh_property WHERE property_name = ?";
 
+    /**
+     * The nodes and links of a lineage graph, serialized as the `data` of the lineage endpoint.
+     */
+    public static class AdjacentGraph {
+        public final String urn;
+        public final List<LineageNodeLite> nodes;
+        public final List<LineageEdgeLite> edges;
+
+        AdjacentGraph(String urn, List<LineageNodeLite> nodes, List<LineageEdgeLite> edges) {
+            this.urn = urn;
+            this.nodes = nodes;
+            this.edges = edges;
+        }
+
+        /**
+         * Writes the graph object one node and edge at a time, without building a JsonNode tree of it.
+         */
+        public void writeTo(JsonGenerator gen) throws IOException {
+            gen.writeStartObject();
+            JsonChunks.writeArrayField(gen, "nodes", nodes);
+            JsonChunks.writeArrayField(gen, "links", edges);
+            gen.writeStringField("urn", urn);
+            gen.writeStringField("diet", "true");
+            gen.writeStringField("message", "Gee, I hope this works");
+            gen.writeEndObject();
+        }
+
+        public JsonNode toJson() {
+            ObjectNode resultNode = Json.newObject();
+            resultNode.set("nodes", Json.toJson(nodes));
+            resultNode.set("links", Json.toJson(edges));
+            resultNode.put("urn", urn);
+            resultNode.put("diet", "true");
+            resultNode.put("message", "Gee, I hope this works");
+            return resultNode;
+        }
+    }
+
     public static JsonNode getObjectAdjacnet(String urn, int upLevel, int downLevel, int lookBackTime) {
+        return getAdjacentGraph(urn, upLevel, downLevel, lookBackTime).toJson();
+    }
+
+    public static AdjacentGraph getAdjacentGraph(String urn, int upLevel, int downLevel, int lookBackTime) {
         // lineage is stored in an ajacency table with columns: id | parent_urn | child_urn
         // ignores look back time
 
@@ -59,9 +111,6 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
         List<LineageNodeLite> nodes = new ArrayList<LineageNodeLite>();
         List<LineageEdgeLite> edges = new ArrayList<LineageEdgeLite>();
 
-        // create jsonNode
-        ObjectNode resultNode = Json.newObject();
-
         // create a single node and add it to list of nodes
         // dislike that this code is repeated in the function...
         LineageNodeLite node = new LineageNodeLite();
@@ -104,17 +153,15 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
         nodes.add(node);
 
         // add all ancestors of origin to nodes & edges
-        getRelativeGraph(nodes, edges, upLevel, 1, node);
-        getRelativeGraph(nodes, edges, downLevel, -1, node);
-
-        // now stick nodes and edges into the JsonNode
-        resultNode.set("nodes", Json.toJson(nodes));
-        resultNode.set("links", Json.toJson(edges));
-        resultNode.put("urn", urn);
-        resultNode.put("diet", "true");
-        resultNode.put("message", "Gee, I hope this works");
-        //Logger.debug(resultNode.toString());
-        return resultNode;
+        if ("dfs".equalsIgnoreCase(Play.application().configuration().getString(LINEAGE_TRAVERSAL_KEY, "bfs"))) {
+            getRelativeGraph(nodes, edges, upLevel, 1, node);
+            getRelativeGraph(nodes, edges, downLevel, -1, node);
+        } else {
+            getRelativeGraphByLevel(nodes, edges, upLevel, 1, node);
+            getRelativeGraphByLevel(nodes, edges, downLevel, -1, node);
+        }
+
+        return new AdjacentGraph(urn, nodes, edges);
     }
 
     private static String getPrefix(String urn) {
@@ -256,6 +303,134 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
         // we have reached maximum requested depth, let's peace out
     }
 
+    // breadth-first version of getRelativeGraph, each level costs one family query and one dict_dataset query
+    // instead of several queries per node. Nodes are expanded while their level is within maxDepth, same as above.
+    private static void getRelativeGraphByLevel(List<LineageNodeLite> nodes, List<LineageEdgeLite> edges, int maxDepth, int direction, LineageNodeLite origin) {
+        Map<String, LineageNodeLite> nodesByUrn = new HashMap<String, LineageNodeLite>();
+        for (LineageNodeLite n : nodes) {
+            nodesByUrn.put(n.urn, n);
+        }
+
+        List<LineageNodeLite> frontier = new ArrayList<LineageNodeLite>();
+        frontier.add(origin);
+        while (frontier.size() > 0 && Math.abs(frontier.get(0).level) <= Math.abs(maxDepth)) {
+            List<String> frontierUrns = new ArrayList<String>();
+            for (LineageNodeLite n : frontier) {
+                frontierUrns.add(n.urn);
+            }
+            Map<String, List<String>> relativesByUrn = getRelatives(frontierUrns, direction);
+
+            // urns seen for the first time on this level, in discovery order
+            Set<String> newUrns = new LinkedHashSet<String>();
+            for (String urn : frontierUrns) {
+                for (String relative : relativesByUrn.get(urn)) {
+                    if (!nodesByUrn.containsKey(relative)) {
+                        newUrns.add(relative);
+                    }
+                }
+            }
+
+            int level = frontier.get(0).level + direction;
+            List<LineageNodeLite> nextFrontier = new ArrayList<LineageNodeLite>();
+            Map<String, List<Map<String, Object>>> rowsByUrn = getDataAttrs(newUrns);
+            for (String relative : newUrns) {
+                LineageNodeLite node = new LineageNodeLite();
+                node.id = nodes.size();
+                node.level = level;
+                node.urn = relative;
+                node._sort_list = new ArrayList<String>();
+                assignNode(node, rowsByUrn.get(relative));
+                nodes.add(node);
+                nodesByUrn.put(relative, node);
+                nextFrontier.add(node);
+            }
+
+            for (LineageNodeLite currNode : frontier) {
+                for (String relative : relativesByUrn.get(currNode.urn)) {
+                    LineageNodeLite node = nodesByUrn.get(relative);
+                    LineageEdgeLite edge = new LineageEdgeLite();
+                    edge.id = edges.size();
+                    if (direction > 0) {
+                        edge.target = currNode.id;
+                        edge.source = node.id;
+                        setEdgeAttr(edge, node, currNode);
+                    } else {
+                        edge.target = node.id;
+                        edge.source = currNode.id;
+                        setEdgeAttr(edge, currNode, node);
+                    }
+                    edges.add(edge);
+                }
+            }
+            frontier = nextFrontier;
+        }
+    }
+
+    // same node provisioning as getRelativeGraph, but from dict_dataset rows that were already fetched
+    private static void assignNode(LineageNodeLite node, List<Map<String, Object>> rows) {
+        switch (getNodeType(node.urn).toLowerCase()) {
+            case "app":
+                node.node_type = "app";
+                assignGeneral(node, rows);
+                if (assignPrefs(node, rows) == false) {
+                    assignApp(node, rows);
+                    Logger.debug("using default app assigner for " + node.urn);
+                }
+                break;
+            case "data":
+                node.node_type = "data";
+                assignGeneral(node, rows);
+                if (assignPrefs(node, rows) == false) {
+                    assignData(node, rows);
+                    Logger.debug("using default data assigner for " + node.urn);
+                }
+                node.abstracted_path = getPostfix(node.urn);
+                break;
+            case "db":
+                node.node_type = "db";
+                assignGeneral(node, rows);
+                if (assignPrefs(node, rows) == false) {
+                    assignDB(node, rows);
+                    Logger.debug("using default db assigner for " + node.urn);
+                }
+                break;
+            default:
+                node.node_type = "general";
+                assignGeneral(node, rows);
+                assignPrefs(node, rows);
+                Logger.error("parsing failed for relative URN: " + node.urn);
+        }
+    }
+
+    // relatives of every urn in the list, keyed by urn, in family id order
+    private static Map<String, List<String>> getRelatives(List<String> urns, int direction) {
+        Map<String, List<String>> relativesByUrn = new HashMap<String, List<String>>();
+        if (LineageGraphIndex.isEnabled()) {
+            for (String urn : urns) {
+                relativesByUrn.put(urn, getRelatives(urn, direction));
+            }
+            return relativesByUrn;
+        }
+
+        for (String urn : urns) {
+            relativesByUrn.put(urn, new ArrayList<String>());
+        }
+        String sql = direction > 0 ? GET_PARENTS_OF_URNS : GET_CHILDREN_OF_URNS;
+        String fromColumn = direction > 0 ? "child_urn" : "parent_urn";
+        String toColumn = direction > 0 ? "parent_urn" : "child_urn";
+        for (List<String> batch : partition(new LinkedHashSet<String>(urns))) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("urns", batch);
+            for (Map<String, Object> row : getNamedParameterJdbcTemplate().queryForList(sql, parameters)) {
+                List<String> relatives = relativesByUrn.get((String) row.get(fromColumn));
+                if (relatives != null) {
+                    relatives.add((String) row.get(toColumn));
+                }
+            }
+        }
+        return relativesByUrn;
+    }
+
     private static List<String> getRelatives(String urn, int direction) {
         if (direction > 0) {
             return getParents(urn);
@@ -268,6 +443,9 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
     }
 
     private static List<String> getParents(String urn) {
+        if (LineageGraphIndex.isEnabled()) {
+            return LineageGraphIndex.getParents(urn);
+        }
         List<String> parents = getJdbcTemplate().queryForList(GET_PARENTS, String.class, urn);
         if (parents == null || parents.size() == 0) {
             //Logger.error("couldn't find any parents for URN: " + urn);
@@ -276,6 +454,9 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
     }
 
     private static List<String> getChildren(String urn) {
+        if (LineageGraphIndex.isEnabled()) {
+            return LineageGraphIndex.getChildren(urn);
+        }
         List<String> children = getJdbcTemplate().queryForList(GET_CHILDREN, String.class, urn);
         if (children == null || children.size() == 0) {
             //Logger.error("couldn't find any children for URN: " + urn);
@@ -369,14 +550,52 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
     }
 
 
-    private static void assignApp(LineageNodeLite node) {
-        List<Map<String, Object>> rows = null;
+    private static List<Map<String, Object>> getDataAttr(String urn) {
         MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("urn", node.urn);
-        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(getJdbcTemplate().getDataSource());
+        parameters.addValue("urn", urn);
+        return getNamedParameterJdbcTemplate().queryForList(GET_DATA_ATTR, parameters);
+    }
 
-        rows = namedParameterJdbcTemplate.queryForList(GET_DATA_ATTR, parameters);
+    // fetches the dict_dataset rows of all given urns, IN_CLAUSE_BATCH_SIZE urns per query
+    private static Map<String, List<Map<String, Object>>> getDataAttrs(Collection<String> urns) {
+        Map<String, List<Map<String, Object>>> rowsByUrn = new HashMap<String, List<Map<String, Object>>>();
+        for (String urn : urns) {
+            rowsByUrn.put(urn, new ArrayList<Map<String, Object>>());
+        }
+        for (List<String> batch : partition(urns)) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("urns", batch);
+            for (Map<String, Object> row : getNamedParameterJdbcTemplate().queryForList(GET_DATA_ATTRS, parameters)) {
+                List<Map<String, Object>> rows = rowsByUrn.get((String) row.get("urn"));
+                if (rows != null) {
+                    rows.add(row);
+                }
+            }
+        }
+        return rowsByUrn;
+    }
+
+    private static List<List<String>> partition(Collection<String> urns) {
+        List<List<String>> batches = new ArrayList<List<String>>();
+        List<String> batch = new ArrayList<String>();
+        for (String urn : urns) {
+            batch.add(urn);
+            if (batch.size() == IN_CLAUSE_BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<String>();
+            }
+        }
+        if (batch.size() > 0) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private static void assignApp(LineageNodeLite node) {
+        assignApp(node, getDataAttr(node.urn));
+    }
 
+    private static void assignApp(LineageNodeLite node, List<Map<String, Object>> rows) {
         for (Map<String, Object> row : rows) {
             // node only knows id, level, and urn, assign all other attributes
 
@@ -397,13 +616,10 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
     }
 
     private static void assignData(LineageNodeLite node) {
-        List<Map<String, Object>> rows = null;
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("urn", node.urn);
-        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(getJdbcTemplate().getDataSource());
-
-        rows = namedParameterJdbcTemplate.queryForList(GET_DATA_ATTR, parameters);
+        assignData(node, getDataAttr(node.urn));
+    }
 
+    private static void assignData(LineageNodeLite node, List<Map<String, Object>> rows) {
         for (Map<String, Object> row : rows) {
             // node only knows id, level, and urn, assign all other attributes
             JsonNode prop = Json.parse((String) row.get("properties"));
@@ -424,14 +640,11 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
     }
 
     private static void assignDB(LineageNodeLite node) {
-        List<Map<String, Object>> rows = null;
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("urn", node.urn);
-        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(getJdbcTemplate().getDataSource());
-
-        rows = namedParameterJdbcTemplate.queryForList(GET_DATA_ATTR, parameters);
-        // node only knows id, level, and urn, assign all other attributes
+        assignDB(node, getDataAttr(node.urn));
+    }
 
+    // node only knows id, level, and urn, assign all other attributes
+    private static void assignDB(LineageNodeLite node, List<Map<String, Object>> rows) {
         for (Map<String, Object> row : rows) {
             JsonNode prop = Json.parse((String) row.get("properties"));
             node.description = (prop.has("description")) ? prop.get("description").asText() : "null";
@@ -448,13 +661,10 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
     }
 
     private static void assignGeneral(LineageNodeLite node) {
-        List<Map<String, Object>> rows = null;
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("urn", node.urn);
-        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(getJdbcTemplate().getDataSource());
-
-        rows = namedParameterJdbcTemplate.queryForList(GET_DATA_ATTR, parameters);
+        assignGeneral(node, getDataAttr(node.urn));
+    }
 
+    private static void assignGeneral(LineageNodeLite node, List<Map<String, Object>> rows) {
 
         for (Map<String, Object> row : rows) {
             node.name = (String) row.get("name");
@@ -470,6 +680,11 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
     }
 
     private static Boolean assignPrefs(LineageNodeLite node) {
+        return assignPrefs(node, null);
+    }
+
+    // rows may be null, in which case they are only fetched if the node has a property list configured
+    private static Boolean assignPrefs(LineageNodeLite node, List<Map<String, Object>> rows) {
         // first try to get property list
         String properties = getProp("prop." + getPrefix(node.urn));
         if (properties == "default") {
@@ -484,12 +699,9 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
         //Logger.debug("propList: " + propList);
 
         // now get all the values that dict_dataset has
-        List<Map<String, Object>> rows = null;
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("urn", node.urn);
-        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(getJdbcTemplate().getDataSource());
-
-        rows = namedParameterJdbcTemplate.queryForList(GET_DATA_ATTR, parameters);
+        if (rows == null) {
+            rows = getDataAttr(node.urn);
+        }
 
         for (Map<String, Object> row : rows) {
             JsonNode prop = Json.parse((String) row.get("properties"));
@@ -528,31 +740,16 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
     }
 
     // assigns attributes to ImpactDataset instance
-    private static ImpactDataset assignImpactDataset(String idurn) {
-        int level = Integer.parseInt(idurn.substring(0, idurn.indexOf("****")));
-        String urn = idurn.substring(idurn.indexOf("****") + 4);
+    private static ImpactDataset assignImpactDataset(String urn, int level, Map<String, Object> row) {
         ImpactDataset impD = new ImpactDataset();
-
-        Map<String, Object> row = null;
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("urn", urn);
-        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(getJdbcTemplate().getDataSource());
-
-        try {
-            row = namedParameterJdbcTemplate.queryForMap(GET_DATA_ATTR, parameters);
-        } catch (IncorrectResultSizeDataAccessException irsdae) {
-            Logger.error("Incorrect result size ", irsdae);
-        } catch (DataAccessException dae) {
-            Logger.error("SQL query failed ", dae);
-        }
-
         impD.urn = urn;
         impD.level = level;
         impD.name = (String) row.get("name");
-        impD.id = (Long) row.get("id");
+        impD.id = ((Number) row.get("id")).longValue();
         impD.datasetUrl = "#/datasets/" + impD.id;
-        JsonNode prop = Json.parse((String) row.get("properties"));
-        if (prop.has("valid") && (prop.get("valid").asText()) == "true") {
+        String properties = (String) row.get("properties");
+        JsonNode prop = properties == null ? null : Json.parse(properties);
+        if (prop != null && prop.has("valid") && "true".equals(prop.get("valid").asText())) {
             impD.isValidDataset = true;
         } else {
             impD.isValidDataset = false;
@@ -565,96 +762,64 @@ public class LineageDAOLite extends AbstractMySQLOpenSourceDAO {
         return resultNode;
     }
 
-    // more or less gets all children which are datasets
-    private static void getImpactDatasets(List<String> searchUrnList, List<ImpactDataset> impactDatasets) {
-        if (searchUrnList != null && searchUrnList.size() > 0) {
-            if (impactDatasets == null) {
-                impactDatasets = new ArrayList<>();
-            }
-
-            boolean used = false;
-            int level = 0;
-            List<String> impactedUrns = new ArrayList<>();
-            List<String> nextSearchUrnList = new ArrayList<>();
-            List<String> nextSearchUrnListPreview = new ArrayList<>();
-
-            while (searchUrnList.size() > 0) {
-                for (String surn : searchUrnList) {
-
-
-                    // there has got to be  better way to avoid dupes, right?
-                    nextSearchUrnListPreview = new ArrayList<>(getChildren(surn));
-                    for (int i = 0; i < nextSearchUrnListPreview.size(); i++) {
-                        used = false;
-                        for (int j = i + 1; j < nextSearchUrnListPreview.size(); j++) {
-                            if (nextSearchUrnListPreview.get(i).equals(nextSearchUrnListPreview.get(j))) {
-                                used = true;
-                                break;
-                            }
-                        }
-                        if (!used) {
-                            nextSearchUrnList.add(nextSearchUrnListPreview.get(i));
-                        }
-                    }
-                    
-
-                    //Logger.info(surn + " is marked as " + getNodeType(surn));
-                    if (getNodeType(surn).equals("data")) {
-                        //Logger.debug(surn + " is marked as data");
-                        // if the urn is already in the list ofimpacted datasets, then we don't want to add it to impactedUrns
-                        used = false;
-                        for (String imp : impactedUrns) {
-                            if (imp.substring(imp.indexOf("****") + 4).equals(surn)) {
-                                used = true;
-                                break;
-                            }
-                        }
-                        if (!used) {
-                            impactedUrns.add(level + "****" + surn); // the astricks are used to seperate the encoded level for easier decoding
-                        }
+    // every urn below `urn`, by the level it is first reached at, nearest first; `urn` itself is at level 0
+    private static Map<String, Integer> getDownstream(String urn) {
+        if (LineageGraphIndex.isEnabled()) {
+            return ImpactAnalysisIndex.getDownstream(urn);
+        }
+        Map<String, Integer> levels = new LinkedHashMap<String, Integer>();
+        levels.put(urn, 0);
+        List<String> searchUrnList = Collections.singletonList(urn);
+        for (int level = 1; searchUrnList.size() > 0; level++) {
+            List<String> nextSearchUrnList = new ArrayList<String>();
+            Map<String, List<String>> childrenByUrn = getRelatives(searchUrnList, -1);
+            for (String surn : searchUrnList) {
+                for (String child : childrenByUrn.get(surn)) {
+                    if (!levels.containsKey(child)) {
+                        levels.put(child, level);
+                        nextSearchUrnList.add(child);
                     }
                 }
-
-
-                searchUrnList = new ArrayList<>(nextSearchUrnList);
-                nextSearchUrnList = new ArrayList<>();
-                level++;
-            }
-
-
-            for (String idurn: impactedUrns) {
-                impactDatasets.add(assignImpactDataset(idurn));
             }
-
-
-            Collections.sort(impactDatasets, new Comparator<ImpactDataset>() {
-                public int compare(ImpactDataset imp1, ImpactDataset imp2) {
-                    if (imp1.level < imp2.level) return -1;
-                    if (imp1.level > imp2.level) return 1;
-                    int order = imp1.name.compareTo(imp2.name);
-                    if (order < 0) return -1;
-                    if (order > 0) return 1;
-                    return 0;
-                }
-            });
-
-
+            searchUrnList = nextSearchUrnList;
         }
+        return levels;
     }
 
-    // essentially a wrapper for getImpactDatasets
+    // every dataset downstream of `urn`, nearest first, without `urn` itself
     public static List<ImpactDataset> getImpactDatasetsByUrn(String urn) {
         List<ImpactDataset> impactDatasetList = new ArrayList<ImpactDataset>();
+        if (StringUtils.isBlank(urn)) {
+            return impactDatasetList;
+        }
 
-        if (urn != null && StringUtils.isNotBlank(urn))
-        {
-            List<String> searchUrnList = new ArrayList<String>();
-            searchUrnList.add(urn);
-            getImpactDatasets(searchUrnList, impactDatasetList);
+        Map<String, Integer> impactedUrns = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<String, Integer> entry : getDownstream(urn).entrySet()) {
+            if (entry.getValue() > 0 && getNodeType(entry.getKey()).equals("data")) {
+                impactedUrns.put(entry.getKey(), entry.getValue());
+            }
         }
 
-        impactDatasetList.remove(0);
-        return impactDatasetList;
+        Map<String, List<Map<String, Object>>> rowsByUrn = getDataAttrs(impactedUrns.keySet());
+        for (Map.Entry<String, Integer> entry : impactedUrns.entrySet()) {
+            List<Map<String, Object>> rows = rowsByUrn.get(entry.getKey());
+            if (rows.isEmpty()) {
+                Logger.debug("impacted urn " + entry.getKey() + " is not in dict_dataset");
+                continue;
+            }
+            impactDatasetList.add(assignImpactDataset(entry.getKey(), entry.getValue(), rows.get(0)));
+        }
 
+        Collections.sort(impactDatasetList, new Comparator<ImpactDataset>() {
+            public int compare(ImpactDataset imp1, ImpactDataset imp2) {
+                if (imp1.level < imp2.level) return -1;
+                if (imp1.level > imp2.level) return 1;
+                int order = imp1.name.compareTo(imp2.name);
+                if (order < 0) return -1;
+                if (order > 0) return 1;
+                return 0;
+            }
+        });
+        return impactDatasetList;
     }
 }
@@ -0,0 +1,435 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import models.LineageNodeLite;
+import org.springframework.dao.DataAccessException;
+import play.Logger;
+import play.Play;
+import play.libs.Json;
+import utils.Property;
+
+/**
+ * Serialized lineage graphs of the lineage page, by (urn, upLevel, downLevel).
+ *
+ * Each cached graph remembers the urns, schemes and node types it shows. At most once per
+ * `lineage.cache.check.interval` seconds the cache looks for what changed since the last check:
+ * new `family` rows (from the LineageGraphIndex snapshot, or the table when that is disabled),
+ * `dict_dataset` rows written since the last change stamp, and `wh_property` values.
+ * Only the graphs showing a changed urn, or a node a changed property applies to, are dropped.
+ * One request at a time runs the check, outside the cache lock, and the others carry on with the cache as it is.
+ */
+public class LineageGraphCache extends AbstractMySQLOpenSourceDAO {
+
+    public static final String LINEAGE_CACHE_ENABLED_KEY = "lineage.cache.enabled";
+
+    public static final String LINEAGE_CACHE_SIZE_KEY = "lineage.cache.size";
+
+    public static final String LINEAGE_CACHE_CHECK_INTERVAL_KEY = "lineage.cache.check.interval";
+
+    public static final String LINEAGE_CACHE_DATASET_CHECK_INTERVAL_KEY = "lineage.cache.dataset.check.interval";
+
+    private final static String GET_FAMILY_STATS = "SELECT COALESCE(MAX(id), 0) AS max_id, COUNT(*) AS edge_count FROM family";
+
+    private final static String GET_FAMILY_AFTER_ID = "SELECT id, parent_urn, child_urn FROM family WHERE id > ?";
+
+    private final static String DATASET_CHANGE_STAMP = "GREATEST(COALESCE(created_time, 0), COALESCE(modified_time, 0))";
+
+    // each column on its own, so MAX() and the range are read from idx_dataset_created and idx_dataset_modified
+    private final static String GET_MAX_DATASET_STAMP = "SELECT GREATEST(COALESCE(MAX(created_time), 0), " +
+            "COALESCE(MAX(modified_time), 0)) FROM dict_dataset";
+
+    // >= since the stamps are in seconds, rows written later in the same second would be missed otherwise;
+    // the rows already seen at the last stamp are skipped by id
+    private final static String GET_DATASETS_CHANGED_SINCE = "SELECT id, urn, " + DATASET_CHANGE_STAMP + " AS stamp " +
+            "FROM dict_dataset WHERE created_time >= ? OR modified_time >= ?";
+
+    // the node types a wh_property name may end with, instead of a urn scheme
+    private static final Set<String> NODE_TYPES = new HashSet<String>(Arrays.asList("app", "data", "db", "general"));
+
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private static final Map<String, Set<String>> keysByUrn = new HashMap<String, Set<String>>();
+
+    private static final AtomicLong hits = new AtomicLong();
+
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static final AtomicLong invalidations = new AtomicLong();
+
+    private static final AtomicLong evictions = new AtomicLong();
+
+    // bumped on every invalidation, so a graph built across one isn't cached
+    private static long version = 0L;
+
+    // held while looking for changes, the watermarks below are only used under it
+    private static final ReentrantLock checkLock = new ReentrantLock();
+
+    private static volatile boolean watching = false;
+
+    private static volatile long lastCheckedMillis = 0L;
+
+    private static long lastDatasetCheckMillis = 0L;
+
+    private static LineageGraphIndex.Graph lastGraph = null;
+
+    private static long maxFamilyId = 0L;
+
+    private static long familyCount = 0L;
+
+    private static long datasetStamp = 0L;
+
+    // ids of the dict_dataset rows already seen at datasetStamp
+    private static Set<Long> datasetIdsAtStamp = new HashSet<Long>();
+
+    private static Map<String, String> lastProperties = null;
+
+    static final class Entry {
+        final String json;
+        final Set<String> urns;
+        // urn schemes and node types of the nodes, what the wh_property names end with
+        final Set<String> kinds;
+
+        Entry(String json, Set<String> urns, Set<String> kinds) {
+            this.json = json;
+            this.urns = urns;
+            this.kinds = kinds;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return Play.application().configuration().getBoolean(LINEAGE_CACHE_ENABLED_KEY, true);
+    }
+
+    /**
+     * The LineageDAOLite.getObjectAdjacnet graph of `urn`, serialized.
+     */
+    public static String getGraphJson(String urn, int upLevel, int downLevel, int lookBackTime) {
+        checkForChanges();
+
+        // getObjectAdjacnet ignores the look back time, so it isn't part of the key
+        String key = urn + '\n' + upLevel + '\n' + downLevel;
+        long builtAt;
+        synchronized (LineageGraphCache.class) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.json;
+            }
+            builtAt = version;
+        }
+        misses.incrementAndGet();
+
+        LineageDAOLite.AdjacentGraph graph = LineageDAOLite.getAdjacentGraph(urn, upLevel, downLevel, lookBackTime);
+        Set<String> urns = new HashSet<String>();
+        Set<String> kinds = new HashSet<String>();
+        for (LineageNodeLite node : graph.nodes) {
+            if (node.urn != null) {
+                urns.add(node.urn);
+                if (node.urn.contains("://")) {
+                    kinds.add(Property.getPrefix(node.urn));
+                }
+            }
+            if (node.node_type != null) {
+                kinds.add(node.node_type.toLowerCase());
+            }
+        }
+        Entry entry = new Entry(serialize(graph), urns, kinds);
+
+        synchronized (LineageGraphCache.class) {
+            if (builtAt == version) {
+                put(key, entry);
+            }
+        }
+        return entry.json;
+    }
+
+    // straight from the node and edge objects, without a JsonNode tree in between
+    static String serialize(LineageDAOLite.AdjacentGraph graph) {
+        StringWriter json = new StringWriter();
+        try {
+            JsonGenerator gen = Json.mapper().getFactory().createGenerator(json);
+            gen.setCodec(Json.mapper());
+            graph.writeTo(gen);
+            gen.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
+    }
+
+    public static synchronized ObjectNode getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        ObjectNode stats = Json.newObject();
+        stats.put("enabled", isEnabled());
+        stats.put("size", entries.size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("invalidations", invalidations.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private static void put(String key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        for (String urn : entry.urns) {
+            Set<String> keys = keysByUrn.get(urn);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                keysByUrn.put(urn, keys);
+            }
+            keys.add(key);
+        }
+        int maxSize = getCacheSize();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            unlink(evicted.getKey(), evicted.getValue());
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static boolean remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        unlink(key, entry);
+        return true;
+    }
+
+    private static void unlink(String key, Entry entry) {
+        for (String urn : entry.urns) {
+            Set<String> keys = keysByUrn.get(urn);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByUrn.remove(urn);
+            }
+        }
+    }
+
+    private static void invalidateUrns(Collection<String> urns) {
+        for (String urn : urns) {
+            Set<String> keys = keysByUrn.get(urn);
+            if (keys != null) {
+                for (String key : new ArrayList<String>(keys)) {
+                    if (remove(key)) {
+                        invalidations.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void invalidateKinds(Collection<String> kinds) {
+        List<String> stale = new ArrayList<String>();
+        for (Map.Entry<String, Entry> cached : entries.entrySet()) {
+            if (!Collections.disjoint(cached.getValue().kinds, kinds)) {
+                stale.add(cached.getKey());
+            }
+        }
+        for (String key : stale) {
+            if (remove(key)) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    private static void invalidateAll() {
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+        keysByUrn.clear();
+    }
+
+    /**
+     * Drops the graphs that changes since the last check may have altered. The changes are collected
+     * without the cache lock, which is only taken to drop the graphs.
+     */
+    private static void checkForChanges() {
+        if (watching && System.currentTimeMillis() - lastCheckedMillis <= getCheckIntervalMillis()) {
+            return;
+        }
+        if (!checkLock.tryLock()) {
+            // another request is checking
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (watching && now - lastCheckedMillis <= getCheckIntervalMillis()) {
+                return;
+            }
+            lastCheckedMillis = now;
+
+            Set<String> changedUrns = new HashSet<String>();
+            boolean lineageReloaded;
+            Set<String> changedKinds;
+            try {
+                lineageReloaded = collectLineageChanges(changedUrns);
+                if (!watching || now - lastDatasetCheckMillis > getDatasetCheckIntervalMillis()) {
+                    collectDatasetChanges(changedUrns);
+                    lastDatasetCheckMillis = now;
+                }
+                changedKinds = collectPropertyChanges();
+            } catch (DataAccessException e) {
+                // can't tell what changed, so nothing cached can be trusted
+                Logger.error("LineageGraphCache change check failed", e);
+                watching = false;
+                synchronized (LineageGraphCache.class) {
+                    invalidateAll();
+                    version++;
+                }
+                return;
+            }
+            if (!watching) {
+                // the watermarks were only just set, graphs built before them can't be checked
+                watching = true;
+                synchronized (LineageGraphCache.class) {
+                    invalidateAll();
+                    version++;
+                }
+                return;
+            }
+            if (!lineageReloaded && changedUrns.isEmpty() && changedKinds.isEmpty()) {
+                return;
+            }
+
+            synchronized (LineageGraphCache.class) {
+                if (lineageReloaded) {
+                    invalidateAll();
+                } else {
+                    invalidateUrns(changedUrns);
+                    invalidateKinds(changedKinds);
+                }
+                version++;
+            }
+        } finally {
+            checkLock.unlock();
+        }
+    }
+
+    /**
+     * Adds both ends of every new `family` edge to `changedUrns`.
+     * @return true if edges may have been removed, which can't be traced to urns
+     */
+    private static boolean collectLineageChanges(Set<String> changedUrns) {
+        if (LineageGraphIndex.isEnabled()) {
+            LineageGraphIndex.Graph g = LineageGraphIndex.current();
+            LineageGraphIndex.Graph last = lastGraph;
+            lastGraph = g;
+            if (last == null || g == last) {
+                return false;
+            }
+            if (!g.extendsGraph(last)) {
+                return true;
+            }
+            for (int edge = last.edgeCount(); edge < g.edgeCount(); edge++) {
+                changedUrns.add(g.urnOf(g.parentIdOfEdge(edge)));
+                changedUrns.add(g.urnOf(g.childIdOfEdge(edge)));
+            }
+            return false;
+        }
+
+        lastGraph = null;
+        Map<String, Object> stats = getJdbcTemplate().queryForMap(GET_FAMILY_STATS);
+        long maxId = ((Number) stats.get("max_id")).longValue();
+        long edgeCount = ((Number) stats.get("edge_count")).longValue();
+        boolean removed = edgeCount < familyCount || maxId < maxFamilyId;
+        if (watching && !removed && maxId > maxFamilyId) {
+            for (Map<String, Object> row : getJdbcTemplate().queryForList(GET_FAMILY_AFTER_ID, maxFamilyId)) {
+                changedUrns.add((String) row.get("parent_urn"));
+                changedUrns.add((String) row.get("child_urn"));
+            }
+        }
+        maxFamilyId = maxId;
+        familyCount = edgeCount;
+        return removed;
+    }
+
+    private static void collectDatasetChanges(Set<String> changedUrns) {
+        long sinceStamp = watching ? datasetStamp : getJdbcTemplate().queryForObject(GET_MAX_DATASET_STAMP, Long.class);
+        Set<Long> seen = watching ? datasetIdsAtStamp : new HashSet<Long>();
+        long maxStamp = sinceStamp;
+        Set<Long> idsAtMax = new HashSet<Long>(seen);
+        for (Map<String, Object> row : getJdbcTemplate().queryForList(GET_DATASETS_CHANGED_SINCE, sinceStamp, sinceStamp)) {
+            long id = ((Number) row.get("id")).longValue();
+            long stamp = ((Number) row.get("stamp")).longValue();
+            if (stamp == sinceStamp && seen.contains(id)) {
+                continue;
+            }
+            if (watching) {
+                changedUrns.add((String) row.get("urn"));
+            }
+            if (stamp > maxStamp) {
+                maxStamp = stamp;
+                idsAtMax.clear();
+            }
+            if (stamp == maxStamp) {
+                idsAtMax.add(id);
+            }
+        }
+        datasetStamp = maxStamp;
+        datasetIdsAtStamp = idsAtMax;
+    }
+
+    /**
+     * @return the urn schemes and node types of the wh_property names whose value changed
+     */
+    private static Set<String> collectPropertyChanges() {
+        Map<String, String> props = Property.getAll();
+        Map<String, String> last = lastProperties;
+        lastProperties = props;
+        Set<String> kinds = new HashSet<String>();
+        if (last == null || last == props) {
+            return kinds;
+        }
+
+        Set<String> names = new HashSet<String>(props.keySet());
+        names.addAll(last.keySet());
+        for (String name : names) {
+            if (!Objects.equals(props.get(name), last.get(name))) {
+                String kind = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+                kinds.add(kind);
+                if (!NODE_TYPES.contains(kind) && !name.startsWith("node.") && !name.startsWith("prop.")) {
+                    // not one of the per scheme properties LineageDAOLite reads, can't tell what it affects
+                    kinds.addAll(NODE_TYPES);
+                }
+            }
+        }
+        return kinds;
+    }
+
+    private static int getCacheSize() {
+        return Play.application().configuration().getInt(LINEAGE_CACHE_SIZE_KEY, 500);
+    }
+
+    private static long getCheckIntervalMillis() {
+        return Play.application().configuration().getLong(LINEAGE_CACHE_CHECK_INTERVAL_KEY, 10L) * 1000L;
+    }
+
+    private static long getDatasetCheckIntervalMillis() {
+        return Play.application().configuration().getLong(LINEAGE_CACHE_DATASET_CHECK_INTERVAL_KEY, 10L) * 1000L;
+    }
+}
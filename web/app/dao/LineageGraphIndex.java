@@ -0,0 +1,342 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import play.Logger;
+import play.Play;
+
+/**
+ * In-memory copy of the `family` lineage table.
+ *
+ * Every urn is interned to an int id, and the parent/child relationships are kept as two CSR
+ * (compressed sparse row) arrays so a lookup is a slice of an int[] instead of a full scan of `family`.
+ * The index is loaded lazily on first use; afterwards only rows with an id greater than the last one
+ * seen are fetched, at most once per `lineage.graph.refresh.interval` seconds. Removed rows are noticed
+ * by the count and sum of the ids up to that last one, and trigger a full reload.
+ */
+public class LineageGraphIndex extends AbstractMySQLOpenSourceDAO {
+
+    public static final String LINEAGE_GRAPH_ENABLED_KEY = "lineage.graph.in.memory";
+
+    public static final String LINEAGE_GRAPH_REFRESH_INTERVAL_KEY = "lineage.graph.refresh.interval";
+
+    private final static String GET_FAMILY_STATS = "SELECT COALESCE(MAX(id), 0) AS max_id, " +
+            "COALESCE(SUM(id <= ?), 0) AS edge_count, COALESCE(SUM(CASE WHEN id <= ? THEN id END), 0) AS id_sum " +
+            "FROM family";
+
+    private final static String GET_FAMILY_BETWEEN_IDS = "SELECT id, parent_urn, child_urn FROM family " +
+            "WHERE id > ? AND id <= ? ORDER BY id";
+
+    private static final ReentrantLock refreshLock = new ReentrantLock();
+
+    private static final AtomicLong fullLoads = new AtomicLong();
+
+    private static volatile Graph graph = null;
+
+    private static volatile long lastCheckedMillis = 0L;
+
+    public static boolean isEnabled() {
+        return Play.application().configuration().getBoolean(LINEAGE_GRAPH_ENABLED_KEY, true);
+    }
+
+    public static List<String> getParents(String urn) {
+        return current().getParents(urn);
+    }
+
+    public static List<String> getChildren(String urn) {
+        return current().getChildren(urn);
+    }
+
+    /**
+     * Returns the current snapshot, refreshing it first if the refresh interval has elapsed.
+     * Only the first load blocks readers; once a snapshot exists, one reader refreshes it and the others
+     * keep using the one they have until the refresh is done.
+     */
+    public static Graph current() {
+        Graph g = graph;
+        if (g == null) {
+            refresh();
+            return graph;
+        }
+        if (System.currentTimeMillis() - lastCheckedMillis > getRefreshIntervalMillis() && refreshLock.tryLock()) {
+            try {
+                refreshIfDue();
+            } finally {
+                refreshLock.unlock();
+            }
+            g = graph;
+        }
+        return g;
+    }
+
+    /**
+     * Pulls new `family` rows into the index, waiting for a refresh already in progress.
+     */
+    public static void refresh() {
+        refreshLock.lock();
+        try {
+            refreshIfDue();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Falls back to a full reload when rows up to the last loaded id have been removed or replaced,
+     * which the id watermark alone doesn't show.
+     */
+    private static void refreshIfDue() {
+        long now = System.currentTimeMillis();
+        Graph g = graph;
+        if (g != null && now - lastCheckedMillis <= getRefreshIntervalMillis()) {
+            // another thread refreshed while we were waiting for the lock
+            return;
+        }
+
+        try {
+            long loadedMaxId = g == null ? 0L : g.maxFamilyId;
+            Map<String, Object> stats = getJdbcTemplate().queryForMap(GET_FAMILY_STATS, loadedMaxId, loadedMaxId);
+            long maxId = ((Number) stats.get("max_id")).longValue();
+            long edgeCount = ((Number) stats.get("edge_count")).longValue();
+            long idSum = ((Number) stats.get("id_sum")).longValue();
+
+            if (g == null || edgeCount != g.edgeCount() || idSum != g.idSum || maxId < g.maxFamilyId) {
+                graph = load(new Builder(), 0L, maxId);
+            } else if (maxId > g.maxFamilyId) {
+                graph = load(new Builder(g), g.maxFamilyId, maxId);
+            }
+            lastCheckedMillis = now;
+        } catch (DataAccessException e) {
+            Logger.error("LineageGraphIndex refresh failed", e);
+            if (graph == null) {
+                graph = new Builder().build();
+            }
+        }
+    }
+
+    // up to `maxId`, so the snapshot's count and id sum match what the next check sees below its watermark
+    private static Graph load(final Builder builder, long afterId, long maxId) {
+        getJdbcTemplate().query(GET_FAMILY_BETWEEN_IDS, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                builder.addEdge(rs.getLong("id"), rs.getString("parent_urn"), rs.getString("child_urn"));
+            }
+        }, afterId, maxId);
+        Graph g = builder.build();
+        Logger.debug("LineageGraphIndex loaded " + g.urnCount() + " urns and " + g.edgeCount() + " edges");
+        return g;
+    }
+
+    private static long getRefreshIntervalMillis() {
+        return Play.application().configuration().getLong(LINEAGE_GRAPH_REFRESH_INTERVAL_KEY, 60L) * 1000L;
+    }
+
+    /**
+     * Immutable snapshot of the lineage graph.
+     * Edge order within a node follows the `family` id order, the same order the per-urn queries returned.
+     */
+    public static class Graph {
+        private final Map<String, Integer> ids;
+        private final String[] urns;
+        private final int[] edgeParent;
+        private final int[] edgeChild;
+        private final int edgeCount;
+        private final long maxFamilyId;
+        private final long idSum;
+        // same for every snapshot extended from one full load, whose urn ids and edge order they keep
+        private final long loadId;
+
+        private final int[] parentOffsets;
+        private final int[] parentIds;
+        private final int[] childOffsets;
+        private final int[] childIds;
+
+        Graph(Map<String, Integer> ids, String[] urns, int[] edgeParent, int[] edgeChild, int edgeCount,
+              long maxFamilyId, long idSum, long loadId) {
+            this.ids = ids;
+            this.urns = urns;
+            this.edgeParent = edgeParent;
+            this.edgeChild = edgeChild;
+            this.edgeCount = edgeCount;
+            this.maxFamilyId = maxFamilyId;
+            this.idSum = idSum;
+            this.loadId = loadId;
+
+            int nodeCount = ids.size();
+            this.childOffsets = new int[nodeCount + 1];
+            this.childIds = new int[edgeCount];
+            this.parentOffsets = new int[nodeCount + 1];
+            this.parentIds = new int[edgeCount];
+            fill(edgeParent, edgeChild, childOffsets, childIds);
+            fill(edgeChild, edgeParent, parentOffsets, parentIds);
+        }
+
+        // counting sort of the edge list by `from`, stable so edges keep their insertion order
+        private void fill(int[] from, int[] to, int[] offsets, int[] targets) {
+            for (int i = 0; i < edgeCount; i++) {
+                offsets[from[i] + 1]++;
+            }
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] += offsets[i - 1];
+            }
+            int[] cursor = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int i = 0; i < edgeCount; i++) {
+                targets[cursor[from[i]]++] = to[i];
+            }
+        }
+
+        public int urnCount() {
+            return ids.size();
+        }
+
+        public int edgeCount() {
+            return edgeCount;
+        }
+
+        /**
+         * @return true if this snapshot is `other` plus the edges from `other.edgeCount()` on,
+         *   with the same urn ids
+         */
+        public boolean extendsGraph(Graph other) {
+            return loadId == other.loadId && edgeCount >= other.edgeCount;
+        }
+
+        /**
+         * @return true if `other` was loaded or extended after this snapshot
+         */
+        public boolean isOlderThan(Graph other) {
+            return loadId < other.loadId || (loadId == other.loadId && edgeCount < other.edgeCount);
+        }
+
+        public int parentIdOfEdge(int edge) {
+            return edgeParent[edge];
+        }
+
+        public int childIdOfEdge(int edge) {
+            return edgeChild[edge];
+        }
+
+        /**
+         * @return the interned id of the urn, or -1 if the urn doesn't appear in `family`
+         */
+        public int idOf(String urn) {
+            Integer id = ids.get(urn);
+            return id == null ? -1 : id;
+        }
+
+        public String urnOf(int id) {
+            return urns[id];
+        }
+
+        public int[] parentIdsOf(int id) {
+            return Arrays.copyOfRange(parentIds, parentOffsets[id], parentOffsets[id + 1]);
+        }
+
+        public int[] childIdsOf(int id) {
+            return Arrays.copyOfRange(childIds, childOffsets[id], childOffsets[id + 1]);
+        }
+
+        public List<String> getParents(String urn) {
+            return toUrns(idOf(urn), parentOffsets, parentIds);
+        }
+
+        public List<String> getChildren(String urn) {
+            return toUrns(idOf(urn), childOffsets, childIds);
+        }
+
+        private List<String> toUrns(int id, int[] offsets, int[] targets) {
+            if (id < 0) {
+                return new ArrayList<String>();
+            }
+            List<String> result = new ArrayList<String>(offsets[id + 1] - offsets[id]);
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                result.add(urns[targets[i]]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Accumulates edges on top of an existing snapshot. The snapshot's arrays are copied, never written to.
+     */
+    static class Builder {
+        private final Map<String, Integer> ids;
+        private String[] urns;
+        private int[] edgeParent;
+        private int[] edgeChild;
+        private int edgeCount;
+        private long maxFamilyId;
+        private long idSum;
+        private final long loadId;
+
+        Builder() {
+            this.ids = new HashMap<String, Integer>();
+            this.urns = new String[16];
+            this.edgeParent = new int[16];
+            this.edgeChild = new int[16];
+            this.edgeCount = 0;
+            this.maxFamilyId = 0L;
+            this.idSum = 0L;
+            this.loadId = fullLoads.incrementAndGet();
+        }
+
+        Builder(Graph base) {
+            this.ids = new HashMap<String, Integer>(base.ids);
+            this.urns = Arrays.copyOf(base.urns, Math.max(16, base.urns.length));
+            this.edgeParent = Arrays.copyOf(base.edgeParent, Math.max(16, base.edgeParent.length));
+            this.edgeChild = Arrays.copyOf(base.edgeChild, Math.max(16, base.edgeChild.length));
+            this.edgeCount = base.edgeCount;
+            this.maxFamilyId = base.maxFamilyId;
+            this.idSum = base.idSum;
+            this.loadId = base.loadId;
+        }
+
+        void addEdge(long familyId, String parentUrn, String childUrn) {
+            if (edgeCount == edgeParent.length) {
+                edgeParent = Arrays.copyOf(edgeParent, edgeCount * 2);
+                edgeChild = Arrays.copyOf(edgeChild, edgeCount * 2);
+            }
+            edgeParent[edgeCount] = intern(parentUrn);
+            edgeChild[edgeCount] = intern(childUrn);
+            edgeCount++;
+            maxFamilyId = Math.max(maxFamilyId, familyId);
+            idSum += familyId;
+        }
+
+        private int intern(String urn) {
+            Integer id = ids.get(urn);
+            if (id == null) {
+                id = ids.size();
+                if (id == urns.length) {
+                    urns = Arrays.copyOf(urns, id * 2);
+                }
+                urns[id] = urn;
+                ids.put(urn, id);
+            }
+            return id;
+        }
+
+        Graph build() {
+            return new Graph(ids, urns, edgeParent, edgeChild, edgeCount, maxFamilyId, idSum, loadId);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.util.*;
+
+import models.DatasetDependency;
+
+/**
+ * The view dependency graph in `cfg_object_name_map`, walked from one object for the depends / references
+ * treegrids of the dataset page.
+ *
+ * The edges are loaded a level at a time with one IN query per batch of names, and every name is looked
+ * up once however many paths lead to it, so shared subtrees cost no extra queries. An object that is
+ * already on the path from the root is listed but not expanded again, which ends cycles.
+ */
+public class ObjectNameMapGraph extends AbstractMySQLOpenSourceDAO {
+
+    private final static String GET_DEPENDS_BY_OBJECT_NAMES = "SELECT object_name AS from_name, " +
+            "mapped_object_dataset_id AS dataset_id, mapped_object_name AS name, " +
+            "mapped_object_type AS type, mapped_object_sub_type AS sub_type " +
+            "FROM cfg_object_name_map WHERE object_name IN (:names) ORDER BY object_name, mapped_object_name";
+
+    private final static String GET_REFERENCES_BY_OBJECT_NAMES = "SELECT mapped_object_name AS from_name, " +
+            "object_dataset_id AS dataset_id, object_name AS name, " +
+            "object_type AS type, object_sub_type AS sub_type " +
+            "FROM cfg_object_name_map WHERE mapped_object_name IN (:names) ORDER BY mapped_object_name, obj_name_map_id";
+
+    private static final int IN_CLAUSE_BATCH_SIZE = 1000;
+
+    public enum Direction {
+        // the objects a view is built from
+        DEPENDS(GET_DEPENDS_BY_OBJECT_NAMES),
+        // the views built from an object
+        REFERENCES(GET_REFERENCES_BY_OBJECT_NAMES);
+
+        final String edgesQuery;
+
+        Direction(String edgesQuery) {
+            this.edgesQuery = edgesQuery;
+        }
+    }
+
+    static final class Edge {
+        final Long datasetId;
+        final String name;
+        final String type;
+        final String subType;
+
+        Edge(Long datasetId, String name, String type, String subType) {
+            this.datasetId = datasetId;
+            this.name = name;
+            this.type = type;
+            this.subType = subType;
+        }
+    }
+
+    /**
+     * Appends the treegrid rows under `objectName` to `rows`, in the order and with the sort ids and
+     * treegrid classes the one-query-per-node recursion produced.
+     */
+    public static void appendTreeGrid(Direction direction, String objectName, int level, int parent,
+            List<DatasetDependency> rows) {
+        Map<String, List<Edge>> edges = loadEdges(direction, objectName);
+        appendTreeGrid(edges, objectName, level, parent, rows, new HashSet<String>());
+    }
+
+    static void appendTreeGrid(Map<String, List<Edge>> edges, String objectName, int level, int parent,
+            List<DatasetDependency> rows, Set<String> path) {
+        List<Edge> next = edges.get(keyOf(objectName));
+        if (next == null || !path.add(keyOf(objectName))) {
+            return;
+        }
+        for (Edge edge : next) {
+            DatasetDependency dd = new DatasetDependency();
+            dd.datasetId = edge.datasetId;
+            dd.objectName = edge.name;
+            dd.objectType = edge.type;
+            dd.objectSubType = edge.subType;
+            if (dd.datasetId != null && dd.datasetId > 0) {
+                dd.isValidDataset = true;
+                dd.datasetLink = "#/datasets/" + Long.toString(dd.datasetId);
+            } else {
+                dd.isValidDataset = false;
+            }
+            dd.level = level;
+            dd.sortId = rows.size() + 1;
+            dd.treeGridClass = "treegrid-" + Integer.toString(dd.sortId);
+            if (parent != 0) {
+                dd.treeGridClass += " treegrid-parent-" + Integer.toString(parent);
+            }
+            rows.add(dd);
+            appendTreeGrid(edges, dd.objectName, level + 1, dd.sortId, rows, path);
+        }
+        path.remove(keyOf(objectName));
+    }
+
+    /**
+     * Every edge reachable from `objectName`, by the lower cased name it leaves from
+     * (the names are compared case insensitively in MySQL).
+     */
+    static Map<String, List<Edge>> loadEdges(Direction direction, String objectName) {
+        Map<String, List<Edge>> edges = new HashMap<String, List<Edge>>();
+        Set<String> frontier = new LinkedHashSet<String>();
+        frontier.add(objectName);
+        while (!frontier.isEmpty()) {
+            for (String name : frontier) {
+                edges.put(keyOf(name), new ArrayList<Edge>());
+            }
+            List<String> names = new ArrayList<String>(frontier);
+            frontier = new LinkedHashSet<String>();
+            for (int from = 0; from < names.size(); from += IN_CLAUSE_BATCH_SIZE) {
+                List<String> batch = names.subList(from, Math.min(names.size(), from + IN_CLAUSE_BATCH_SIZE));
+                for (Map<String, Object> row : getNamedParameterJdbcTemplate().queryForList(direction.edgesQuery,
+                        Collections.singletonMap("names", batch))) {
+                    Edge edge = new Edge(
+                            row.get("dataset_id") == null ? null : ((Number) row.get("dataset_id")).longValue(),
+                            (String) row.get("name"), (String) row.get("type"), (String) row.get("sub_type"));
+                    List<Edge> fromEdges = edges.get(keyOf((String) row.get("from_name")));
+                    if (fromEdges == null || edge.name == null) {
+                        continue;
+                    }
+                    fromEdges.add(edge);
+                    if (!edges.containsKey(keyOf(edge.name))) {
+                        frontier.add(edge.name);
+                    }
+                }
+            }
+        }
+        return edges;
+    }
+
+    private static String keyOf(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -30,7 +30,6 @@ import play.Logger;
 import play.Play;
 import play.libs.F.Promise;
 import play.libs.Json;
-import play.libs.ws.*;
 import play.cache.Cache;
 import models.*;
 
@@ -212,6 +211,7 @@ public class SearchDAO extends AbstractMySQLOpenSourceDAO
 	public final static String SEARCH_AUTOCOMPLETE_LIST_DATASET = "searchSourceDataset";
 	public final static String SEARCH_AUTOCOMPLETE_LIST_METRIC = "searchSourceMetric";
 	public final static String SEARCH_AUTOCOMPLETE_LIST_FLOW = "searchSourceFlow";
+	private final static String SEARCH_DATASET_COUNT_CACHE_PREFIX = "searchDatasetCount:";
 
 	public final static String GET_DATASET_AUTO_COMPLETE_LIST = "SELECT DISTINCT name FROM dict_dataset";
 	public final static String GET_METRIC_AUTO_COMPLETE_LIST = "SELECT DISTINCT metric_name FROM dict_business_metric";
@@ -258,15 +258,13 @@ public class SearchDAO extends AbstractMySQLOpenSourceDAO
 		return cachedAutoCompleteListForDataset;
 	}
 
-	public static List<String> getSuggestionList(String category, String searchKeyword)
+	public static Promise<List<String>> getSuggestionList(String category, String searchKeyword)
 	{
 		//Logger.debug("Entering SearchDAO.java:getSuggestionList()");
-		List<String> SuggestionList = new ArrayList<String>();
 		String elasticSearchType = "dataset";
 		String elasticSearchTypeURLKey = "elasticsearch.dataset.url";
 		String fieldName = "name";
 
-		JsonNode responseNode = null;
 		ObjectNode keywordNode = null;
 
 		try
@@ -303,12 +301,13 @@ public class SearchDAO extends AbstractMySQLOpenSourceDAO
 
 		Logger.info("The suggest query sent to Elastic Search is: " + keywordNode.toString());
 
-		Promise<WSResponse> responsePromise = WS.url(Play.application().configuration().getString(
-				elasticSearchTypeURLKey)).post(keywordNode);
-		responseNode = responsePromise.get(1000).asJson();
+		return ElasticSearchClient.post(elasticSearchTypeURLKey, keywordNode).map(SearchDAO::toSuggestionList);
+	}
 
+	private static List<String> toSuggestionList(JsonNode responseNode)
+	{
 		// Logger.info("responseNode for getSuggestionList is " + responseNode.toString());
-
+		List<String> SuggestionList = new ArrayList<String>();
 		if (responseNode != null && responseNode.isContainerNode() && responseNode.has("hits"))
 		{
 			JsonNode suggestNode = responseNode.get("suggest");
@@ -357,6 +356,18 @@ public class SearchDAO extends AbstractMySQLOpenSourceDAO
 	public static ObjectNode getPagedEntityByKeyword(String category, String keyword, String source, String storage_type, int page, int size)
 	{
 		//Logger.debug("Entering SearchDAO.java:getPagedEntityByKeyword()");
+		if (DatasetSearchIndex.isEnabled())
+		{
+			ObjectNode fromIndex = getPagedEntityByKeywordFromIndex(category, keyword, source, storage_type, page, size);
+			if (fromIndex != null)
+			{
+				return fromIndex;
+			}
+		}
+		// once the total is known, following pages skip SQL_CALC_FOUND_ROWS and stop at their LIMIT
+		final String countCacheKey = SEARCH_DATASET_COUNT_CACHE_PREFIX + category + ":" + source + ":" +
+				storage_type + ":" + keyword;
+		final Long cachedCount = (Long)Cache.get(countCacheKey);
 		List<Dataset> pagedDatasets = new ArrayList<Dataset>();
 		final JdbcTemplate jdbcTemplate = getJdbcTemplate();
 		javax.sql.DataSource ds = jdbcTemplate.getDataSource();
@@ -373,10 +384,10 @@ public class SearchDAO extends AbstractMySQLOpenSourceDAO
 				if (StringUtils.isBlank(source) || source.toLowerCase().equalsIgnoreCase("all"))
 				{
 					if (storage_type == null || storage_type.equals("all")) {
-						String query = SEARCH_DATASET_WITH_PAGINATION.replace("$keyword", keyword);
+						String query = withFoundRows(SEARCH_DATASET_WITH_PAGINATION.replace("$keyword", keyword), cachedCount == null);
 						rows = jdbcTemplate.queryForList(query, (page - 1) * size, size);
 					} else {
-						String query = SEARCH_DATASET_WITH_PAGINATION_AND_TYPE.replace("$keyword", keyword);
+						String query = withFoundRows(SEARCH_DATASET_WITH_PAGINATION_AND_TYPE.replace("$keyword", keyword), cachedCount == null);
 						query = query.replace("$type", storage_type);
 						rows = jdbcTemplate.queryForList(query, (page - 1) * size, size);
 					}
@@ -384,10 +395,10 @@ public class SearchDAO extends AbstractMySQLOpenSourceDAO
 				else
 				{
 					if (storage_type == null || storage_type.equals("all")) {
-						String query = SEARCH_DATASET_BY_SOURCE_WITH_PAGINATION.replace("$keyword", keyword);
+						String query = withFoundRows(SEARCH_DATASET_BY_SOURCE_WITH_PAGINATION.replace("$keyword", keyword), cachedCount == null);
 						rows = jdbcTemplate.queryForList(query, (page - 1) * size, size);
 					} else {
-						String query = SEARCH_DATASET_BY_SOURCE_WITH_PAGINATION_AND_TYPE.replace("$keyword", keyword);
+						String query = withFoundRows(SEARCH_DATASET_BY_SOURCE_WITH_PAGINATION_AND_TYPE.replace("$keyword", keyword), cachedCount == null);
 						query = query.replace("$type", storage_type);
 						rows = jdbcTemplate.queryForList(query, source, (page - 1) * size, size);
 					}
@@ -404,14 +415,22 @@ public class SearchDAO extends AbstractMySQLOpenSourceDAO
 					pagedDatasets.add(ds);
 				}
 				long count = 0;
-				try {
-					count = jdbcTemplate.queryForObject(
-							"SELECT FOUND_ROWS()",
-							Long.class);
+				if (cachedCount != null)
+				{
+					count = cachedCount;
 				}
-				catch(EmptyResultDataAccessException e)
+				else
 				{
-					Logger.error("Exception = " + e.getMessage());
+					try {
+						count = jdbcTemplate.queryForObject(
+								"SELECT FOUND_ROWS()",
+								Long.class);
+						Cache.set(countCacheKey, count, DatasetsDAO.getCountCacheTtl());
+					}
+					catch(EmptyResultDataAccessException e)
+					{
+						Logger.error("Exception = " + e.getMessage());
+					}
 				}
 
 				ObjectNode resultNode = Json.newObject();
@@ -431,6 +450,34 @@ public class SearchDAO extends AbstractMySQLOpenSourceDAO
 	}
 
 
+	private static String withFoundRows(String query, boolean calcFoundRows)
+	{
+		return calcFoundRows ? query : query.replaceFirst("(?i)SQL_CALC_FOUND_ROWS ", "");
+	}
+
+	// same result as getPagedEntityByKeyword, served by the embedded DatasetSearchIndex instead of MATCH ... AGAINST;
+	// null while the index is still loading
+	private static ObjectNode getPagedEntityByKeywordFromIndex(String category, String keyword, String source, String storage_type, int page, int size)
+	{
+		String sourceFilter = StringUtils.isBlank(source) || source.equalsIgnoreCase("all") ? null : source;
+		String typeFilter = storage_type == null || storage_type.equals("all") ? null : storage_type;
+		DatasetSearchIndex.Result found = DatasetSearchIndex.search(keyword, sourceFilter, typeFilter, (page - 1) * size, size);
+		if (found == null)
+		{
+			return null;
+		}
+
+		ObjectNode resultNode = Json.newObject();
+		resultNode.put("count", found.count);
+		resultNode.put("page", page);
+		resultNode.put("category", category);
+		resultNode.put("source", source);
+		resultNode.put("itemsPerPage", size);
+		resultNode.put("totalPages", (int)Math.ceil(found.count/((double)size)));
+		resultNode.set("data", Json.toJson(found.datasets));
+		return resultNode;
+	}
+
 	public static ObjectNode getPagedDatasetByKeyword(String category, String keyword, String source, int page, int size)
 	{
 		//Logger.debug("Entering SearchDAO.java:getPagedDatasetByKeyword()");
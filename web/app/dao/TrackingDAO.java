@@ -14,12 +14,19 @@
 package dao;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.*;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.DataAccessException;
 import play.Logger;
+import play.Play;
 import play.libs.Json;
 
 public class TrackingDAO extends AbstractMySQLOpenSourceDAO
@@ -34,14 +41,75 @@ public class TrackingDAO extends AbstractMySQLOpenSourceDAO
 
     public static String TRACKING_PARAMETERS_COLUMN = "parameters";
 
-    private final static String GET_USER_ID = "SELECT id FROM users WHERE username = ?";
+    public static final String TRACKING_QUEUE_CAPACITY_KEY = "tracking.queue.capacity";
 
-    private final static String ADD_TRACKING_EVENT  = "INSERT INTO track_object_access_log (access_unixtime, " +
-            "login_id, object_type, object_id, object_name, parameters) VALUES (?, ?, ?, ?, ?, ?) ";
+    public static final String TRACKING_BATCH_SIZE_KEY = "tracking.batch.size";
 
+    public static final String TRACKING_FLUSH_INTERVAL_KEY = "tracking.flush.interval.ms";
+
+    // the values of the track_object_access_log.object_type ENUM
+    private final static Set<String> OBJECT_TYPES = new HashSet<String>(Arrays.asList("dataset", "metric",
+            "glossary", "flow", "lineage:data", "lineage:flow", "lineage:metric", "lineage:metricJob"));
+
+    private final static String GET_USER_IDS = "SELECT id, username FROM users WHERE username IN (:names)";
+
+    // an event colliding with the primary key fails the batch, and is counted as failed when the rows are retried
+    private final static String ADD_TRACKING_EVENTS = "INSERT INTO track_object_access_log (access_unixtime, " +
+            "login_id, object_type, object_id, object_name, parameters) VALUES $values";
+
+    private final static String TRACKING_EVENT_VALUES = "(?, ?, ?, ?, ?, ?)";
+
+    private final static int MAX_CACHED_USER_IDS = 10000;
+
+    private final static long SHUTDOWN_TIMEOUT_MILLIS = 10000L;
+
+    private static final Queue<TrackingEvent> queue = new ConcurrentLinkedQueue<TrackingEvent>();
+
+    private static final AtomicInteger queued = new AtomicInteger();
+
+    private static final Map<String, Integer> userIds = new ConcurrentHashMap<String, Integer>();
+
+    private static final AtomicLong accepted = new AtomicLong();
+
+    private static final AtomicLong dropped = new AtomicLong();
+
+    private static final AtomicLong written = new AtomicLong();
+
+    private static final AtomicLong unknownUsers = new AtomicLong();
+
+    private static final AtomicLong failed = new AtomicLong();
+
+    private static volatile Thread writer = null;
+
+    private static volatile boolean running = true;
+
+    static class TrackingEvent
+    {
+        final String user;
+        final long accessTime;
+        final String objectType;
+        final long objectId;
+        final String objectName;
+        final String parameters;
+
+        TrackingEvent(String user, long accessTime, String objectType, long objectId, String objectName,
+                      String parameters)
+        {
+            this.user = user;
+            this.accessTime = accessTime;
+            this.objectType = objectType;
+            this.objectId = objectId;
+            this.objectName = objectName;
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * Validates the event and queues it for the background writer, which inserts queued events
+     * a batch at a time. An empty message means the event was queued.
+     */
     public static String addTrackingEvent(JsonNode requestNode, String user)
 	{
-        String message = "Internal error";
         if (requestNode == null || (!requestNode.isContainerNode()))
         {
             return "Empty post body";
@@ -66,7 +134,10 @@ public class TrackingDAO extends AbstractMySQLOpenSourceDAO
         {
             return "Missing " + TRACKING_OBJECT_TYPE_COLUMN;
         }
-
+        if (!OBJECT_TYPES.contains(objectType))
+        {
+            return "Unknown " + TRACKING_OBJECT_TYPE_COLUMN + " " + objectType;
+        }
 
         Long objectId = 0L;
         if (requestNode.has(TRACKING_OBJECT_ID_COLUMN))
@@ -98,49 +169,266 @@ public class TrackingDAO extends AbstractMySQLOpenSourceDAO
             return "Missing " + TRACKING_PARAMETERS_COLUMN;
         }
 
-        Integer userId = 0;
-        if (StringUtils.isNotBlank(user))
+        if (StringUtils.isBlank(user))
         {
-            try
+            return "User not found";
+        }
+        return enqueue(new TrackingEvent(user, accessTime, objectType, objectId, objectName, parameters));
+    }
+
+    static String enqueue(TrackingEvent event)
+    {
+        if (!running)
+        {
+            dropped.incrementAndGet();
+            return "Tracking is shut down";
+        }
+        // never wait on a full queue, page loads come first
+        if (queued.incrementAndGet() > getQueueCapacity())
+        {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return "Tracking queue is full";
+        }
+        queue.offer(event);
+        accepted.incrementAndGet();
+        if (!running && queue.remove(event))
+        {
+            // shut down while queueing, the writer may not look at the queue again
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return "Tracking is shut down";
+        }
+        Thread w = writer;
+        if (w == null)
+        {
+            w = startWriter();
+        }
+        if (queued.get() >= getBatchSize())
+        {
+            LockSupport.unpark(w);
+        }
+        return "";
+    }
+
+    private static synchronized Thread startWriter()
+    {
+        if (writer == null)
+        {
+            writer = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    writeEvents();
+                }
+            }, "tracking-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        return writer;
+    }
+
+    private static void writeEvents()
+    {
+        while (running || !queue.isEmpty())
+        {
+            List<TrackingEvent> batch = drainBatch();
+            if (!batch.isEmpty())
             {
-                userId = (Integer)getJdbcTemplate().queryForObject(
-                        GET_USER_ID,
-                        Integer.class,
-                        user);
+                try
+                {
+                    writeBatch(batch);
+                }
+                catch (Exception e)
+                {
+                    failed.addAndGet(batch.size());
+                    Logger.error("TrackingDAO failed to write " + batch.size() + " tracking events", e);
+                }
             }
-            catch(EmptyResultDataAccessException e)
+            if (running && batch.size() < getBatchSize())
             {
-                Logger.error("TrackingDAO addTrackingEvent get user id failed, username = " + user);
-                Logger.error("Exception = " + e.getMessage());
+                LockSupport.parkNanos(getFlushIntervalMillis() * 1000000L);
             }
         }
+    }
 
-        if (userId != null && userId > 0)
+    private static List<TrackingEvent> drainBatch()
+    {
+        int batchSize = getBatchSize();
+        List<TrackingEvent> batch = new ArrayList<TrackingEvent>();
+        TrackingEvent event;
+        while (batch.size() < batchSize && (event = queue.poll()) != null)
         {
-            try
+            queued.decrementAndGet();
+            batch.add(event);
+        }
+        return batch;
+    }
+
+    static void writeBatch(List<TrackingEvent> batch)
+    {
+        resolveUserIds(batch);
+        List<Object> args = new ArrayList<Object>();
+        List<String> values = new ArrayList<String>();
+        List<TrackingEvent> rows = new ArrayList<TrackingEvent>();
+        for (TrackingEvent event : batch)
+        {
+            Integer userId = userIds.get(event.user);
+            if (userId == null || userId <= 0)
             {
-                int row = getJdbcTemplate().update(
-                        ADD_TRACKING_EVENT,
-                        accessTime,
-                        userId,
-                        objectType,
-                        objectId,
-                        objectName,
-                        parameters);
-                if (row > 0) {
-                    message = "";
+                unknownUsers.incrementAndGet();
+                continue;
+            }
+            values.add(TRACKING_EVENT_VALUES);
+            args.addAll(Arrays.<Object>asList(event.accessTime, userId, event.objectType, event.objectId,
+                    event.objectName, event.parameters));
+            rows.add(event);
+        }
+        if (rows.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            getJdbcTemplate().update(ADD_TRACKING_EVENTS.replace("$values", StringUtils.join(values, ", ")),
+                    args.toArray());
+            written.addAndGet(rows.size());
+        }
+        catch (DataAccessException e)
+        {
+            // one bad row fails the whole statement, so retry the rows one by one to keep the good ones
+            Logger.warn("TrackingDAO batch insert failed, inserting " + rows.size() + " events one by one: "
+                    + e.getMessage());
+            for (int i = 0; i < rows.size(); i++)
+            {
+                try
+                {
+                    getJdbcTemplate().update(ADD_TRACKING_EVENTS.replace("$values", TRACKING_EVENT_VALUES),
+                            args.subList(i * 6, i * 6 + 6).toArray());
+                    written.incrementAndGet();
+                }
+                catch (DataAccessException rowException)
+                {
+                    failed.incrementAndGet();
+                    Logger.error("TrackingDAO insert tracking event failed, username = " + rows.get(i).user
+                            + " Exception = " + rowException.getMessage());
                 }
             }
-            catch (Exception e)
+        }
+    }
+
+    // one query for the users of the batch that aren't cached yet
+    private static void resolveUserIds(List<TrackingEvent> batch)
+    {
+        Set<String> names = new HashSet<String>();
+        for (TrackingEvent event : batch)
+        {
+            if (!userIds.containsKey(event.user))
             {
-                message = e.getMessage();
+                names.add(event.user);
             }
         }
-        else
+        if (names.isEmpty())
+        {
+            return;
+        }
+        if (userIds.size() + names.size() > MAX_CACHED_USER_IDS)
+        {
+            userIds.clear();
+        }
+        for (Map<String, Object> row : getNamedParameterJdbcTemplate().queryForList(GET_USER_IDS,
+                Collections.singletonMap("names", names)))
+        {
+            // users.username is compared case-insensitively, the event keeps the session's spelling
+            String username = (String) row.get("username");
+            for (String name : names)
+            {
+                if (name.equalsIgnoreCase(username))
+                {
+                    userIds.put(name, ((Number) row.get("id")).intValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes events again after a shutdown, when the application is started again in the same JVM.
+     */
+    public static void start()
+    {
+        running = true;
+    }
+
+    /**
+     * Stops taking events and waits for the writer to insert the queued ones. Events still queued
+     * when the writer is done are counted as dropped.
+     */
+    public static synchronized void shutdown()
+    {
+        running = false;
+        Thread w = writer;
+        if (w == null)
         {
-            message = "User not found";
+            return;
         }
-        return message;
+        LockSupport.unpark(w);
+        try
+        {
+            w.join(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (w.isAlive())
+        {
+            Logger.error("TrackingDAO shut down with " + queued.get() + " tracking events not written");
+            return;
+        }
+        writer = null;
+
+        // queued after the writer last found the queue empty
+        int left = 0;
+        while (queue.poll() != null)
+        {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            left++;
+        }
+        if (left > 0)
+        {
+            Logger.warn("TrackingDAO dropped " + left + " tracking events queued while shutting down");
+        }
+    }
+
+    public static ObjectNode getStats()
+    {
+        ObjectNode stats = Json.newObject();
+        stats.put("queued", queued.get());
+        stats.put("capacity", getQueueCapacity());
+        stats.put("accepted", accepted.get());
+        stats.put("written", written.get());
+        stats.put("dropped", dropped.get());
+        stats.put("unknownUsers", unknownUsers.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    private static int getQueueCapacity()
+    {
+        return Play.application().configuration().getInt(TRACKING_QUEUE_CAPACITY_KEY, 10000);
+    }
+
+    private static int getBatchSize()
+    {
+        return Play.application().configuration().getInt(TRACKING_BATCH_SIZE_KEY, 500);
+    }
+
+    private static long getFlushIntervalMillis()
+    {
+        return Play.application().configuration().getLong(TRACKING_FLUSH_INTERVAL_KEY, 1000L);
     }
 
 }
@@ -18,4 +18,5 @@ public class DatasetListViewNode {
     public Long datasetId;
     public String nodeName;
     public String nodeUrl;
+    public Integer datasetCount;
 }
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import play.Logger;
+import play.libs.Json;
+import play.mvc.Results;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Chunked JSON responses written with a Jackson JsonGenerator, for results too large to build as a JsonNode
+ * tree and then a String before the first byte goes out. Objects are serialized one at a time and sent
+ * in CHUNK_SIZE pieces as the generator fills them.
+ */
+public class JsonChunks
+{
+    public static final int CHUNK_SIZE = 8192;
+
+    public interface Body {
+        void writeTo(JsonGenerator gen) throws IOException;
+    }
+
+    /**
+     * A response body of `{"status": "ok", ...}` with whatever `body` writes after the status field.
+     * `body` runs on the thread sending the response, after the status line: request state (session, query string)
+     * has to be read and the queries run before, so that a failure still gets an error status.
+     */
+    public static Results.Chunks<byte[]> ok(final Body body) {
+        return new Results.ByteChunks() {
+            @Override
+            public void onReady(Results.Chunks.Out<byte[]> out) {
+                ChunkOutputStream stream = new ChunkOutputStream(out);
+                try {
+                    JsonGenerator gen = Json.mapper().getFactory().createGenerator(stream);
+                    gen.setCodec(Json.mapper());
+                    gen.writeStartObject();
+                    gen.writeStringField("status", "ok");
+                    body.writeTo(gen);
+                    gen.writeEndObject();
+                    gen.close();
+                } catch (Exception e) {
+                    // the status line is already sent, all that is left is to end the body early
+                    Logger.error("Chunked JSON response failed", e);
+                } finally {
+                    stream.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes `"fieldName": [...]` with one serialized element of `items` at a time.
+     */
+    public static void writeArrayField(JsonGenerator gen, String fieldName, Iterable<?> items) throws IOException {
+        gen.writeArrayFieldStart(fieldName);
+        if (items != null) {
+            for (Object item : items) {
+                gen.writeObject(item);
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    static class ChunkOutputStream extends OutputStream
+    {
+        private final Results.Chunks.Out<byte[]> out;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int size = 0;
+        private boolean closed = false;
+
+        ChunkOutputStream(Results.Chunks.Out<byte[]> out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) {
+            if (size == buffer.length) {
+                send();
+            }
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                if (size == buffer.length) {
+                    send();
+                }
+                int n = Math.min(length, buffer.length - size);
+                System.arraycopy(bytes, offset, buffer, size, n);
+                size += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        // ObjectMapper flushes the generator after every value, chunks only go out full or at the end
+        @Override
+        public void flush() {
+        }
+
+        private void send() {
+            if (size > 0 && !closed) {
+                out.write(Arrays.copyOf(buffer, size));
+            }
+            size = 0;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                send();
+                closed = true;
+                out.close();
+            }
+        }
+    }
+}
@@ -21,16 +21,29 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.JdbcTemplate;
 import play.Logger;
+import play.Play;
 import dao.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Property {
 
 
     private static String MYSQL_DB_WHEREHOWS_OPENSOURCE = "wherehows_opensource_mysql";
 
+    public static final String PROPERTY_CACHE_REFRESH_INTERVAL_KEY = "property.cache.refresh.interval";
+
     private final static String GET_PROPERTY = "SELECT property_value FROM wh_property WHERE property_name = ?";
 
+    private final static String GET_ALL_PROPERTIES = "SELECT property_name, property_value FROM wh_property";
+
+    // immutable snapshot of wh_property, replaced as a whole on refresh
+    private static volatile Map<String, String> properties = null;
+
+    private static volatile long loadedMillis = 0L;
+
     private static JdbcTemplate jdbcTemplate = new JdbcTemplate(DataSource.getDataSource(MYSQL_DB_WHEREHOWS_OPENSOURCE));
 
     private static NamedParameterJdbcTemplate namedJdbcTemplate =
@@ -56,6 +69,18 @@ public class Property {
     }
 
     public static String getProp(String propName) {
+        Map<String, String> props = getProperties();
+        if (props == null) {
+            return getPropFromDb(propName);
+        }
+        if (!props.containsKey(propName)) {
+            //Logger.info("Could not find property for property_name: " + propName);
+            return "default";
+        }
+        return props.get(propName);
+    }
+
+    private static String getPropFromDb(String propName) {
         List<String> props = getJdbcTemplate().queryForList(GET_PROPERTY, String.class, propName);
         if (props == null || props.size() == 0) {
             //Logger.info("Could not find property for property_name: " + propName);
@@ -63,4 +88,64 @@ public class Property {
         }
         return props.get(0);
     }
+
+    /**
+     * Every wh_property value: the cached snapshot, or the table itself when caching is disabled.
+     * A snapshot is never modified, so callers can tell a reload by comparing the maps returned.
+     */
+    public static Map<String, String> getAll() {
+        Map<String, String> props = getProperties();
+        return props != null ? props : loadAll();
+    }
+
+    /**
+     * Returns the cached wh_property snapshot, reloading it when it is older than
+     * property.cache.refresh.interval seconds. Returns null if caching is disabled (interval <= 0).
+     * Writes made through the backend service show up here on the next reload.
+     */
+    private static Map<String, String> getProperties() {
+        long interval = Play.application().configuration().getLong(PROPERTY_CACHE_REFRESH_INTERVAL_KEY, 60L) * 1000L;
+        if (interval <= 0) {
+            return null;
+        }
+        if (System.currentTimeMillis() - loadedMillis > interval) {
+            refreshIfOlderThan(interval);
+        }
+        return properties;
+    }
+
+    private static synchronized void refreshIfOlderThan(long interval) {
+        // another request may have reloaded while this one waited for the lock
+        if (System.currentTimeMillis() - loadedMillis > interval) {
+            refresh();
+        }
+    }
+
+    /**
+     * Reloads every wh_property row and swaps in the new snapshot.
+     */
+    public static synchronized void refresh() {
+        try {
+            properties = loadAll();
+        } catch (DataAccessException e) {
+            Logger.error("Failed to load wh_property", e);
+        }
+        // also on failure, so a broken database doesn't turn every lookup into a reload attempt
+        loadedMillis = System.currentTimeMillis();
+    }
+
+    private static Map<String, String> loadAll() {
+        Map<String, String> props = new HashMap<String, String>();
+        for (Map<String, Object> row : getJdbcTemplate().queryForList(GET_ALL_PROPERTIES)) {
+            props.put((String) row.get("property_name"), (String) row.get("property_value"));
+        }
+        return Collections.unmodifiableMap(props);
+    }
+
+    /**
+     * Drops the snapshot so the next lookup reloads it.
+     */
+    public static void invalidate() {
+        loadedMillis = 0L;
+    }
 }
\ No newline at end of file
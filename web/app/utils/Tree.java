@@ -21,21 +21,164 @@ import play.libs.Json;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The dataset and flow trees, read from the JSON files configured at `<name>.tree.name`.
+ *
+ * A tree is parsed once and kept with its serialized bytes; each lookup only compares the file's
+ * modification time and length with the loaded ones, and the file is read again when they changed.
+ * If the new file doesn't parse, the previous tree is kept until the file changes again.
+ * Branches can be looked up by the `path` of their node.
+ */
 public class Tree
 {
+    private static final byte[] EMPTY_TREE = "\"\"".getBytes(StandardCharsets.UTF_8);
+
+    private static final String CHILDREN_FIELD = "children";
+
+    private static final String PATH_FIELD = "path";
+
+    private static final Map<String, Loaded> trees = new ConcurrentHashMap<String, Loaded>();
+
+    static class Loaded
+    {
+        final String fileName;
+        final long modified;
+        final long length;
+        final JsonNode root;
+        final byte[] bytes;
+        final Map<String, JsonNode> nodesByPath;
+        // serialized branches, filled as they are asked for
+        final Map<String, byte[]> branches = new ConcurrentHashMap<String, byte[]>();
+
+        Loaded(String fileName, long modified, long length, JsonNode root, byte[] bytes,
+               Map<String, JsonNode> nodesByPath) {
+            this.fileName = fileName;
+            this.modified = modified;
+            this.length = length;
+            this.root = root;
+            this.bytes = bytes;
+            this.nodesByPath = nodesByPath;
+        }
+
+        boolean isCurrent(String name, File file) {
+            return fileName.equals(name) && modified == file.lastModified() && length == file.length();
+        }
+
+        String getVersion() {
+            return Long.toString(modified, 36) + "-" + Long.toString(length, 36);
+        }
+    }
+
+    /**
+     * The tree at the configured key. The node is shared between callers and must not be modified.
+     */
     public static JsonNode loadTreeJsonNode(String key) {
-        if (StringUtils.isNotBlank(key)) {
-            String treeName = Play.application().configuration().getString(key);
-            if (StringUtils.isNotBlank(treeName)) {
-                try {
-                    return Json.parse(new FileInputStream(new File(treeName)));
-                } catch (Exception e) {
-                    Logger.error(e.getMessage());
-                }
+        Loaded tree = getTree(key);
+        return tree == null ? Json.toJson("") : tree.root;
+    }
+
+    /**
+     * The serialized tree at the configured key, an empty JSON string if there is none.
+     */
+    public static byte[] loadTreeBytes(String key) {
+        Loaded tree = getTree(key);
+        return tree == null ? EMPTY_TREE : tree.bytes;
+    }
+
+    /**
+     * The serialized children of the node with this `path`, null if the tree has no such node.
+     */
+    public static byte[] loadSubtreeBytes(String key, String path) {
+        Loaded tree = getTree(key);
+        if (tree == null || path == null) {
+            return null;
+        }
+        byte[] branch = tree.branches.get(path);
+        if (branch == null) {
+            JsonNode node = tree.nodesByPath.get(path);
+            if (node == null) {
+                return null;
             }
+            JsonNode children = node.get(CHILDREN_FIELD);
+            branch = (children == null ? "[]" : children.toString()).getBytes(StandardCharsets.UTF_8);
+            tree.branches.put(path, branch);
+        }
+        return branch;
+    }
+
+    /**
+     * Changes whenever the file at the configured key is loaded again, null if there is no tree.
+     */
+    public static String getTreeVersion(String key) {
+        Loaded tree = getTree(key);
+        return tree == null ? null : tree.getVersion();
+    }
+
+    static Loaded getTree(String key) {
+        if (StringUtils.isBlank(key)) {
+            return null;
+        }
+        String treeName = Play.application().configuration().getString(key);
+        if (StringUtils.isBlank(treeName)) {
+            return null;
+        }
+        Loaded tree = trees.get(key);
+        if (tree != null && tree.isCurrent(treeName, new File(treeName))) {
+            return tree;
         }
+        return reload(key, treeName);
+    }
 
-        return Json.toJson("");
+    private static synchronized Loaded reload(String key, String treeName) {
+        File file = new File(treeName);
+        Loaded tree = trees.get(key);
+        if (tree != null && tree.isCurrent(treeName, file)) {
+            return tree;
+        }
+
+        long modified = file.lastModified();
+        long length = file.length();
+        try (InputStream in = new FileInputStream(file)) {
+            JsonNode root = Json.parse(in);
+            Map<String, JsonNode> nodesByPath = new HashMap<String, JsonNode>();
+            indexPaths(root, nodesByPath);
+            Loaded loaded = new Loaded(treeName, modified, length, root,
+                    root.toString().getBytes(StandardCharsets.UTF_8), nodesByPath);
+            trees.put(key, loaded);
+            Logger.info("Loaded tree " + treeName + ", " + loaded.bytes.length + " bytes");
+            return loaded;
+        } catch (Exception e) {
+            Logger.error("Failed to load tree " + treeName + ": " + e.getMessage());
+            if (tree != null) {
+                // keep serving the last good tree, and don't parse this version of the file again
+                trees.put(key, new Loaded(treeName, modified, length, tree.root, tree.bytes, tree.nodesByPath));
+                return tree;
+            }
+            return null;
+        }
+    }
+
+    // the first node with a path wins, like a depth first search of the tree would find
+    private static void indexPaths(JsonNode node, Map<String, JsonNode> nodesByPath) {
+        if (node.isArray()) {
+            for (JsonNode child : node) {
+                indexPaths(child, nodesByPath);
+            }
+        } else if (node.isObject()) {
+            JsonNode path = node.get(PATH_FIELD);
+            if (path != null && path.isValueNode() && !nodesByPath.containsKey(path.asText())) {
+                nodesByPath.put(path.asText(), node);
+            }
+            JsonNode children = node.get(CHILDREN_FIELD);
+            if (children != null) {
+                indexPaths(children, nodesByPath);
+            }
+        }
     }
 }
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package dao;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import play.libs.Json;
+
+import static org.fest.assertions.Assertions.*;
+
+
+/**
+ * Planned statements of the advanced search, checked against the conditions the string built queries
+ * of AdvSearchDAO used to have for each filter.
+ */
+public class AdvSearchQueryTest {
+
+    private static final String DATASET_SELECT = "SELECT d.id, d.name, d.source, d.urn, d.`schema`";
+
+    private static final String COUNT_SELECT = "SELECT COUNT(*)";
+
+    private static final String FIELDS_DRIVER = DATASET_SELECT +
+            " FROM (SELECT f.dataset_id FROM dict_field_detail f WHERE ";
+
+    private static AdvSearchQuery parse(String json) {
+        return AdvSearchQuery.parse(Json.parse(json));
+    }
+
+    private static int placeholders(String sql) {
+        int count = 0;
+        for (int i = sql.indexOf('?'); i >= 0; i = sql.indexOf('?', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    // every ? has its value, in both statements, and the page ends with the offset and page size
+    private static void assertAligned(AdvSearchQuery query) {
+        AdvSearchQuery.Statement page = query.pageStatement(3, 20);
+        assertThat(page.args.length).isEqualTo(placeholders(page.sql));
+        assertThat(page.args[page.args.length - 2]).isEqualTo(40);
+        assertThat(page.args[page.args.length - 1]).isEqualTo(20);
+        assertThat(page.sql).endsWith(" LIMIT ?, ?");
+
+        AdvSearchQuery.Statement count = query.countStatement();
+        assertThat(count.args.length).isEqualTo(placeholders(count.sql));
+        assertThat(page.sql).startsWith(DATASET_SELECT + count.sql.substring(COUNT_SELECT.length()));
+    }
+
+    @Test
+    public void notAnObject() {
+        assertThat(AdvSearchQuery.parse(null)).isNull();
+        assertThat(AdvSearchQuery.parse(Json.toJson("scope"))).isNull();
+    }
+
+    @Test
+    public void noFilters() {
+        AdvSearchQuery query = parse("{}");
+        assertThat(query.driver()).isEqualTo(AdvSearchQuery.Driver.DATASETS);
+        assertThat(query.countStatement().sql).isEqualTo("SELECT COUNT(*) FROM dict_dataset d");
+        assertThat(query.countStatement().args).isEmpty();
+        assertAligned(query);
+    }
+
+    @Test
+    public void scopesAndSources() {
+        // d.parent_name in ('a', 'b') and d.parent_name not in ('c'), sources as d.source in (...)
+        AdvSearchQuery query = parse("{\"scope\": {\"in\": \"a, b,,\", \"not\": \"c\"}, \"sources\": \"hdfs\"}");
+        assertThat(query.driver()).isEqualTo(AdvSearchQuery.Driver.DATASETS);
+
+        AdvSearchQuery.Statement count = query.countStatement();
+        assertThat(count.sql).isEqualTo("SELECT COUNT(*) FROM dict_dataset d WHERE d.parent_name IN (?, ?) " +
+                "AND d.parent_name NOT IN (?) AND d.source IN (?)");
+        assertThat(count.args).isEqualTo(new Object[]{"a", "b", "c", "hdfs"});
+        assertAligned(query);
+    }
+
+    @Test
+    public void tableNames() {
+        // (d.name LIKE '%x%' or d.name LIKE '%y%') and (d.name NOT LIKE '%z%')
+        AdvSearchQuery query = parse("{\"table\": {\"in\": \"x,y\", \"not\": \"z\"}}");
+        assertThat(query.driver()).isEqualTo(AdvSearchQuery.Driver.DATASETS);
+
+        AdvSearchQuery.Statement count = query.countStatement();
+        assertThat(count.sql).isEqualTo("SELECT COUNT(*) FROM dict_dataset d " +
+                "WHERE (d.name LIKE ? OR d.name LIKE ?) AND (d.name NOT LIKE ?)");
+        assertThat(count.args).isEqualTo(new Object[]{"%x%", "%y%", "%z%"});
+
+        // ranked by exact name, then starting with, ending with, containing a searched name
+        AdvSearchQuery.Statement page = query.pageStatement(1, 10);
+        assertThat(page.sql).contains(" ORDER BY CASE WHEN d.name IN (?, ?) THEN 0 " +
+                "WHEN (d.name LIKE ? OR d.name LIKE ?) THEN 2 WHEN (d.name LIKE ? OR d.name LIKE ?) THEN 3 " +
+                "WHEN (d.name LIKE ? OR d.name LIKE ?) THEN 4 ELSE 9 END, CASE WHEN d.urn");
+        List<Object> args = Arrays.asList(page.args);
+        assertThat(args.subList(3, 13)).isEqualTo(Arrays.<Object>asList(
+                "x", "y", "x%", "y%", "%x", "%y", "%x%", "%y%", 0, 10));
+        assertAligned(query);
+    }
+
+    @Test
+    public void fieldsAnyDrive() {
+        AdvSearchQuery query = parse("{\"fields\": {\"any\": \"id,key\"}}");
+        assertThat(query.driver()).isEqualTo(AdvSearchQuery.Driver.FIELDS);
+
+        AdvSearchQuery.Statement page = query.pageStatement(1, 10);
+        assertThat(page.sql).startsWith(FIELDS_DRIVER + "(f.field_name LIKE ? OR f.field_name LIKE ?) " +
+                "GROUP BY f.dataset_id HAVING COUNT(*) > 0 AND SUM((f.field_name LIKE ? OR f.field_name LIKE ?)) > 0" +
+                ") drv JOIN dict_dataset d ON d.id = drv.dataset_id ORDER BY ");
+        assertThat(page.args).isEqualTo(new Object[]{"%id%", "%key%", "%id%", "%key%", 0, 10});
+        assertAligned(query);
+    }
+
+    @Test
+    public void fieldsAllNeedEveryTerm() {
+        // one SUM per term: each has to be contained in some field of the dataset, not all in the same field
+        AdvSearchQuery query = parse("{\"fields\": {\"all\": \"member,time\", \"not\": \"tmp\"}}");
+        assertThat(query.driver()).isEqualTo(AdvSearchQuery.Driver.FIELDS);
+
+        AdvSearchQuery.Statement count = query.countStatement();
+        assertThat(count.sql).isEqualTo("SELECT COUNT(*) FROM (SELECT f.dataset_id FROM dict_field_detail f " +
+                "WHERE (f.field_name LIKE ? OR f.field_name LIKE ? OR f.field_name LIKE ?) GROUP BY f.dataset_id " +
+                "HAVING COUNT(*) > 0 AND SUM(f.field_name LIKE ?) > 0 AND SUM(f.field_name LIKE ?) > 0 " +
+                "AND SUM((f.field_name LIKE ?)) = 0) drv JOIN dict_dataset d ON d.id = drv.dataset_id");
+        assertThat(count.args).isEqualTo(new Object[]{"%member%", "%time%", "%tmp%", "%member%", "%time%", "%tmp%"});
+        assertAligned(query);
+    }
+
+    @Test
+    public void fieldsNotOnlyIsAFilter() {
+        // no field has to match, so the excluded names can't drive; the dataset still needs fields
+        AdvSearchQuery query = parse("{\"fields\": {\"not\": \"tmp,bak\"}}");
+        assertThat(query.driver()).isEqualTo(AdvSearchQuery.Driver.DATASETS);
+
+        AdvSearchQuery.Statement count = query.countStatement();
+        assertThat(count.sql).isEqualTo("SELECT COUNT(*) FROM dict_dataset d WHERE EXISTS (SELECT 1 " +
+                "FROM dict_field_detail f WHERE f.dataset_id = d.id HAVING COUNT(*) > 0 " +
+                "AND SUM((f.field_name LIKE ? OR f.field_name LIKE ?)) = 0)");
+        assertThat(count.args).isEqualTo(new Object[]{"%tmp%", "%bak%"});
+        assertAligned(query);
+    }
+
+    @Test
+    public void scopeDrivesOverFields() {
+        AdvSearchQuery query = parse("{\"scope\": {\"in\": \"a\"}, \"fields\": {\"any\": \"id\"}, " +
+                "\"table\": {\"not\": \"t\"}}");
+        assertThat(query.driver()).isEqualTo(AdvSearchQuery.Driver.DATASETS);
+
+        AdvSearchQuery.Statement count = query.countStatement();
+        assertThat(count.sql).isEqualTo("SELECT COUNT(*) FROM dict_dataset d WHERE d.parent_name IN (?) " +
+                "AND EXISTS (SELECT 1 FROM dict_field_detail f WHERE f.dataset_id = d.id HAVING COUNT(*) > 0 " +
+                "AND SUM((f.field_name LIKE ?)) > 0) AND (d.name NOT LIKE ?)");
+        assertThat(count.args).isEqualTo(new Object[]{"a", "%id%", "%t%"});
+        assertAligned(query);
+    }
+
+    @Test
+    public void commentsDriveOverFields() {
+        // MATCH ... AGAINST ('*keyword*' IN BOOLEAN MODE) on dataset and field comments, listed by name
+        AdvSearchQuery query = parse("{\"comments\": \" pii \", \"fields\": {\"all\": \"email\"}}");
+        assertThat(query.driver()).isEqualTo(AdvSearchQuery.Driver.COMMENTS);
+
+        AdvSearchQuery.Statement page = query.pageStatement(2, 5);
+        assertThat(page.sql).isEqualTo(DATASET_SELECT + " FROM (" +
+                "SELECT dataset_id FROM comments WHERE MATCH(text) AGAINST (? IN BOOLEAN MODE) " +
+                "UNION SELECT dfc.dataset_id FROM dict_dataset_field_comment dfc " +
+                "JOIN field_comments fc ON dfc.comment_id = fc.id WHERE MATCH(fc.comment) AGAINST (? IN BOOLEAN MODE)" +
+                ") drv JOIN dict_dataset d ON d.id = drv.dataset_id WHERE EXISTS (SELECT 1 FROM dict_field_detail f " +
+                "WHERE f.dataset_id = d.id HAVING COUNT(*) > 0 AND SUM(f.field_name LIKE ?) > 0) " +
+                "ORDER BY d.name LIMIT ?, ?");
+        assertThat(page.args).isEqualTo(new Object[]{"*pii*", "*pii*", "%email%", 5, 5});
+        assertAligned(query);
+    }
+
+    @Test
+    public void planCachedPerShape() {
+        AdvSearchQuery first = parse("{\"scope\": {\"in\": \"a,b\"}, \"fields\": {\"any\": \"x\"}}");
+        AdvSearchQuery sameShape = parse("{\"scope\": {\"in\": \"c,d\"}, \"fields\": {\"any\": \"y\"}}");
+        AdvSearchQuery moreValues = parse("{\"scope\": {\"in\": \"a,b,c\"}, \"fields\": {\"any\": \"x\"}}");
+
+        assertThat(sameShape.shape()).isEqualTo(first.shape());
+        assertThat(sameShape.plan()).isSameAs(first.plan());
+        assertThat(sameShape.pageStatement(1, 10).args).isEqualTo(new Object[]{"c", "d", "%y%", 0, 10});
+
+        assertThat(moreValues.shape()).isNotEqualTo(first.shape());
+        assertThat(moreValues.plan()).isNotSameAs(first.plan());
+        assertAligned(moreValues);
+    }
+}
@@ -15,10 +15,14 @@ package wherehows.common;
 
 import java.sql.Connection;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import wherehows.common.schemas.LineageRecord;
 
 
@@ -27,15 +31,30 @@ import wherehows.common.schemas.LineageRecord;
  * We need to combine those lineage records that with same abstract path together.
  * e.g. input is /data/somedataset/2015/01/01/part1, /data/somedataset/2015/01/02/part1, /data/somedataset/2015/01/03/part1,
  * Then we just want a output of dataset of /data/somedataset with a range from 2015/01/01 to 2015/01/03
+ *
+ * With a parallelism greater than 1, paths are analyzed on a fork-join pool and records are merged by shard,
+ * each shard owning a disjoint set of keys and merging its records in input order.
+ * The combined result is the same as the sequential one.
  * Created by zsun on 9/11/15.
  */
 public class LineageCombiner {
 
   // key is the operation + abstract name, value is the record
-  private Map<String, LineageRecord> _lineageRecordMap;
+  private Map<LineageRecordKey, LineageRecord> _lineageRecordMap;
+
+  private final int _parallelism;
 
   public LineageCombiner(Connection connection) {
-    _lineageRecordMap = new HashMap<>();
+    this(connection, 1);
+  }
+
+  /**
+   * @param connection
+   * @param parallelism number of threads used to combine, 1 or less combines on the calling thread
+   */
+  public LineageCombiner(Connection connection, int parallelism) {
+    _lineageRecordMap = new ConcurrentHashMap<>();
+    _parallelism = parallelism;
   }
 
   /**
@@ -44,6 +63,10 @@ public class LineageCombiner {
    * @param rawLineageRecords
    */
   public void addAll(List<LineageRecord> rawLineageRecords) {
+    if (_parallelism > 1) {
+      addAllParallel(rawLineageRecords, true);
+      return;
+    }
     for (LineageRecord lr : rawLineageRecords) {
       DatasetPath datasetPath = PathAnalyzer.analyze(lr.getFullObjectName());
       if (datasetPath != null) {
@@ -58,32 +81,101 @@ public class LineageCombiner {
    * @param rawLineageRecords
    */
   public void addAllWoPartitionUpdate(List<LineageRecord> rawLineageRecords) {
+    if (_parallelism > 1) {
+      addAllParallel(rawLineageRecords, false);
+      return;
+    }
     for (LineageRecord lr : rawLineageRecords) {
       DatasetPath datasetPath = PathAnalyzer.analyze(lr.getFullObjectName());
       if (datasetPath != null) {
-        lr.setAbstractObjectName(datasetPath.abstractPath);
-        lr.setLayoutId(datasetPath.layoutId);
-        if (lr.getPartitionStart() == null) {
-          lr.setPartitionStart(datasetPath.partitionStart);
-        }
-        if (lr.getPartitionEnd() == null) {
-          lr.setPartitionEnd(datasetPath.partitionEnd);
-        }
-        if (lr.getPartitionType() == null) {
-          lr.setPartitionType(datasetPath.partitionType);
-        }
+        updateDatasetWoPartition(lr, datasetPath);
         addToMap(lr);
       }
     }
   }
 
+  private static void updateDatasetWoPartition(LineageRecord lr, DatasetPath datasetPath) {
+    lr.setAbstractObjectName(datasetPath.abstractPath);
+    lr.setLayoutId(datasetPath.layoutId);
+    if (lr.getPartitionStart() == null) {
+      lr.setPartitionStart(datasetPath.partitionStart);
+    }
+    if (lr.getPartitionEnd() == null) {
+      lr.setPartitionEnd(datasetPath.partitionEnd);
+    }
+    if (lr.getPartitionType() == null) {
+      lr.setPartitionType(datasetPath.partitionType);
+    }
+  }
+
   private void addToMap(LineageRecord lr) {
-    String lineageRecordKey = lr.getLineageRecordKey();
-    if (_lineageRecordMap.containsKey(lineageRecordKey)) {
+    addToMap(new LineageRecordKey(lr), lr);
+  }
+
+  private void addToMap(LineageRecordKey key, LineageRecord lr) {
+    LineageRecord existing = _lineageRecordMap.putIfAbsent(key, lr);
+    if (existing != null) {
       // merge
-      _lineageRecordMap.get(lineageRecordKey).merge(lr);
-    } else {
-      _lineageRecordMap.put(lineageRecordKey, lr);
+      existing.merge(lr);
+    }
+  }
+
+  /**
+   * Analyze every path in parallel, then merge shard by shard. A key always lands in the same shard and
+   * each shard walks the records in input order, so the record kept for a key is the first one seen,
+   * exactly like the sequential path.
+   */
+  private void addAllParallel(final List<LineageRecord> rawLineageRecords, final boolean updatePartition) {
+    final LineageRecord[] records = rawLineageRecords.toArray(new LineageRecord[rawLineageRecords.size()]);
+    final LineageRecordKey[] keys = new LineageRecordKey[records.length];
+    final int shardCount = _parallelism;
+
+    ForkJoinPool pool = new ForkJoinPool(_parallelism);
+    try {
+      pool.submit(() -> IntStream.range(0, records.length).parallel().forEach(i -> {
+        LineageRecord lr = records[i];
+        DatasetPath datasetPath = PathAnalyzer.analyze(lr.getFullObjectName());
+        if (datasetPath != null) {
+          if (updatePartition) {
+            lr.updateDataset(datasetPath);
+          } else {
+            updateDatasetWoPartition(lr, datasetPath);
+          }
+          keys[i] = new LineageRecordKey(lr);
+        }
+      })).get();
+
+      // bucket record indexes by shard, keeping input order within each shard
+      final int[] shardSizes = new int[shardCount];
+      for (LineageRecordKey key : keys) {
+        if (key != null) {
+          shardSizes[key.shard(shardCount)]++;
+        }
+      }
+      final int[][] shards = new int[shardCount][];
+      for (int s = 0; s < shardCount; s++) {
+        shards[s] = new int[shardSizes[s]];
+      }
+      final int[] fill = new int[shardCount];
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != null) {
+          int s = keys[i].shard(shardCount);
+          shards[s][fill[s]++] = i;
+        }
+      }
+
+      pool.submit(() -> IntStream.range(0, shardCount).parallel().forEach(s -> {
+        for (int i : shards[s]) {
+          addToMap(keys[i], records[i]);
+        }
+      })).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while combining lineage", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Failed to combine lineage", e.getCause());
+    } finally {
+      pool.shutdown();
     }
   }
 
@@ -92,13 +184,82 @@ public class LineageCombiner {
    * @return A list of {@code LineageRecord} after combined.
    */
   public List<LineageRecord> getCombinedLineage() {
-    List<LineageRecord> allLineage = new ArrayList<>(_lineageRecordMap.values());
-    Collections.sort(allLineage);
+    // sort by the same string key LineageRecord.compareTo uses, computed once per record instead of per comparison
+    Comparator<Map.Entry<LineageRecordKey, LineageRecord>> byKey =
+        (a, b) -> a.getKey().toString().compareTo(b.getKey().toString());
+    List<Map.Entry<LineageRecordKey, LineageRecord>> entries;
+    if (_parallelism > 1) {
+      entries = _lineageRecordMap.entrySet().parallelStream().sorted(byKey).collect(Collectors.toList());
+    } else {
+      entries = new ArrayList<>(_lineageRecordMap.entrySet());
+      entries.sort(byKey);
+    }
 
-    for (int i = 0; i < allLineage.size(); i++) {
-      allLineage.get(i).setSrlNo(i);
+    List<LineageRecord> allLineage = new ArrayList<>(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      LineageRecord lr = entries.get(i).getValue();
+      lr.setSrlNo(i);
+      allLineage.add(lr);
     }
 
     return allLineage;
   }
+
+  /**
+   * Structured form of {@link LineageRecord#getLineageRecordKey()}: (sourceTargetType, databaseId, abstractObjectName).
+   */
+  static final class LineageRecordKey {
+    private final String sourceTargetType;
+    private final Integer databaseId;
+    private final String abstractObjectName;
+    private final int hash;
+    private String string;
+
+    LineageRecordKey(LineageRecord lr) {
+      this.sourceTargetType = lr.getSourceTargetType();
+      this.databaseId = lr.getDatabaseId();
+      this.abstractObjectName = lr.getAbstractObjectName();
+      int h = sourceTargetType == null ? 0 : sourceTargetType.hashCode();
+      h = 31 * h + (databaseId == null ? 0 : databaseId.hashCode());
+      h = 31 * h + (abstractObjectName == null ? 0 : abstractObjectName.hashCode());
+      this.hash = h;
+    }
+
+    int shard(int shardCount) {
+      return ((hash ^ (hash >>> 16)) & 0x7fffffff) % shardCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof LineageRecordKey)) {
+        return false;
+      }
+      LineageRecordKey that = (LineageRecordKey) o;
+      return hash == that.hash && equal(sourceTargetType, that.sourceTargetType)
+          && equal(databaseId, that.databaseId) && equal(abstractObjectName, that.abstractObjectName);
+    }
+
+    private static boolean equal(Object a, Object b) {
+      return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    /**
+     * @return the same string as {@link LineageRecord#getLineageRecordKey()}
+     */
+    @Override
+    public String toString() {
+      if (string == null) {
+        string = sourceTargetType + '-' + databaseId + '-' + abstractObjectName;
+      }
+      return string;
+    }
+  }
 }
@@ -17,21 +17,54 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 
 /**
  * Singleton path analyzer
+ * All patterns are compiled once in {@link #initialize}. Layouts are indexed by the literal prefix of their regex,
+ * so a path is only matched against the layouts that could possibly match it.
  * Created by zsun on 9/11/15.
  */
 public class PathAnalyzer {
   public static PathAnalyzer instance = null;
 
+  private static final Pattern DALI_PATTERN = Pattern.compile("(dalids|hive):///(\\w.*/)?(\\w.*)(\\.|/)(\\w.*)$");
+  private static final Pattern HDFS_HEADER_PATTERN = Pattern.compile("hdfs://.*:\\d{4}(/.*)");
+  private static final Pattern TCP_HEADER_PATTERN = Pattern.compile("tcp://.*:\\d{5}/(.*)");
+
+  // positions of the fixed patterns in _patterns
+  private static final int DALI = 0;
+  private static final int HDFS_HEADER = 1;
+  private static final int TCP_HEADER = 2;
+
   private static List<Layout> _layoutsInfo;
   private static List<String> _filePattherns;
 
+  // every compiled pattern: the fixed ones, then the file patterns, then the layouts in sort order
+  private static volatile Pattern[] _patterns;
+  private static int[] _filePatternIndexes;
+  private static LayoutTrie _layoutTrie;
+
+  // optional LRU cache of analyze results, null when disabled
+  private static volatile PathCache _cache = null;
+  private static final LongAdder _cacheHits = new LongAdder();
+  private static final LongAdder _cacheMisses = new LongAdder();
+
+  // a cache of up to this many paths is one exact LRU, larger ones are split into segments of at least this size
+  private static final int MIN_CACHE_SEGMENT_SIZE = 256;
+  private static final int MAX_CACHE_SEGMENTS = 16;
+
+  // Matcher is not thread safe, so each thread keeps one reusable matcher per pattern
+  private static final ThreadLocal<Matcher[]> _matchers = new ThreadLocal<>();
+
   /**
    * Put the layout info from database into memory
    * @param connection
@@ -44,20 +77,64 @@ public class PathAnalyzer {
     }
     String layoutQuery = "SELECT * FROM dataset_partition_layout_pattern ORDER BY sort_id";
     ResultSet resultSet = connection.createStatement().executeQuery(layoutQuery);
-    _layoutsInfo = new ArrayList<>();
+    List<Layout> layouts = new ArrayList<>();
     while (resultSet.next()) {
       Layout layout =
         new Layout(resultSet.getInt("layout_id"), resultSet.getString("regex"), resultSet.getString("mask"),
           resultSet.getInt("leading_path_index"), resultSet.getInt("partition_index"),
           resultSet.getString("partition_pattern_group"));
-      _layoutsInfo.add(layout);
+      layouts.add(layout);
     }
 
     String fileQuery = "SELECT regex FROM filename_pattern";
     ResultSet fpRs = connection.createStatement().executeQuery(fileQuery);
-    _filePattherns = new ArrayList<>();
+    List<String> filePatterns = new ArrayList<>();
     while (fpRs.next()) {
-      _filePattherns.add(fpRs.getString("regex"));
+      filePatterns.add(fpRs.getString("regex"));
+    }
+
+    initialize(layouts, filePatterns);
+  }
+
+  /**
+   * Compile the given layouts and file patterns, replacing anything loaded before.
+   * @param layouts layouts in the order they should be tried
+   * @param filePatterns file name patterns, group 1 being the enclosing directory
+   */
+  synchronized static void initialize(List<Layout> layouts, List<String> filePatterns) {
+    List<Pattern> patterns = new ArrayList<>();
+    patterns.add(DALI, DALI_PATTERN);
+    patterns.add(HDFS_HEADER, HDFS_HEADER_PATTERN);
+    patterns.add(TCP_HEADER, TCP_HEADER_PATTERN);
+
+    int[] filePatternIndexes = new int[filePatterns.size()];
+    for (int i = 0; i < filePatterns.size(); i++) {
+      filePatternIndexes[i] = patterns.size();
+      patterns.add(Pattern.compile(filePatterns.get(i)));
+    }
+
+    LayoutTrie layoutTrie = new LayoutTrie();
+    for (int i = 0; i < layouts.size(); i++) {
+      Layout layout = layouts.get(i);
+      layout.patternIndex = patterns.size();
+      patterns.add(Pattern.compile(layout.regex));
+      String[] literals = RegexLiterals.of(layout.regex);
+      layout.literalPrefix = literals[0];
+      layout.requiredLiteral = literals[1];
+      layoutTrie.add(layout.literalPrefix, i);
+    }
+
+    _layoutsInfo = layouts;
+    _filePattherns = filePatterns;
+    _filePatternIndexes = filePatternIndexes;
+    _layoutTrie = layoutTrie;
+    // written last, readers check it to see whether the analyzer is ready
+    _patterns = patterns.toArray(new Pattern[patterns.size()]);
+
+    // results computed with the old layouts are no longer valid
+    final PathCache cache = _cache;
+    if (cache != null) {
+      cache.clear();
     }
   }
 
@@ -70,19 +147,18 @@ public class PathAnalyzer {
   public static DatasetPath analyze(String fullPath) {
     assert _layoutsInfo != null;
     assert _filePattherns != null;
+    final Pattern[] patterns = _patterns;
     DatasetPath datasetPath = new DatasetPath();
     datasetPath.fullPath = fullPath;
 
     // remove the "dalids://" or "hive://" header
-    Pattern daliPattern = Pattern.compile("(dalids|hive):///(\\w.*/)?(\\w.*)(\\.|/)(\\w.*)$");
-    Matcher daliMatcher = daliPattern.matcher(fullPath);
+    Matcher daliMatcher = matcher(patterns, DALI, fullPath);
     if (daliMatcher.matches()) {
       fullPath = String.format( "/%s/%s", daliMatcher.group(3), daliMatcher.group(5) );
     }
 
     // remove the "hdfs://.../" header
-    Pattern headerPattern = Pattern.compile("hdfs://.*:\\d{4}(/.*)");
-    Matcher headerMatcher = headerPattern.matcher(fullPath);
+    Matcher headerMatcher = matcher(patterns, HDFS_HEADER, fullPath);
     if (headerMatcher.matches()) {
       fullPath = headerMatcher.group(1);
     }
@@ -95,17 +171,41 @@ public class PathAnalyzer {
     // sometimes the input is a file, sometimes the input is a directory,
     // If this is a file, need to remove the file partition
     // e.g. (.*)/part-\d+, (.*)/part-\d+\.avro, (.*)/part-m-\d+\.avro, (.*)/part-r-\d+\.avro
-    for (String filePattern : _filePattherns) {
-      Pattern p = Pattern.compile(filePattern);
-      Matcher m = p.matcher(fullPath);
+    for (int filePatternIndex : _filePatternIndexes) {
+      Matcher m = matcher(patterns, filePatternIndex, fullPath);
       if (m.matches()) {
         fullPath = m.group(1);
       }
     }
 
-    for (Layout layoutRecord : _layoutsInfo) {
-      Pattern p = Pattern.compile(layoutRecord.regex);
-      Matcher m = p.matcher(fullPath);
+    // everything below depends only on the stripped path, so repeated directories can be answered from the cache
+    final PathCache cache = _cache;
+    if (cache != null) {
+      DatasetPath cached = cache.get(fullPath);
+      if (cached != null) {
+        _cacheHits.increment();
+        return copyOf(cached, datasetPath.fullPath);
+      }
+      _cacheMisses.increment();
+    }
+
+    matchLayout(patterns, fullPath, datasetPath);
+
+    if (cache != null) {
+      cache.put(fullPath, copyOf(datasetPath, null));
+    }
+    return datasetPath;
+  }
+
+  private static void matchLayout(Pattern[] patterns, String fullPath, DatasetPath datasetPath) {
+    // only layouts whose literal prefix the path starts with can match, try those in sort order
+    BitSet candidates = _layoutTrie.candidates(fullPath);
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      Layout layoutRecord = _layoutsInfo.get(i);
+      if (!fullPath.contains(layoutRecord.requiredLiteral)) {
+        continue;
+      }
+      Matcher m = matcher(patterns, layoutRecord.patternIndex, fullPath);
       if (m.matches()) {
         datasetPath.abstractPath = m.group(layoutRecord.leadingPathIndex);
         datasetPath.layoutId = layoutRecord.layoutId;
@@ -118,8 +218,7 @@ public class PathAnalyzer {
     }
 
     // handle this case : tcp://hostname:port/tablename
-    Pattern tcpHeaderPattern = Pattern.compile("tcp://.*:\\d{5}/(.*)");
-    Matcher tcpheaderMatcher = tcpHeaderPattern.matcher(fullPath);
+    Matcher tcpheaderMatcher = matcher(patterns, TCP_HEADER, fullPath);
     if (tcpheaderMatcher.matches()) {
       datasetPath.abstractPath = tcpheaderMatcher.group(1);
     }
@@ -128,8 +227,135 @@ public class PathAnalyzer {
     if (datasetPath.abstractPath == null) {
       datasetPath.abstractPath = fullPath;
     }
+  }
 
-    return datasetPath;
+  private static DatasetPath copyOf(DatasetPath source, String fullPath) {
+    DatasetPath copy = new DatasetPath();
+    copy.fullPath = fullPath;
+    copy.abstractPath = source.abstractPath;
+    copy.layoutId = source.layoutId;
+    copy.partitionStart = source.partitionStart;
+    copy.partitionEnd = source.partitionEnd;
+    copy.partitionType = source.partitionType;
+    return copy;
+  }
+
+  /**
+   * Memoize analyze results, keyed on the path after the headers and file name patterns are stripped.
+   * About maxSize paths are kept, least recently used ones are evicted first. A large cache is split by hash
+   * into segments with their own lock and LRU order, so concurrent analyze calls don't all wait on one lock.
+   * @param maxSize maximum number of cached paths, 0 or less disables the cache
+   */
+  public static void enableCache(final int maxSize) {
+    if (maxSize <= 0) {
+      disableCache();
+      return;
+    }
+    _cache = new PathCache(maxSize);
+    _cacheHits.reset();
+    _cacheMisses.reset();
+  }
+
+  public static void disableCache() {
+    _cache = null;
+  }
+
+  public static long getCacheHits() {
+    return _cacheHits.sum();
+  }
+
+  public static long getCacheMisses() {
+    return _cacheMisses.sum();
+  }
+
+  public static int getCacheSize() {
+    final PathCache cache = _cache;
+    return cache == null ? 0 : cache.size();
+  }
+
+  private static final class PathCache {
+    private final CacheSegment[] segments;
+
+    PathCache(int maxSize) {
+      final int count =
+          Integer.highestOneBit(Math.max(1, Math.min(MAX_CACHE_SEGMENTS, maxSize / MIN_CACHE_SEGMENT_SIZE)));
+      segments = new CacheSegment[count];
+      for (int i = 0; i < count; i++) {
+        segments[i] = new CacheSegment((maxSize + count - 1) / count);
+      }
+    }
+
+    private CacheSegment segmentFor(String path) {
+      final int hash = path.hashCode();
+      return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    DatasetPath get(String path) {
+      final CacheSegment segment = segmentFor(path);
+      synchronized (segment) {
+        return segment.get(path);
+      }
+    }
+
+    void put(String path, DatasetPath result) {
+      final CacheSegment segment = segmentFor(path);
+      synchronized (segment) {
+        segment.put(path, result);
+      }
+    }
+
+    void clear() {
+      for (CacheSegment segment : segments) {
+        synchronized (segment) {
+          segment.clear();
+        }
+      }
+    }
+
+    int size() {
+      int size = 0;
+      for (CacheSegment segment : segments) {
+        synchronized (segment) {
+          size += segment.size();
+        }
+      }
+      return size;
+    }
+  }
+
+  // access ordered, so get() moves the path to the end and the eldest one is the least recently used
+  private static final class CacheSegment extends LinkedHashMap<String, DatasetPath> {
+    private final int maxSize;
+
+    CacheSegment(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, DatasetPath> eldest) {
+      return size() > maxSize;
+    }
+  }
+
+  /**
+   * Get this thread's matcher for the pattern at the given index, reset to the input.
+   * The matcher is only valid until the next call for the same index on this thread.
+   */
+  private static Matcher matcher(Pattern[] patterns, int index, String input) {
+    Matcher[] matchers = _matchers.get();
+    if (matchers == null || matchers.length != patterns.length) {
+      matchers = new Matcher[patterns.length];
+      _matchers.set(matchers);
+    }
+    Matcher m = matchers[index];
+    if (m == null || m.pattern() != patterns[index]) {
+      m = patterns[index].matcher(input);
+      matchers[index] = m;
+    } else {
+      m.reset(input);
+    }
+    return m;
   }
 
   /**
@@ -143,6 +369,11 @@ public class PathAnalyzer {
     int partitionIndex;
     String partitionPatternGroup;
 
+    // filled in by initialize
+    int patternIndex;
+    String literalPrefix = "";
+    String requiredLiteral = "";
+
     public Layout(int layoutId, String regex, String mask, int leadingPathIndex, int partitionIndex,
       String partitionPatternGroup) {
       this.layoutId = layoutId;
@@ -153,4 +384,210 @@ public class PathAnalyzer {
       this.partitionPatternGroup = partitionPatternGroup;
     }
   }
+
+  /**
+   * Character trie over the layouts' literal prefixes. Walking a path down the trie collects every layout whose
+   * prefix the path starts with; layouts without a literal prefix sit on the root and are always candidates.
+   */
+  static class LayoutTrie {
+    private final BitSet layouts = new BitSet();
+    private final Map<Character, LayoutTrie> children = new HashMap<>();
+
+    void add(String prefix, int layoutIndex) {
+      LayoutTrie node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        LayoutTrie child = node.children.get(prefix.charAt(i));
+        if (child == null) {
+          child = new LayoutTrie();
+          node.children.put(prefix.charAt(i), child);
+        }
+        node = child;
+      }
+      node.layouts.set(layoutIndex);
+    }
+
+    BitSet candidates(String path) {
+      BitSet result = (BitSet) layouts.clone();
+      LayoutTrie node = this;
+      for (int i = 0; i < path.length() && !node.children.isEmpty(); i++) {
+        node = node.children.get(path.charAt(i));
+        if (node == null) {
+          break;
+        }
+        result.or(node.layouts);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Conservative extraction of literal text from a regex: the literal prefix every match starts with,
+   * and the longest literal run every match contains. Anything the scan doesn't fully understand
+   * (alternation, groups, classes, inline flags, quoting) only makes the result shorter, never wrong.
+   */
+  static class RegexLiterals {
+    private static final String META = "\\[](){}.*+?^$|";
+
+    /**
+     * @return {literal prefix, required literal}, either may be empty
+     */
+    static String[] of(String regex) {
+      if (regex == null || regex.contains("(?") || regex.contains("\\Q") || hasTopLevelAlternation(regex)) {
+        return new String[]{"", ""};
+      }
+
+      String prefix = null;
+      String longest = "";
+      StringBuilder run = new StringBuilder();
+      int depth = 0;
+      int i = regex.startsWith("^") ? 1 : 0;
+      boolean atStart = true;
+
+      while (i < regex.length()) {
+        char c = regex.charAt(i);
+        Character literal = null;
+        int width = 1;
+
+        if (c == '[') {
+          i = skipClass(regex, i);
+        } else if (c == '(') {
+          depth++;
+          i++;
+        } else if (c == ')') {
+          depth--;
+          i++;
+        } else if (depth > 0) {
+          i = (c == '\\') ? escapeEnd(regex, i) : i + 1;
+          continue;
+        } else if (c == '\\' && i + 1 < regex.length()) {
+          char next = regex.charAt(i + 1);
+          if (Character.isLetterOrDigit(next)) {
+            // character class such as \d, a back reference, or a hex, octal or control character;
+            // what it matches isn't worked out, so it ends the run
+            i = escapeEnd(regex, i);
+          } else {
+            literal = next;
+            width = 2;
+          }
+        } else if (c == '{') {
+          // bounded quantifier, skip its digits
+          int end = regex.indexOf('}', i);
+          i = end < 0 ? regex.length() : end + 1;
+        } else if (META.indexOf(c) < 0) {
+          literal = c;
+        } else {
+          i++;
+        }
+
+        if (literal != null) {
+          int after = i + width;
+          char quantifier = after < regex.length() ? regex.charAt(after) : 0;
+          if (quantifier != '*' && quantifier != '?' && quantifier != '{') {
+            run.append(literal.charValue());
+          }
+          i = after;
+          if (quantifier != '*' && quantifier != '?' && quantifier != '{' && quantifier != '+') {
+            continue;
+          }
+        }
+
+        // end of a literal run
+        if (atStart) {
+          prefix = run.toString();
+          atStart = false;
+        }
+        if (run.length() > longest.length()) {
+          longest = run.toString();
+        }
+        run.setLength(0);
+      }
+
+      if (atStart) {
+        // the whole regex is literal
+        prefix = run.toString();
+      }
+      if (run.length() > longest.length()) {
+        longest = run.toString();
+      }
+      return new String[]{prefix, longest};
+    }
+
+    private static int skipClass(String regex, int i) {
+      i++;
+      if (i < regex.length() && regex.charAt(i) == '^') {
+        i++;
+      }
+      if (i < regex.length() && regex.charAt(i) == ']') {
+        i++;
+      }
+      while (i < regex.length() && regex.charAt(i) != ']') {
+        i = (regex.charAt(i) == '\\') ? escapeEnd(regex, i) : i + 1;
+      }
+      return i + 1;
+    }
+
+    /**
+     * @return the index after the escape starting with the backslash at `i`, with the digits or braces
+     *   of hex, unicode, octal, control, property and named escapes and back references
+     */
+    private static int escapeEnd(String regex, int i) {
+      if (i + 1 >= regex.length()) {
+        return regex.length();
+      }
+      char c = regex.charAt(i + 1);
+      int end = i + 2;
+      switch (c) {
+        case 'x':
+          if (end < regex.length() && regex.charAt(end) == '{') {
+            return closing(regex, end, '}');
+          }
+          return Math.min(end + 2, regex.length());
+        case 'u':
+          return Math.min(end + 4, regex.length());
+        case 'c':
+          return Math.min(end + 1, regex.length());
+        case '0':
+          while (end < regex.length() && end < i + 5 && regex.charAt(end) >= '0' && regex.charAt(end) <= '7') {
+            end++;
+          }
+          return end;
+        case 'p':
+        case 'P':
+          return end < regex.length() && regex.charAt(end) == '{' ? closing(regex, end, '}') : end + 1;
+        case 'k':
+          return end < regex.length() && regex.charAt(end) == '<' ? closing(regex, end, '>') : end;
+        default:
+          if (c >= '1' && c <= '9') {
+            while (end < regex.length() && Character.isDigit(regex.charAt(end))) {
+              end++;
+            }
+          }
+          return Math.min(end, regex.length());
+      }
+    }
+
+    private static int closing(String regex, int open, char close) {
+      int end = regex.indexOf(close, open);
+      return end < 0 ? regex.length() : end + 1;
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+      int depth = 0;
+      for (int i = 0; i < regex.length(); i++) {
+        char c = regex.charAt(i);
+        if (c == '\\') {
+          i++;
+        } else if (c == '[') {
+          i = skipClass(regex, i) - 1;
+        } else if (c == '(') {
+          depth++;
+        } else if (c == ')') {
+          depth--;
+        } else if (c == '|' && depth == 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
 }
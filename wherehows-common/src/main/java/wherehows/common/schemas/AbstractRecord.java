@@ -14,11 +14,10 @@
 package wherehows.common.schemas;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Date;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +55,13 @@ public abstract class AbstractRecord implements Record {
     return sb.toString();
   }
 
+  @Override
+  public Object[] toDatabaseValues() {
+    // records without fillAllFields() are written by DatabaseWriter.insert() from their declared fields
+    List<Object> allFields = fillAllFields();
+    return allFields == null ? null : allFields.toArray();
+  }
+
   public abstract List<Object> fillAllFields();
 
   /**
@@ -64,24 +70,19 @@ public abstract class AbstractRecord implements Record {
    */
   @JsonIgnore
   public Field[] getAllFields() {
-    return this.getClass().getDeclaredFields();
+    return RecordAccessor.of(this.getClass()).getFields();
   }
 
   /**
    * return values of all declared fields as Object[]
+   * fields are read through the per class accessor table, without reflection on each call
    * @return Object[]
    * @throws IllegalAccessException
    */
   @JsonIgnore
   public Object[] getAllValues()
       throws IllegalAccessException {
-    final Field[] fields = this.getAllFields();
-    final Object[] values = new Object[fields.length];
-    for (int i = 0; i < fields.length; i++) {
-      fields[i].setAccessible(true);
-      values[i] = fields[i].get(this);
-    }
-    return values;
+    return RecordAccessor.of(this.getClass()).getAll(this);
   }
 
   /**
@@ -142,29 +143,27 @@ public abstract class AbstractRecord implements Record {
    */
   @JsonIgnore
   public void convertToRecord(Map<String, Object> map) {
-    final Field[] fields = getAllFields();
+    final RecordAccessor accessor = RecordAccessor.of(this.getClass());
     final String[] columns = getDbColumnNames();
-    if (fields.length != columns.length) {
+    if (accessor.size() != columns.length) {
       return;
     }
 
-    final ObjectMapper om = new ObjectMapper();
-
     for (int i = 0; i < columns.length; i++) {
-      final Class<?> type = fields[i].getType();
+      final Class<?> type = accessor.getType(i);
+      final ObjectReader jsonReader = accessor.getJsonReader(i);
       final Object value = map.get(columns[i]);
       try {
         if (value == null) {
-        } else if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)
-            || Object[].class.isAssignableFrom(type) || Record.class.isAssignableFrom(type)) {
-          fields[i].set(this, om.readValue((String) value, om.constructType(type)));
+        } else if (jsonReader != null) {
+          accessor.set(this, i, jsonReader.readValue((String) value));
         } else if (Integer.class.isAssignableFrom(type)) {
           // may need to convert from Long (database unsigned int) to Integer
-          fields[i].set(this, StringUtil.toInt(value));
+          accessor.set(this, i, StringUtil.toInt(value));
         } else if (value instanceof Date) {
-          fields[i].set(this, value.toString());
+          accessor.set(this, i, value.toString());
         } else {
-          fields[i].set(this, value);
+          accessor.set(this, i, value);
         }
       } catch (IllegalAccessException | IOException ex) {
       }
@@ -68,6 +68,18 @@ public class LineageRecord implements Record, Comparable<LineageRecord> {
     return fullObjectName;
   }
 
+  public String getAbstractObjectName() {
+    return abstractObjectName;
+  }
+
+  public Integer getDatabaseId() {
+    return databaseId;
+  }
+
+  public String getSourceTargetType() {
+    return sourceTargetType;
+  }
+
   /**
    * Set the dataset raw info
    * @param databaseId
@@ -98,7 +110,8 @@ public class LineageRecord implements Record, Comparable<LineageRecord> {
     return null;
   }
 
-  public String toDatabaseValue() {
+  @Override
+  public Object[] toDatabaseValues() {
     allFields = new ArrayList<>();
     allFields.add(appId);
     allFields.add(flowExecId);
@@ -128,8 +141,12 @@ public class LineageRecord implements Record, Comparable<LineageRecord> {
     // add the created_date and wh_etl_exec_id
     allFields.add(System.currentTimeMillis() / 1000);
     allFields.add(null);
+    return allFields.toArray();
+  }
+
+  public String toDatabaseValue() {
     StringBuilder sb = new StringBuilder();
-    for (Object o : allFields) {
+    for (Object o : toDatabaseValues()) {
       sb.append(StringUtil.toDbString(o));
       sb.append(",");
     }
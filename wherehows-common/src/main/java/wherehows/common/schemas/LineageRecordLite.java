@@ -110,14 +110,14 @@ public class LineageRecordLite implements Record, Comparable<LineageRecord> {
         return null;
     }
 
-    public String toDatabaseValue() {
-        allFields = new ArrayList<>();
-
-        allFields.add(parent_urn);
-        allFields.add(child_urn);
+    @Override
+    public Object[] toDatabaseValues() {
+        return new Object[]{parent_urn, child_urn};
+    }
 
+    public String toDatabaseValue() {
         StringBuilder sb = new StringBuilder();
-        for (Object o : allFields) {
+        for (Object o : toDatabaseValues()) {
             sb.append(StringUtil.toDbString(o));
             sb.append(",");
         }
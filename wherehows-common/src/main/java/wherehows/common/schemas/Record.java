@@ -38,4 +38,13 @@ public interface Record {
    */
   @JsonIgnore
   public String toDatabaseValue();
+
+  /**
+   * Same values as {@link #toDatabaseValue()}, in the same order, to bind as PreparedStatement parameters.
+   * Returns null if the record can only be written as a literal value string.
+   */
+  @JsonIgnore
+  default Object[] toDatabaseValues() {
+    return null;
+  }
 }
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.schemas;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+import wherehows.common.utils.StringUtil;
+
+
+/**
+ * Declared fields of one record class with a getter and setter MethodHandle for each,
+ * built once per class so records can be read and filled without per-call reflection.
+ * Fields keep the order of {@link Class#getDeclaredFields()}.
+ */
+final class RecordAccessor {
+
+  private static final ClassValue<RecordAccessor> ACCESSORS = new ClassValue<RecordAccessor>() {
+    @Override
+    protected RecordAccessor computeValue(Class<?> type) {
+      return new RecordAccessor(type);
+    }
+  };
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final Field[] fields;
+  private final MethodHandle[] getters;
+  // null where the field can't be written, e.g. static final fields
+  private final MethodHandle[] setters;
+  // JSON readers for Collection, Map, array and Record fields, null for other fields
+  private final ObjectReader[] jsonReaders;
+
+  static RecordAccessor of(Class<?> type) {
+    return ACCESSORS.get(type);
+  }
+
+  private RecordAccessor(Class<?> type) {
+    final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    fields = type.getDeclaredFields();
+    getters = new MethodHandle[fields.length];
+    setters = new MethodHandle[fields.length];
+    jsonReaders = new ObjectReader[fields.length];
+
+    for (int i = 0; i < fields.length; i++) {
+      final Field field = fields[i];
+      final boolean isStatic = Modifier.isStatic(field.getModifiers());
+      field.setAccessible(true);
+      try {
+        MethodHandle getter = lookup.unreflectGetter(field);
+        if (isStatic) {
+          getter = MethodHandles.dropArguments(getter, 0, Object.class);
+        }
+        getters[i] = getter.asType(GETTER_TYPE);
+      } catch (IllegalAccessException ex) {
+        throw new IllegalStateException("Can't read field " + field + " of record " + type, ex);
+      }
+      if (!(isStatic && Modifier.isFinal(field.getModifiers()))) {
+        try {
+          MethodHandle setter = lookup.unreflectSetter(field);
+          if (isStatic) {
+            setter = MethodHandles.dropArguments(setter, 0, Object.class);
+          }
+          setters[i] = setter.asType(SETTER_TYPE);
+        } catch (IllegalAccessException ex) {
+          setters[i] = null;
+        }
+      }
+
+      final Class<?> fieldType = field.getType();
+      if (Collection.class.isAssignableFrom(fieldType) || Map.class.isAssignableFrom(fieldType)
+          || Object[].class.isAssignableFrom(fieldType) || Record.class.isAssignableFrom(fieldType)) {
+        jsonReaders[i] = StringUtil.jsonReaderFor(fieldType);
+      }
+    }
+  }
+
+  /**
+   * @return a copy of the declared fields
+   */
+  Field[] getFields() {
+    return fields.clone();
+  }
+
+  int size() {
+    return fields.length;
+  }
+
+  Class<?> getType(int index) {
+    return fields[index].getType();
+  }
+
+  ObjectReader getJsonReader(int index) {
+    return jsonReaders[index];
+  }
+
+  Object get(Object record, int index) {
+    try {
+      return (Object) getters[index].invokeExact(record);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  Object[] getAll(Object record) {
+    final Object[] values = new Object[getters.length];
+    for (int i = 0; i < getters.length; i++) {
+      values[i] = get(record, i);
+    }
+    return values;
+  }
+
+  void set(Object record, int index, Object value)
+      throws IllegalAccessException {
+    final MethodHandle setter = setters[index];
+    if (setter == null) {
+      throw new IllegalAccessException("Can't set field " + fields[index]);
+    }
+    try {
+      setter.invokeExact(record, value);
+    } catch (ClassCastException ex) {
+      throw new IllegalArgumentException("Can't set field " + fields[index] + " to " + value.getClass(), ex);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
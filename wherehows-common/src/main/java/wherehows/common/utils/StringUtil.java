@@ -15,6 +15,8 @@ package wherehows.common.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -26,6 +28,10 @@ import wherehows.common.schemas.Record;
  */
 public class StringUtil {
 
+  // ObjectWriter and ObjectReader are immutable and thread-safe, share them instead of a new ObjectMapper per call
+  private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+  private static final ObjectWriter JSON_WRITER = JSON_MAPPER.writer();
+
   public static String toDbString(Object object) {
     if (object != null) {
       return "'" + object.toString().replace("\\", "\\\\").replace("\'", "\\\'").replace("\"", "\\\"") + "'";
@@ -58,7 +64,7 @@ public class StringUtil {
   public static Object objectToJsonString(Object obj) {
     if (obj instanceof Collection || obj instanceof Map || obj instanceof Object[] || obj instanceof Record) {
       try {
-        return new ObjectMapper().writeValueAsString(obj);
+        return JSON_WRITER.writeValueAsString(obj);
       } catch (JsonProcessingException ex) {
         return obj;
       }
@@ -66,6 +72,15 @@ public class StringUtil {
     return obj;
   }
 
+  /**
+   * Shared reader that parses Json string into the given type
+   * @param type Class
+   * @return ObjectReader
+   */
+  public static ObjectReader jsonReaderFor(Class<?> type) {
+    return JSON_MAPPER.readerFor(JSON_MAPPER.constructType(type));
+  }
+
   public static Long toLong(Object obj) {
     return obj != null ? Long.valueOf(obj.toString()) : null;
   }
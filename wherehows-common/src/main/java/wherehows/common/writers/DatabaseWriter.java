@@ -14,9 +14,13 @@
 package wherehows.common.writers;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +37,15 @@ import wherehows.common.utils.PreparedStatementUtil;
  * Created by zsun on 8/20/15.
  */
 public class DatabaseWriter extends Writer {
+  /**
+   * Default size of one JDBC batch, well under MySQL's default 4MB max_allowed_packet
+   * so a batch rewritten by rewriteBatchedStatements still fits in a single packet.
+   */
+  public static final long DEFAULT_MAX_BATCH_BYTES = 1024 * 1024;
+
+  // prepared insert templates, keyed by table, record class and column list
+  private static final Map<String, String> INSERT_TEMPLATES = new ConcurrentHashMap<>();
+
   JdbcTemplate jdbcTemplate;
   String tableName;
   private static final Logger logger = LoggerFactory.getLogger(DatabaseWriter.class);
@@ -40,18 +53,24 @@ public class DatabaseWriter extends Writer {
   public DatabaseWriter(JdbcTemplate jdbcTemplate, String tableName) {
     this.jdbcTemplate = jdbcTemplate;
     this.tableName = tableName;
+    this.MAX_BYTES = DEFAULT_MAX_BATCH_BYTES;
   }
 
   public DatabaseWriter(DataSource dataSource, String tableName) {
-    this.jdbcTemplate = new JdbcTemplate(dataSource);
-    this.tableName = tableName;
+    this(new JdbcTemplate(dataSource), tableName);
   }
 
   public DatabaseWriter(String connectionUrl, String tableName)
       throws SQLException {
-    DriverManagerDataSource dataSource = new DriverManagerDataSource(connectionUrl);
-    this.jdbcTemplate = new JdbcTemplate(dataSource);
-    this.tableName = tableName;
+    this(new DriverManagerDataSource(connectionUrl), tableName);
+  }
+
+  /**
+   * Set the estimated size in bytes at which buffered records are flushed, and the size of each JDBC batch
+   * @param maxBatchBytes
+   */
+  public synchronized void setMaxBatchBytes(long maxBatchBytes) {
+    this.MAX_BYTES = maxBatchBytes;
   }
 
   public synchronized void update(String setValues, String urn) {
@@ -91,17 +110,8 @@ public class DatabaseWriter extends Writer {
       return false;
     }
 
-    StringBuilder sb = new StringBuilder();
-    sb.append("INSERT INTO " + this.tableName + " VALUES ");
-    for (Record r : this.records) {
-      sb.append("(" + r.toDatabaseValue() + "),");
-    }
-    sb.deleteCharAt(sb.length() - 1);
-
-    logger.debug("In databaseWriter : " + sb.toString());
-
-    this.jdbcTemplate.execute(sb.toString());
-    this.records.clear();
+    batchInsert(null);
+    clearRecords();
     return false;
   }
 
@@ -110,19 +120,110 @@ public class DatabaseWriter extends Writer {
       return false;
     }
 
-    StringBuilder sb = new StringBuilder();
-    sb.append("INSERT INTO " + this.tableName + " (" + commaDelimitedNames + ") VALUES ");
+    batchInsert(commaDelimitedNames);
+    clearRecords();
+    return true;
+  }
+
+  /**
+   * Write the buffered records as JDBC batches of at most MAX_BYTES, using one prepared template per record class.
+   * Records that don't provide toDatabaseValues() are written with a single literal INSERT as before.
+   * @param commaDelimitedNames column names, or null to insert into all columns of the table
+   */
+  private void batchInsert(String commaDelimitedNames) {
+    final List<Record> literals = new ArrayList<>();
+    final List<Object[]> batch = new ArrayList<>();
+    Class<?> batchClass = null;
+    String sql = null;
+    long batchBytes = 0;
+
     for (Record r : this.records) {
-      sb.append("(" + r.toDatabaseValue() + "),");
+      final Object[] values = r.toDatabaseValues();
+      if (values == null) {
+        literals.add(r);
+        continue;
+      }
+      if (!batch.isEmpty() && (r.getClass() != batchClass || batchBytes >= MAX_BYTES)) {
+        this.jdbcTemplate.batchUpdate(sql, batch);
+        batch.clear();
+        batchBytes = 0;
+      }
+      if (batch.isEmpty()) {
+        batchClass = r.getClass();
+        sql = insertTemplate(batchClass, commaDelimitedNames, values.length);
+      }
+      for (int i = 0; i < values.length; i++) {
+        values[i] = toParameter(values[i]);
+      }
+      batch.add(values);
+      batchBytes += estimateSize(values);
+    }
+    if (!batch.isEmpty()) {
+      this.jdbcTemplate.batchUpdate(sql, batch);
     }
-    sb.deleteCharAt(sb.length() - 1);
 
-    String statement = sb.toString();
-    logger.debug("In databaseWriter : " + statement);
+    if (!literals.isEmpty()) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("INSERT INTO " + this.tableName);
+      if (commaDelimitedNames != null) {
+        sb.append(" (" + commaDelimitedNames + ")");
+      }
+      sb.append(" VALUES ");
+      for (Record r : literals) {
+        sb.append("(" + r.toDatabaseValue() + "),");
+      }
+      sb.deleteCharAt(sb.length() - 1);
 
-    this.jdbcTemplate.execute(statement);
-    this.records.clear();
-    return true;
+      logger.debug("In databaseWriter : " + sb.toString());
+      this.jdbcTemplate.execute(sb.toString());
+    }
+  }
+
+  private String insertTemplate(Class<?> recordClass, final String commaDelimitedNames, final int columnNum) {
+    final String key = tableName + '|' + recordClass.getName() + '|' + commaDelimitedNames + '|' + columnNum;
+    return INSERT_TEMPLATES.computeIfAbsent(key,
+        k -> commaDelimitedNames == null ? PreparedStatementUtil.prepareInsertTemplateWithoutColumn(tableName, columnNum)
+            : "INSERT INTO " + tableName + " (" + commaDelimitedNames + ") VALUES "
+                + PreparedStatementUtil.generatePlaceholder(columnNum));
+  }
+
+  /**
+   * Bind simple values as they are and everything else by its string form,
+   * the same value toDatabaseValue() would have quoted into the literal statement.
+   */
+  private static Object toParameter(Object value) {
+    if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+        || value instanceof Date) {
+      return value;
+    }
+    return value.toString();
+  }
+
+  @Override
+  protected long estimateSize(Record record) {
+    final Object[] values = record.toDatabaseValues();
+    if (values != null) {
+      return estimateSize(values);
+    }
+    if (record instanceof AbstractRecord) {
+      // no fillAllFields(), the record is written by insert() from getAllValuesToString()
+      try {
+        return estimateSize(((AbstractRecord) record).getAllValuesToString());
+      } catch (IllegalAccessException e) {
+        return 0;
+      }
+    }
+    final String literal = record.toDatabaseValue();
+    return literal == null ? 0 : literal.length();
+  }
+
+  // rough size of a row on the wire: string length plus quoting, a fixed width for anything else
+  private static long estimateSize(Object[] values) {
+    long size = 0;
+    for (Object value : values) {
+      size += value instanceof CharSequence ? ((CharSequence) value).length() + 3 : 12;
+    }
+    return size;
   }
 
   @Override
@@ -147,19 +248,29 @@ public class DatabaseWriter extends Writer {
     }
 
     final AbstractRecord record0 = (AbstractRecord) records.get(0);
-    final String[] columnNames = record0.getDbColumnNames();
-    final String sql =
-        (columnNames != null) ? PreparedStatementUtil.prepareInsertTemplateWithColumn(tableName, columnNames)
-            : PreparedStatementUtil.prepareInsertTemplateWithoutColumn(tableName, record0.getAllFields().length);
-    logger.info("sql string: " + sql);
-    logger.error("columnNames: " + columnNames);
-    System.out.println("sql: " + sql + " | " + columnNames);
-    //logger.debug("DatabaseWriter template for " + record0.getClass() + " : " + sql);
+    final String sql = INSERT_TEMPLATES.computeIfAbsent(tableName + '|' + record0.getClass().getName(), k -> {
+      final String[] columnNames = record0.getDbColumnNames();
+      return (columnNames != null) ? PreparedStatementUtil.prepareInsertTemplateWithColumn(tableName, columnNames)
+          : PreparedStatementUtil.prepareInsertTemplateWithoutColumn(tableName, record0.getAllFields().length);
+    });
+    logger.debug("DatabaseWriter template for " + record0.getClass() + " : " + sql);
 
+    final List<Object[]> batch = new ArrayList<>();
+    long batchBytes = 0;
     for (final Record record : records) {
-      jdbcTemplate.update(sql, ((AbstractRecord) record).getAllValuesToString());
+      final Object[] values = ((AbstractRecord) record).getAllValuesToString();
+      batch.add(values);
+      batchBytes += estimateSize(values);
+      if (batchBytes >= MAX_BYTES) {
+        jdbcTemplate.batchUpdate(sql, batch);
+        batch.clear();
+        batchBytes = 0;
+      }
+    }
+    if (!batch.isEmpty()) {
+      jdbcTemplate.batchUpdate(sql, batch);
     }
-    records.clear();
+    clearRecords();
     return true;
   }
 
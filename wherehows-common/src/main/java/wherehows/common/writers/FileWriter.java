@@ -38,7 +38,7 @@ public class FileWriter extends Writer {
       streamWriter.write(r.toCsvString() + "\n");
     }
     streamWriter.flush();
-    this.records.clear();
+    clearRecords();
     return false;
   }
 
@@ -25,9 +25,11 @@ import java.util.List;
  * Created by zsun on 8/20/15.
  */
 public abstract class Writer {
-  int MAX_LENGTH = 1000; // TODO need to be the real size, instead of the record number
+  int MAX_LENGTH = 1000; // flush threshold in records, used when the writer can't estimate record size
+  long MAX_BYTES = 0; // flush threshold in estimated bytes, 0 to flush by MAX_LENGTH instead
   boolean AUTO_WRITE = true;
   List<Record> records;
+  long bufferedBytes = 0;
 
   public Writer() {
     records = new ArrayList<Record>();
@@ -41,11 +43,33 @@ public abstract class Writer {
     throws IOException, SQLException {
     records.add(record);
     // check if the size meet the threhold, flush it
-    if (AUTO_WRITE && records.size() > MAX_LENGTH) {
+    if (MAX_BYTES > 0) {
+      bufferedBytes += estimateSize(record);
+      if (AUTO_WRITE && bufferedBytes >= MAX_BYTES) {
+        flush();
+      }
+    } else if (AUTO_WRITE && records.size() > MAX_LENGTH) {
       flush();
     }
   }
 
+  /**
+   * Estimated size in bytes of a record once written, only used when MAX_BYTES is set
+   * @param record
+   * @return size in bytes
+   */
+  protected long estimateSize(Record record) {
+    return 0;
+  }
+
+  /**
+   * Drop the buffered records, called after they have been written
+   */
+  protected void clearRecords() {
+    records.clear();
+    bufferedBytes = 0;
+  }
+
   public abstract boolean flush()
     throws IOException, SQLException;
 
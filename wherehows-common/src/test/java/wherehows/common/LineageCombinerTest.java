@@ -0,0 +1,68 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import wherehows.common.schemas.LineageRecord;
+
+
+public class LineageCombinerTest {
+
+  @BeforeMethod
+  public void setUp() {
+    List<PathAnalyzer.Layout> layouts = new ArrayList<>();
+    layouts.add(new PathAnalyzer.Layout(1, "(.*)/daily/(\\d{4}/\\d{2}/\\d{2})", null, 1, 2, "daily"));
+    PathAnalyzer.initialize(layouts, Collections.singletonList("(.*)/part-\\d+"));
+  }
+
+  private static List<LineageRecord> records() {
+    List<LineageRecord> records = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      LineageRecord lr = new LineageRecord(1, 100L, "job", 200L);
+      lr.setDatabaseId(i % 3);
+      lr.setSourceTargetType(i % 2 == 0 ? "source" : "target");
+      lr.setFullObjectName(String.format("/data/set%d/daily/2015/%02d/%02d/part-%05d", i % 7, i % 12 + 1, i % 28 + 1, i));
+      records.add(lr);
+    }
+    return records;
+  }
+
+  @Test
+  public void testParallelMatchesSequential() {
+    LineageCombiner sequential = new LineageCombiner(null);
+    sequential.addAll(records());
+    List<LineageRecord> expected = sequential.getCombinedLineage();
+
+    LineageCombiner parallel = new LineageCombiner(null, 4);
+    parallel.addAll(records());
+    List<LineageRecord> actual = parallel.getCombinedLineage();
+
+    Assert.assertEquals(actual.size(), expected.size());
+    Assert.assertEquals(expected.size(), 2 * 3 * 7);
+    for (int i = 0; i < expected.size(); i++) {
+      LineageRecord e = expected.get(i);
+      LineageRecord a = actual.get(i);
+      Assert.assertEquals(a.getLineageRecordKey(), e.getLineageRecordKey());
+      Assert.assertEquals(a.getFullObjectName(), e.getFullObjectName());
+      Assert.assertEquals(a.getPartitionStart(), e.getPartitionStart());
+      Assert.assertEquals(a.getPartitionEnd(), e.getPartitionEnd());
+      Assert.assertEquals(a.getSrlNo(), Integer.valueOf(i));
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class PathAnalyzerTest {
+
+  @BeforeMethod
+  public void setUp() {
+    List<PathAnalyzer.Layout> layouts = new ArrayList<>();
+    layouts.add(new PathAnalyzer.Layout(1, "(/jobs/.*)/daily/(\\d{4}/\\d{2}/\\d{2})", null, 1, 2, "daily"));
+    layouts.add(new PathAnalyzer.Layout(2, "(.*)/hourly/(\\d{4}/\\d{2}/\\d{2}/\\d{2})", null, 1, 2, "hourly"));
+    layouts.add(new PathAnalyzer.Layout(3, "(.*)/daily/(\\d{4}/\\d{2}/\\d{2})", null, 1, 2, "daily"));
+    List<String> filePatterns = Arrays.asList("(.*)/part-m-\\d+\\.avro", "(.*)/part-\\d+");
+    PathAnalyzer.initialize(layouts, filePatterns);
+  }
+
+  @Test
+  public void testRegexLiterals() {
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/data/tracking/(.*)"), new String[]{"/data/tracking/", "/data/tracking/"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("^/jobs/(.*)/daily"), new String[]{"/jobs/", "/jobs/"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("(.*)/daily/(\\d{4})"), new String[]{"", "/daily/"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/dat?a/(.*)"), new String[]{"/da", "/da"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("ab+cde\\.f{2}(.*)"), new String[]{"ab", "cde."});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/a/(.*)|/b/(.*)"), new String[]{"", ""});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("(?i)/data/(.*)"), new String[]{"", ""});
+  }
+
+  @Test
+  public void testRegexLiteralsEscapes() {
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/a\\x41bc/(.*)"), new String[]{"/a", "bc/"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/a\\x{41}bc/(.*)"), new String[]{"/a", "bc/"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/\\u0041bc/(.*)"), new String[]{"/", "bc/"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/\\0101bc/(.*)"), new String[]{"/", "bc/"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/ab\\cJwxyz/(.*)"), new String[]{"/ab", "wxyz/"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/\\p{Alpha}bc/(.*)"), new String[]{"/", "bc/"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("(a)/\\12bc"), new String[]{"", "bc"});
+    Assert.assertEquals(PathAnalyzer.RegexLiterals.of("/data/\\x2F(.*)"), new String[]{"/data/", "/data/"});
+  }
+
+  @Test
+  public void testAnalyzeLayouts() {
+    DatasetPath path = PathAnalyzer.analyze("hdfs://hadoop.host.com:9000/jobs/search/daily/2015/10/20/part-m-00004.avro");
+    Assert.assertEquals(path.abstractPath, "/jobs/search");
+    Assert.assertEquals(path.layoutId, 1);
+    Assert.assertEquals(path.partitionStart, "2015/10/20");
+
+    path = PathAnalyzer.analyze("/data/tracking/PageViewEvent/daily/2015/10/20");
+    Assert.assertEquals(path.abstractPath, "/data/tracking/PageViewEvent");
+    Assert.assertEquals(path.layoutId, 3);
+
+    path = PathAnalyzer.analyze("/data/tracking/PageViewEvent/hourly/2015/10/20/01/part-00001");
+    Assert.assertEquals(path.abstractPath, "/data/tracking/PageViewEvent");
+    Assert.assertEquals(path.layoutId, 2);
+    Assert.assertEquals(path.partitionType, "hourly");
+  }
+
+  @Test
+  public void testAnalyzeCache() {
+    PathAnalyzer.enableCache(2);
+    try {
+      DatasetPath first = PathAnalyzer.analyze("/data/tracking/PageViewEvent/daily/2015/10/20/part-00001");
+      DatasetPath second = PathAnalyzer.analyze("/data/tracking/PageViewEvent/daily/2015/10/20/part-00002");
+      Assert.assertEquals(PathAnalyzer.getCacheMisses(), 1);
+      Assert.assertEquals(PathAnalyzer.getCacheHits(), 1);
+      Assert.assertEquals(second.fullPath, "/data/tracking/PageViewEvent/daily/2015/10/20/part-00002");
+      Assert.assertEquals(second.abstractPath, first.abstractPath);
+      Assert.assertEquals(second.partitionStart, "2015/10/20");
+
+      PathAnalyzer.analyze("/data/a/daily/2015/10/20");
+      PathAnalyzer.analyze("/data/b/daily/2015/10/20");
+      Assert.assertEquals(PathAnalyzer.getCacheSize(), 2);
+      PathAnalyzer.analyze("/data/tracking/PageViewEvent/daily/2015/10/20");
+      Assert.assertEquals(PathAnalyzer.getCacheMisses(), 4);
+    } finally {
+      PathAnalyzer.disableCache();
+    }
+  }
+
+  @Test
+  public void testAnalyzeHeaders() {
+    Assert.assertNull(PathAnalyzer.analyze("/tmp/some/file"));
+    Assert.assertEquals(PathAnalyzer.analyze("hive:///db_name/table_name").abstractPath, "/db_name/table_name");
+    Assert.assertEquals(PathAnalyzer.analyze("tcp://host.name:12345/table_name").abstractPath, "table_name");
+    Assert.assertEquals(PathAnalyzer.analyze("/data/no/layout").abstractPath, "/data/no/layout");
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.schemas;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class AbstractRecordTest {
+
+  static class SampleRecord extends AbstractRecord {
+    private static final String KIND = "sample";
+    Integer id;
+    String name;
+    List<String> owners;
+    long count;
+
+    @Override
+    public String[] getDbColumnNames() {
+      return new String[]{"kind", "id", "name", "owners", "count"};
+    }
+
+    @Override
+    public List<Object> fillAllFields() {
+      return null;
+    }
+  }
+
+  @Test
+  public void testGetAllValues() throws Exception {
+    SampleRecord record = new SampleRecord();
+    record.id = 3;
+    record.name = "dataset";
+    record.owners = Arrays.asList("a", "b");
+    record.count = 7L;
+
+    Assert.assertEquals(record.getAllFields().length, 5);
+    Assert.assertEquals(record.getAllValues(), new Object[]{"sample", 3, "dataset", Arrays.asList("a", "b"), 7L});
+    Assert.assertEquals(record.getAllValuesToString(), new Object[]{"sample", 3, "dataset", "[\"a\",\"b\"]", 7L});
+    Assert.assertEquals(record.getFieldValueMap().get("owners"), Arrays.asList("a", "b"));
+  }
+
+  @Test
+  public void testConvertToRecord() {
+    Map<String, Object> row = new HashMap<>();
+    row.put("kind", "ignored");
+    row.put("id", 5L);
+    row.put("name", "table");
+    row.put("owners", "[\"x\",\"y\"]");
+    row.put("count", 11L);
+
+    SampleRecord record = new SampleRecord();
+    record.convertToRecord(row);
+    Assert.assertEquals(record.id, Integer.valueOf(5));
+    Assert.assertEquals(record.name, "table");
+    Assert.assertEquals(record.owners, Arrays.asList("x", "y"));
+    Assert.assertEquals(record.count, 11L);
+    Assert.assertEquals(SampleRecord.KIND, "sample");
+  }
+}
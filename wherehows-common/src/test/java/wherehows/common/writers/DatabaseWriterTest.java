@@ -0,0 +1,107 @@
+/**
+ * Copyright 2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package wherehows.common.writers;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import wherehows.common.schemas.DatasetTagRecord;
+import wherehows.common.schemas.LineageRecordLite;
+import wherehows.common.schemas.PropertyRecord;
+
+
+public class DatabaseWriterTest {
+
+  // records the statements instead of sending them to a database
+  static class RecordingJdbcTemplate extends JdbcTemplate {
+    final List<String> sqls = new ArrayList<>();
+    final List<Integer> batchSizes = new ArrayList<>();
+    final List<Object[]> rows = new ArrayList<>();
+
+    @Override
+    public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+      sqls.add(sql);
+      batchSizes.add(batchArgs.size());
+      rows.addAll(batchArgs);
+      return new int[batchArgs.size()];
+    }
+
+    @Override
+    public void execute(String sql) {
+      sqls.add(sql);
+    }
+  }
+
+  @Test
+  public void testInsertWithColumnNames() throws Exception {
+    RecordingJdbcTemplate template = new RecordingJdbcTemplate();
+    DatabaseWriter dw = new DatabaseWriter(template, "family");
+    for (int i = 0; i < 10; i++) {
+      dw.append(new LineageRecordLite("parent" + i, "child" + i));
+    }
+    Assert.assertTrue(dw.insert("parent_urn, child_urn"));
+
+    Assert.assertEquals(template.sqls.size(), 1);
+    Assert.assertEquals(template.sqls.get(0), "INSERT INTO family (parent_urn, child_urn) VALUES (?,?)");
+    Assert.assertEquals(template.batchSizes.get(0), Integer.valueOf(10));
+    Assert.assertEquals(template.rows.get(3), new Object[]{"parent3", "child3"});
+    Assert.assertFalse(dw.insert("parent_urn, child_urn"));
+  }
+
+  @Test
+  public void testFlushByBytes() throws Exception {
+    RecordingJdbcTemplate template = new RecordingJdbcTemplate();
+    DatabaseWriter dw = new DatabaseWriter(template, "wh_property");
+    // each record is estimated at 18 bytes, so a flush happens every 6 records
+    dw.setMaxBatchBytes(100);
+    for (int i = 0; i < 20; i++) {
+      dw.append(new PropertyRecord("p", "value" + (i % 10) + "x", "N"));
+    }
+    dw.close();
+
+    int total = 0;
+    for (int i = 0; i < template.sqls.size(); i++) {
+      Assert.assertEquals(template.sqls.get(i), "INSERT INTO wh_property VALUES (?,?,?)");
+      Assert.assertTrue(template.batchSizes.get(i) <= 6);
+      total += template.batchSizes.get(i);
+    }
+    Assert.assertEquals(total, 20);
+    Assert.assertTrue(template.sqls.size() >= 4);
+  }
+
+  @Test
+  public void testInsertWithoutFillAllFields() throws Exception {
+    RecordingJdbcTemplate template = new RecordingJdbcTemplate();
+    DatabaseWriter dw = new DatabaseWriter(template, "dataset_tag");
+    // DatasetTagRecord.fillAllFields() returns null, appending it still has to be sized
+    for (int i = 0; i < 3; i++) {
+      DatasetTagRecord record = new DatasetTagRecord();
+      record.setDatasetId(i);
+      record.setDatasetUrn("hdfs:///data/t" + i);
+      record.setTag("tag" + i);
+      record.setModifiedTime(100L + i);
+      dw.append(record);
+    }
+    Assert.assertTrue(template.sqls.isEmpty());
+    Assert.assertTrue(dw.insert());
+
+    Assert.assertEquals(template.sqls.size(), 1);
+    Assert.assertEquals(template.sqls.get(0),
+        "INSERT INTO dataset_tag(`dataset_id`,`dataset_urn`,`tag`,`modified_time`) VALUES (?,?,?,?)");
+    Assert.assertEquals(template.batchSizes.get(0), Integer.valueOf(3));
+    Assert.assertEquals(template.rows.get(1), new Object[]{1, "hdfs:///data/t1", "tag1", 101L});
+  }
+}